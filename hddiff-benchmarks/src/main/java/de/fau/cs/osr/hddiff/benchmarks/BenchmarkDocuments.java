@@ -0,0 +1,340 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import de.fau.cs.osr.hddiff.HDDiffOptions;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.utils.WordSubstringJudge;
+
+/**
+ * Generates reproducible pseudo-articles and revisions thereof.
+ * 
+ * <p>
+ * The documents loosely resemble parsed Wikipedia articles: sections with
+ * paragraphs of text and inline markup, lists and tables. A revision is derived
+ * from a document by applying a given fraction of random edits (text edits,
+ * inserts, deletes, moves and attribute changes). The same seed always yields
+ * the same documents.
+ */
+public final class BenchmarkDocuments
+{
+	private static final String[] VOCABULARY = {
+			"the", "of", "and", "in", "to", "was", "is", "for", "on", "as",
+			"with", "by", "he", "she", "at", "from", "his", "her", "an", "were",
+			"album", "released", "single", "chart", "record", "band", "song",
+			"tour", "music", "video", "city", "river", "county", "population",
+			"station", "railway", "church", "school", "university", "war",
+			"army", "battle", "league", "season", "team", "club", "football",
+			"species", "family", "genus", "island", "mountain", "village" };
+
+	private static final String[] INLINE_TYPES = { "b", "i", "a", "ref" };
+
+	private static final int AVG_WORDS_PER_TEXT = 12;
+
+	// =========================================================================
+
+	private final Random random;
+
+	private int nodeCount;
+
+	// =========================================================================
+
+	private BenchmarkDocuments(long seed)
+	{
+		this.random = new Random(seed);
+	}
+
+	// =========================================================================
+
+	public static HDDiffOptions setupHDDiff()
+	{
+		BenchmarkNodeMetrics metrics = new BenchmarkNodeMetrics();
+
+		HDDiffOptions options = new HDDiffOptions();
+		options.setNodeMetrics(metrics);
+		options.setMinSubtreeWeight(12);
+		options.setEnableTnsm(true);
+		options.setTnsmEligibilityTester(metrics);
+		options.setTnsmSubstringJudge(new WordSubstringJudge(8, 3));
+		return options;
+	}
+
+	/**
+	 * Generates a document with roughly the given number of nodes.
+	 */
+	public static BenchmarkNode generate(long seed, int nodeCount)
+	{
+		return new BenchmarkDocuments(seed).article(nodeCount);
+	}
+
+	/**
+	 * Returns a modified deep copy of the given document.
+	 * 
+	 * @param editRate
+	 *            Number of edits relative to the number of nodes in the
+	 *            document.
+	 */
+	public static BenchmarkNode revise(
+			BenchmarkNode document,
+			long seed,
+			double editRate)
+	{
+		BenchmarkNode revision = document.copyDeep();
+		new BenchmarkDocuments(seed).edit(revision, editRate);
+		return revision;
+	}
+
+	/**
+	 * Generates text consisting of words separated by spaces.
+	 */
+	public static String generateText(long seed, int length)
+	{
+		BenchmarkDocuments gen = new BenchmarkDocuments(seed);
+		StringBuilder sb = new StringBuilder(length + 16);
+		while (sb.length() < length)
+			sb.append(gen.word()).append(' ');
+		sb.setLength(length);
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a copy of the given text where roughly the given fraction of
+	 * words was replaced, deleted or moved.
+	 */
+	public static String reviseText(String text, long seed, double editRate)
+	{
+		BenchmarkDocuments gen = new BenchmarkDocuments(seed);
+
+		ArrayList<String> words = new ArrayList<>();
+		for (String w : text.split(" "))
+			words.add(w);
+
+		int edits = (int) Math.ceil(words.size() * editRate);
+		for (int i = 0; i < edits; ++i)
+		{
+			int pos = gen.random.nextInt(words.size());
+			switch (gen.random.nextInt(3))
+			{
+				case 0:
+					words.set(pos, gen.word());
+					break;
+				case 1:
+					if (words.size() > 1)
+						words.remove(pos);
+					break;
+				default:
+					words.add(gen.random.nextInt(words.size()), words.remove(pos));
+					break;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(text.length() + 16);
+		for (String w : words)
+		{
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(w);
+		}
+		return sb.toString();
+	}
+
+	// =========================================================================
+
+	private BenchmarkNode article(int targetNodeCount)
+	{
+		BenchmarkNode article = element("article", null);
+		while (nodeCount < targetNodeCount)
+			article.appendChildDiffOnly(section());
+		return article;
+	}
+
+	private BenchmarkNode section()
+	{
+		BenchmarkNode section = element("section", null);
+		BenchmarkNode heading = element("heading", "level=" + (2 + random.nextInt(3)));
+		heading.appendChildDiffOnly(text(1 + random.nextInt(4)));
+		section.appendChildDiffOnly(heading);
+
+		int blocks = 2 + random.nextInt(8);
+		for (int i = 0; i < blocks; ++i)
+		{
+			int kind = random.nextInt(10);
+			if (kind < 7)
+				section.appendChildDiffOnly(paragraph());
+			else if (kind < 9)
+				section.appendChildDiffOnly(list());
+			else
+				section.appendChildDiffOnly(table());
+		}
+		return section;
+	}
+
+	private BenchmarkNode paragraph()
+	{
+		BenchmarkNode p = element("p", null);
+		appendInlineContent(p);
+		return p;
+	}
+
+	private void appendInlineContent(BenchmarkNode parent)
+	{
+		parent.appendChildDiffOnly(text(1 + random.nextInt(2 * AVG_WORDS_PER_TEXT)));
+		int inlines = random.nextInt(4);
+		for (int i = 0; i < inlines; ++i)
+		{
+			String type = INLINE_TYPES[random.nextInt(INLINE_TYPES.length)];
+			BenchmarkNode inline = element(type, type.equals("a") ? "href=" + word() : null);
+			inline.appendChildDiffOnly(text(1 + random.nextInt(4)));
+			parent.appendChildDiffOnly(inline);
+			parent.appendChildDiffOnly(text(1 + random.nextInt(2 * AVG_WORDS_PER_TEXT)));
+		}
+	}
+
+	private BenchmarkNode list()
+	{
+		BenchmarkNode list = element("list", random.nextBoolean() ? "ordered" : null);
+		int items = 2 + random.nextInt(10);
+		for (int i = 0; i < items; ++i)
+		{
+			BenchmarkNode item = element("item", null);
+			appendInlineContent(item);
+			list.appendChildDiffOnly(item);
+		}
+		return list;
+	}
+
+	private BenchmarkNode table()
+	{
+		BenchmarkNode table = element("table", "class=wikitable");
+		int rows = 2 + random.nextInt(10);
+		int cols = 2 + random.nextInt(4);
+		for (int i = 0; i < rows; ++i)
+		{
+			BenchmarkNode row = element("row", null);
+			for (int j = 0; j < cols; ++j)
+			{
+				BenchmarkNode cell = element("cell", null);
+				cell.appendChildDiffOnly(text(1 + random.nextInt(3)));
+				row.appendChildDiffOnly(cell);
+			}
+			table.appendChildDiffOnly(row);
+		}
+		return table;
+	}
+
+	private BenchmarkNode element(String type, String attribute)
+	{
+		++nodeCount;
+		return BenchmarkNode.element(type, attribute);
+	}
+
+	private BenchmarkNode text(int words)
+	{
+		++nodeCount;
+		StringBuilder sb = new StringBuilder(words * 8);
+		for (int i = 0; i < words; ++i)
+		{
+			if (i > 0)
+				sb.append(' ');
+			sb.append(word());
+		}
+		return BenchmarkNode.text(sb.toString());
+	}
+
+	private String word()
+	{
+		return VOCABULARY[random.nextInt(VOCABULARY.length)];
+	}
+
+	// =========================================================================
+
+	private void edit(BenchmarkNode root, double editRate)
+	{
+		ArrayList<BenchmarkNode> nodes = new ArrayList<>();
+		collect(root, nodes);
+
+		int edits = (int) Math.ceil(nodes.size() * editRate);
+		for (int i = 0; i < edits; ++i)
+		{
+			BenchmarkNode n = nodes.get(random.nextInt(nodes.size()));
+			if ((n == root) || (n.getParent() == null))
+				continue;
+
+			switch (random.nextInt(5))
+			{
+				case 0:
+					editText(n);
+					break;
+				case 1:
+					// Never remove the only child of a node
+					if (n.getParent().getFirstChild() != n.getParent().getLastChild())
+						n.removeFromParent();
+					break;
+				case 2:
+					if (!n.isTextLeaf())
+						n.insertAt(random.nextInt(2), paragraph());
+					break;
+				case 3:
+					move(n, nodes.get(random.nextInt(nodes.size())));
+					break;
+				default:
+					if (!n.isTextLeaf())
+						n.setAttribute(random.nextBoolean() ? null : "class=" + word());
+					break;
+			}
+		}
+	}
+
+	private void editText(BenchmarkNode n)
+	{
+		if (!n.isTextLeaf())
+			return;
+
+		String text = n.getTextContent();
+		int pos = text.indexOf(' ', random.nextInt(text.length()));
+		if (pos < 0)
+			pos = text.length();
+		n.setText(text.substring(0, pos) + " " + word() + " " + word() + text.substring(pos));
+	}
+
+	private void move(BenchmarkNode n, BenchmarkNode newParent)
+	{
+		if (newParent.isTextLeaf() || (n.getParent().getFirstChild() == n.getParent().getLastChild()))
+			return;
+
+		for (DiffNode p = newParent; p != null; p = p.getParent())
+		{
+			if (p == n)
+				// Cannot move a node into its own subtree
+				return;
+		}
+
+		n.removeFromParent();
+		newParent.insertAt(random.nextInt(2), n);
+	}
+
+	private static void collect(BenchmarkNode n, ArrayList<BenchmarkNode> nodes)
+	{
+		nodes.add(n);
+		for (DiffNode c = n.getFirstChild(); c != null; c = c.getNextSibling())
+			collect((BenchmarkNode) c, nodes);
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.benchmarks;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeUpdate;
+import de.fau.cs.osr.utils.ComparisonException;
+
+/**
+ * A minimal, self-contained DiffNode implementation. The benchmarks must not
+ * depend on a parser or a native document model since we only want to measure
+ * HDDiff itself.
+ */
+public class BenchmarkNode
+		extends
+			DiffNode
+{
+	public static final String TEXT = "#text";
+
+	// =========================================================================
+
+	private final String type;
+
+	private String text;
+
+	private String attribute;
+
+	// =========================================================================
+
+	public BenchmarkNode(String type, String text, String attribute)
+	{
+		this.type = type;
+		this.text = text;
+		this.attribute = attribute;
+	}
+
+	public static BenchmarkNode element(String type, String attribute)
+	{
+		return new BenchmarkNode(type, null, attribute);
+	}
+
+	public static BenchmarkNode text(String text)
+	{
+		return new BenchmarkNode(TEXT, text, null);
+	}
+
+	// =========================================================================
+
+	public String getAttribute()
+	{
+		return attribute;
+	}
+
+	public void setAttribute(String attribute)
+	{
+		this.attribute = attribute;
+	}
+
+	public void setText(String text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * Creates an unmapped deep copy of this subtree.
+	 */
+	public BenchmarkNode copyDeep()
+	{
+		BenchmarkNode copy = new BenchmarkNode(type, text, attribute);
+		for (DiffNode c = getFirstChild(); c != null; c = c.getNextSibling())
+			copy.appendChildDiffOnly(((BenchmarkNode) c).copyDeep());
+		return copy;
+	}
+
+	// =========================================================================
+
+	@Override
+	public Object getType()
+	{
+		return type;
+	}
+
+	@Override
+	public boolean isSameNodeType(DiffNode o)
+	{
+		return type.equals(o.getType());
+	}
+
+	@Override
+	public String getLabel()
+	{
+		return type;
+	}
+
+	@Override
+	public Object getNativeNode()
+	{
+		return (text != null) ? text : type;
+	}
+
+	// =========================================================================
+
+	@Override
+	public DiffNode createSame(DiffNode forRoot)
+	{
+		return new BenchmarkNode(type, text, attribute);
+	}
+
+	@Override
+	protected void appendOrInsertNativeOnly(
+			DiffNode newChild,
+			DiffNode refChild)
+	{
+		// There is no native tree
+	}
+
+	@Override
+	protected void removeFromParentNativeOnly()
+	{
+		// There is no native tree
+	}
+
+	// =========================================================================
+
+	@Override
+	public NodeUpdate compareWith(DiffNode o_)
+	{
+		BenchmarkNode o = (BenchmarkNode) o_;
+		if (compareStrings(text, o.text) && compareStrings(attribute, o.attribute))
+			return null;
+		return new BenchmarkNodeUpdate(o.text, o.attribute);
+	}
+
+	@Override
+	public void applyUpdate(NodeUpdate update_)
+	{
+		BenchmarkNodeUpdate update = (BenchmarkNodeUpdate) update_;
+		this.text = update.text;
+		this.attribute = update.attribute;
+	}
+
+	// =========================================================================
+
+	@Override
+	public boolean isLeaf()
+	{
+		return getFirstChild() == null;
+	}
+
+	@Override
+	public boolean isTextLeaf()
+	{
+		return (text != null);
+	}
+
+	@Override
+	public String getTextContent()
+	{
+		return text;
+	}
+
+	@Override
+	public DiffNode splitText(int pos)
+	{
+		BenchmarkNode otherHalf = text(text.substring(pos));
+		text = text.substring(0, pos);
+		getParent().appendOrInsert(otherHalf, getNextSibling());
+		return otherHalf;
+	}
+
+	// =========================================================================
+
+	@Override
+	public void compareNativeDeep(DiffNode o_) throws ComparisonException
+	{
+		BenchmarkNode o = (BenchmarkNode) o_;
+		if (!type.equals(o.type) ||
+				!compareStrings(text, o.text) ||
+				!compareStrings(attribute, o.attribute))
+			throw new ComparisonException(this, o);
+
+		DiffNode c1 = getFirstChild();
+		DiffNode c2 = o.getFirstChild();
+		while ((c1 != null) && (c2 != null))
+		{
+			c1.compareNativeDeep(c2);
+			c1 = c1.getNextSibling();
+			c2 = c2.getNextSibling();
+		}
+
+		if (c1 != c2)
+			throw new ComparisonException(this, o);
+	}
+
+	@Override
+	public void setNativeId(String id)
+	{
+		// There is no native tree
+	}
+
+	// =========================================================================
+
+	static boolean compareStrings(String a, String b)
+	{
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	// =========================================================================
+
+	private static final class BenchmarkNodeUpdate
+			implements
+				NodeUpdate
+	{
+		private final String text;
+
+		private final String attribute;
+
+		public BenchmarkNodeUpdate(String text, String attribute)
+		{
+			this.text = text;
+			this.attribute = attribute;
+		}
+
+		@Override
+		public void applyUpdates(Object node)
+		{
+			((BenchmarkNode) node).applyUpdate(this);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fau.cs.osr.hddiff.HDDiff;
+import de.fau.cs.osr.hddiff.HDDiffOptions;
+import de.fau.cs.osr.hddiff.HDDiffOptions.SubtreeHashMode;
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+
+/**
+ * Measures HDDiff.editScript() end to end.
+ * 
+ * <p>
+ * HDDiff modifies both input trees (partners, weights, split text nodes).
+ * Therefore every invocation works on fresh copies of the two revisions. The
+ * copying happens in an invocation level setup and is not part of the
+ * measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class EditScriptBenchmark
+{
+	@Param({ "1000", "10000", "50000" })
+	public int nodes;
+
+	@Param({ "0.01", "0.05" })
+	public double editRate;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ "BITS_32", "BITS_64" })
+	public SubtreeHashMode hashMode;
+
+	private HDDiffOptions options;
+
+	private BenchmarkNode revisionA;
+
+	private BenchmarkNode revisionB;
+
+	private BenchmarkNode root1;
+
+	private BenchmarkNode root2;
+
+	// =========================================================================
+
+	@Setup(Level.Trial)
+	public void generateRevisions()
+	{
+		options = BenchmarkDocuments.setupHDDiff();
+		options.setSubtreeHashMode(hashMode);
+		revisionA = BenchmarkDocuments.generate(seed, nodes);
+		revisionB = BenchmarkDocuments.revise(revisionA, seed + 1, editRate);
+	}
+
+	@Setup(Level.Invocation)
+	public void copyRevisions()
+	{
+		root1 = revisionA.copyDeep();
+		root2 = revisionB.copyDeep();
+	}
+
+	// =========================================================================
+
+	@Benchmark
+	public List<EditOp> editScript()
+	{
+		return HDDiff.editScript(root1, root2, options);
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fau.cs.osr.hddiff.HDDiffOptions;
+import de.fau.cs.osr.hddiff.HDDiffPhases;
+import de.fau.cs.osr.hddiff.HDDiffPhases.Phase;
+
+/**
+ * Measures the individual phases of HDDiff, driven through HDDiffPhases.
+ * 
+ * <p>
+ * Each phase can only run once per diff, so every invocation needs its own
+ * diff for which all preceding phases have run. These diffs are prepared for
+ * a whole batch of invocations before each iteration; the iteration then
+ * times the batch in single shot mode. Only the measured phase itself is
+ * timed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = HDDiffPhaseBenchmark.BATCH_SIZE)
+@Measurement(iterations = 20, batchSize = HDDiffPhaseBenchmark.BATCH_SIZE)
+@Fork(2)
+public class HDDiffPhaseBenchmark
+{
+	static final int BATCH_SIZE = 5;
+
+	// =========================================================================
+
+	@Param({
+			"PRECOMPUTATION",
+			"GREEDY_SUBTREE_MATCHING",
+			"TEXT_NODE_SPLIT_MATCHING",
+			"BOTTOM_UP_MATCHING",
+			"TOP_DOWN_MATCHING" })
+	public Phase phase;
+
+	@Param({ "1000", "10000", "50000" })
+	public int nodes;
+
+	@Param({ "0.01", "0.05" })
+	public double editRate;
+
+	@Param({ "42" })
+	public long seed;
+
+	private HDDiffOptions options;
+
+	private BenchmarkNode revisionA;
+
+	private BenchmarkNode revisionB;
+
+	private final HDDiffPhases[] batch = new HDDiffPhases[BATCH_SIZE];
+
+	private int next;
+
+	// =========================================================================
+
+	@Setup(Level.Trial)
+	public void generateRevisions()
+	{
+		options = BenchmarkDocuments.setupHDDiff();
+		revisionA = BenchmarkDocuments.generate(seed, nodes);
+		revisionB = BenchmarkDocuments.revise(revisionA, seed + 1, editRate);
+	}
+
+	@Setup(Level.Iteration)
+	public void runPrecedingPhases()
+	{
+		for (int i = 0; i < BATCH_SIZE; ++i)
+		{
+			HDDiffPhases phases = new HDDiffPhases(revisionA.copyDeep(), revisionB.copyDeep(), options);
+			phases.runUntil(phase);
+			batch[i] = phases;
+		}
+		next = 0;
+	}
+
+	// =========================================================================
+
+	@Benchmark
+	public HDDiffPhases runPhase()
+	{
+		HDDiffPhases phases = batch[next];
+		batch[next++] = null;
+		phases.run(phase);
+		return phases;
+	}
+}
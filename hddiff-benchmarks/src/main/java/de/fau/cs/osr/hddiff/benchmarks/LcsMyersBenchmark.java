@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fau.cs.osr.hddiff.utils.ElementComparatorInterface;
+import de.fau.cs.osr.hddiff.utils.LcsMyers;
+
+/**
+ * Measures LcsMyers on sibling-list sized sequences. The alphabet is small to
+ * mimic node type sequences.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LcsMyersBenchmark
+{
+	@Param({ "100", "1000", "10000" })
+	public int length;
+
+	@Param({ "0.01", "0.1" })
+	public double editRate;
+
+	@Param({ "8" })
+	public int alphabetSize;
+
+	@Param({ "42" })
+	public long seed;
+
+	/** 0 forces the linear space variant */
+	@Param({ "4194304", "0" })
+	public long maxTraceSize;
+
+	private ArrayList<Integer> a;
+
+	private ArrayList<Integer> b;
+
+	private LcsMyers<Integer> lcs;
+
+	// =========================================================================
+
+	@Setup(Level.Trial)
+	public void generateSequences()
+	{
+		Random random = new Random(seed);
+
+		a = new ArrayList<>(length);
+		for (int i = 0; i < length; ++i)
+			a.add(random.nextInt(alphabetSize));
+
+		b = new ArrayList<>(a);
+		int edits = (int) Math.ceil(length * editRate);
+		for (int i = 0; i < edits; ++i)
+		{
+			int pos = random.nextInt(b.size());
+			if (random.nextBoolean())
+				b.remove(pos);
+			else
+				b.add(pos, random.nextInt(alphabetSize));
+		}
+
+		lcs = new LcsMyers<>(new ElementComparatorInterface<Integer>()
+		{
+			@Override
+			public boolean equals(Integer x, Integer y)
+			{
+				return x.intValue() == y.intValue();
+			}
+		});
+		lcs.setMaxTraceSize(maxTraceSize);
+	}
+
+	// =========================================================================
+
+	@Benchmark
+	public ArrayList<Integer> lcs()
+	{
+		lcs.lcs(a, b);
+		return lcs.getLcs();
+	}
+}
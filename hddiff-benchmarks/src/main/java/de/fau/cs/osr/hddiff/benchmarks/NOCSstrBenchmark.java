@@ -0,0 +1,190 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fau.cs.osr.hddiff.utils.LongestCommonPrefix;
+import de.fau.cs.osr.hddiff.utils.NOCSstr;
+import de.fau.cs.osr.hddiff.utils.NOCSstr.CommonSubstring;
+import de.fau.cs.osr.hddiff.utils.ParallelSuffixArrayBuilder;
+import de.fau.cs.osr.hddiff.utils.SubstringJudgeInterface;
+import de.fau.cs.osr.hddiff.utils.SuffixArrayAlgorithm;
+import de.fau.cs.osr.hddiff.utils.WordSubstringJudge;
+
+/**
+ * Measures the text node split matching (TNSM) building blocks: the complete
+ * NOCS computation as well as its suffix array and LCP stages in isolation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class NOCSstrBenchmark
+{
+	@Param({ "10000", "100000", "1000000" })
+	public int length;
+
+	@Param({ "0.05" })
+	public double editRate;
+
+	@Param({ "42" })
+	public long seed;
+
+	@Param({ "DC3", "SAIS" })
+	public SuffixArrayAlgorithm saAlgorithm;
+
+	private final SubstringJudgeInterface<String> judge = new WordSubstringJudge(8, 3);
+
+	private String str1;
+
+	private String str2;
+
+	/** str1 $1 str2 $0 as fed into the suffix array construction. */
+	private int[] input;
+
+	private int inputLength;
+
+	private int alphabetSize;
+
+	private int[] suffixArray;
+
+	private ForkJoinPool pool;
+
+	private ParallelSuffixArrayBuilder parallelBuilder;
+
+	// =========================================================================
+
+	@Setup(Level.Trial)
+	public void generateTexts()
+	{
+		str1 = BenchmarkDocuments.generateText(seed, length);
+		str2 = BenchmarkDocuments.reviseText(str1, seed + 1, editRate);
+
+		stitchInput();
+
+		suffixArray = saAlgorithm.compute(input, inputLength, alphabetSize);
+
+		pool = new ForkJoinPool();
+		parallelBuilder = new ParallelSuffixArrayBuilder(pool, 0, saAlgorithm);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdownPool()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Same encoding as NOCSstr.compute() uses internally.
+	 */
+	private void stitchInput()
+	{
+		int valueDomainStart = NOCSstr.MARKER_SEQ_D_MIN;
+		int n1 = str1.length();
+		int n2 = str2.length();
+
+		Map<Character, Integer> codes = new HashMap<>();
+		int k = valueDomainStart;
+
+		input = new int[n1 + 1 + n2 + 1 + 3];
+		for (int i = 0; i < n1 + 1 + n2; ++i)
+		{
+			if (i == n1)
+			{
+				input[i] = 1;
+				continue;
+			}
+
+			char ch = (i < n1) ? str1.charAt(i) : str2.charAt(i - n1 - 1);
+			Integer code = codes.get(ch);
+			if (code == null)
+				codes.put(ch, code = k++);
+			input[i] = code;
+		}
+
+		inputLength = n1 + 1 + n2 + 1;
+		alphabetSize = k;
+	}
+
+	// =========================================================================
+
+	@Benchmark
+	public List<CommonSubstring> nocss()
+	{
+		return NOCSstr.compute(
+				str1,
+				str2,
+				NOCSstr.MARKER_SEQ_D_MIN,
+				judge,
+				saAlgorithm,
+				null);
+	}
+
+	@Benchmark
+	public int[] suffixArray()
+	{
+		return saAlgorithm.compute(input, inputLength, alphabetSize);
+	}
+
+	@Benchmark
+	public int[] longestCommonPrefix()
+	{
+		return LongestCommonPrefix.compute(
+				input,
+				inputLength,
+				NOCSstr.MARKER_SEQ_D_MIN,
+				suffixArray);
+	}
+
+	@Benchmark
+	public int[] parallelSuffixArray()
+	{
+		return parallelBuilder.compute(input, inputLength, alphabetSize);
+	}
+
+	@Benchmark
+	public int[] parallelLongestCommonPrefix()
+	{
+		return parallelBuilder.computeLcp(
+				input,
+				inputLength,
+				NOCSstr.MARKER_SEQ_D_MIN,
+				suffixArray);
+	}
+}
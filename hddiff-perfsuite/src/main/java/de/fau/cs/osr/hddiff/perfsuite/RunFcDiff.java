@@ -469,8 +469,8 @@ public class RunFcDiff
 	
 	private void map(DiffNode n1, DiffNode n2)
 	{
-		n1.set(n2, 0);
-		n2.set(n1, 0);
+		n1.set(n2);
+		n2.set(n1);
 	}
 	
 	private void mapDeep(DiffNode n1, DiffNode n2)
@@ -194,7 +194,7 @@ public class EditScriptBuilder
 	
 	private void map(DiffNode nRight, DiffNode leftInsertedNode)
 	{
-		leftInsertedNode.set(nRight, Integer.MIN_VALUE);
-		nRight.set(leftInsertedNode, Integer.MIN_VALUE);
+		leftInsertedNode.set(nRight);
+		nRight.set(leftInsertedNode);
 	}
 }
@@ -0,0 +1,198 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.wom;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.sweble.wom3.Wom3Attribute;
+import org.sweble.wom3.Wom3Document;
+import org.sweble.wom3.Wom3ElementNode;
+import org.sweble.wom3.Wom3Node;
+
+import de.fau.cs.osr.hddiff.editscript.EditScriptReader;
+import de.fau.cs.osr.hddiff.editscript.EditScriptWriter;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeCodecInterface;
+import de.fau.cs.osr.hddiff.tree.NodeUpdate;
+import de.fau.cs.osr.hddiff.wom.WomDiffNodeAdapter.Wom3NodeUpdate;
+
+/**
+ * Writes and reads inserted nodes and node updates of WOM trees as created by
+ * the createSame() and compareWith() methods of the WOM adapters.
+ */
+public final class WomNodeCodec
+		implements
+			NodeCodecInterface
+{
+	private static final int ELEMENT = 0;
+	
+	private static final int TEXT = 1;
+	
+	private static final int RTD = 2;
+	
+	private static final int UPDATE_ATTRIBUTES = 0;
+	
+	private static final int UPDATE_VALUE = 1;
+	
+	// =========================================================================
+	
+	@Override
+	public void writeNode(DiffNode node_, DataOutput out) throws IOException
+	{
+		WomDiffNodeAdapter node = (WomDiffNodeAdapter) node_;
+		Wom3Node n = node.getWomNode();
+		
+		if (node instanceof WomDiffNodeAdapterText)
+			out.writeByte(TEXT);
+		else if (node instanceof WomDiffNodeAdapterRtd)
+			out.writeByte(RTD);
+		else
+			out.writeByte(ELEMENT);
+		
+		EditScriptWriter.writeString(out, n.getNamespaceURI());
+		EditScriptWriter.writeString(out, n.getNodeName());
+		
+		if ((node instanceof WomDiffNodeAdapterText) || (node instanceof WomDiffNodeAdapterRtd))
+			EditScriptWriter.writeString(out, node.getTextContent());
+		else
+			writeAttributes(out, n.getWomAttributes());
+	}
+	
+	@Override
+	public DiffNode readNode(DiffNode forRoot, DataInput in) throws IOException
+	{
+		Wom3Document doc = getDocument(forRoot);
+		
+		int kind = in.readUnsignedByte();
+		String namespaceUri = EditScriptReader.readString(in);
+		String name = EditScriptReader.readString(in);
+		
+		Wom3ElementNode elem = (namespaceUri == null) ?
+				(Wom3ElementNode) doc.createElement(name) :
+				(Wom3ElementNode) doc.createElementNS(namespaceUri, name);
+		
+		switch (kind)
+		{
+			case TEXT:
+				elem.appendChild(doc.createTextNode(EditScriptReader.readString(in)));
+				return new WomDiffNodeAdapterText(elem);
+			case RTD:
+				elem.appendChild(doc.createTextNode(EditScriptReader.readString(in)));
+				return new WomDiffNodeAdapterRtd(elem);
+			case ELEMENT:
+				for (Wom3Attribute a : readAttributes(in, doc))
+					setAttribute(elem, a);
+				return new WomDiffNodeAdapter(elem);
+			default:
+				throw new IOException("Unknown node kind: " + kind);
+		}
+	}
+	
+	// =========================================================================
+	
+	@Override
+	public void writeUpdate(DiffNode node, NodeUpdate update_, DataOutput out) throws IOException
+	{
+		Wom3NodeUpdate update = (Wom3NodeUpdate) update_;
+		if (update.attributes != null)
+		{
+			out.writeByte(UPDATE_ATTRIBUTES);
+			writeAttributes(out, update.attributes);
+		}
+		else
+		{
+			out.writeByte(UPDATE_VALUE);
+			EditScriptWriter.writeString(out, update.value);
+		}
+	}
+	
+	@Override
+	public NodeUpdate readUpdate(DiffNode node, DataInput in) throws IOException
+	{
+		int kind = in.readUnsignedByte();
+		switch (kind)
+		{
+			case UPDATE_ATTRIBUTES:
+				return new Wom3NodeUpdate(readAttributes(in, getDocument(node)), null);
+			case UPDATE_VALUE:
+				return new Wom3NodeUpdate(null, EditScriptReader.readString(in));
+			default:
+				throw new IOException("Unknown update kind: " + kind);
+		}
+	}
+	
+	// =========================================================================
+	
+	private void writeAttributes(
+			DataOutput out,
+			Collection<Wom3Attribute> attributes) throws IOException
+	{
+		EditScriptWriter.writeVarInt(out, attributes.size());
+		for (Wom3Attribute a : attributes)
+		{
+			EditScriptWriter.writeString(out, a.getNamespaceURI());
+			EditScriptWriter.writeString(out, a.getNodeName());
+			EditScriptWriter.writeString(out, a.getNodeValue());
+		}
+	}
+	
+	private Collection<Wom3Attribute> readAttributes(
+			DataInput in,
+			Wom3Document doc) throws IOException
+	{
+		int count = EditScriptReader.readVarInt(in);
+		ArrayList<Wom3Attribute> attributes = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i)
+		{
+			String namespaceUri = EditScriptReader.readString(in);
+			String name = EditScriptReader.readString(in);
+			String value = EditScriptReader.readString(in);
+			
+			Wom3Attribute a = (namespaceUri == null) ?
+					(Wom3Attribute) doc.createAttribute(name) :
+					(Wom3Attribute) doc.createAttributeNS(namespaceUri, name);
+			a.setNodeValue(value);
+			attributes.add(a);
+		}
+		return attributes;
+	}
+	
+	/**
+	 * Sets the attribute like WomDiffNodeAdapter.createSame() does.
+	 */
+	private void setAttribute(Wom3ElementNode elem, Wom3Attribute a)
+	{
+		if (a.getNamespaceURI() != null || a.getPrefix() != null)
+			elem.setAttributeNS(a.getNamespaceURI(), a.getNodeName(), a.getNodeValue());
+		else
+			elem.setAttribute(a.getNodeName(), a.getNodeValue());
+	}
+	
+	private Wom3Document getDocument(DiffNode node)
+	{
+		Wom3Node n = ((WomDiffNodeAdapter) node).getWomNode();
+		Wom3Document doc = n.getOwnerDocument();
+		if (doc == null)
+			doc = (Wom3Document) n;
+		return doc;
+	}
+}
@@ -20,11 +20,12 @@ package de.fau.cs.osr.hddiff.wom;
 import org.sweble.wom3.Wom3Node;
 
 import de.fau.cs.osr.hddiff.tree.DiffNode;
-import de.fau.cs.osr.hddiff.tree.NodeMetricsInterface;
+import de.fau.cs.osr.hddiff.tree.NodeMetrics64Interface;
+import de.fau.cs.osr.hddiff.utils.HashMixer;
 
 public final class WomNodeMetrics
 		implements
-			NodeMetricsInterface
+			NodeMetrics64Interface
 {
 	@Override
 	public int computeHash(DiffNode node)
@@ -38,6 +39,17 @@ public final class WomNodeMetrics
 		return hash;
 	}
 	
+	@Override
+	public long computeHash64(DiffNode node)
+	{
+		Wom3Node n = ((WomDiffNodeAdapter) node).getWomNode();
+		long hash = HashMixer.combine64(n.getNodeType(), HashMixer.hash64(n.getNodeName()));
+		hash = HashMixer.combine64(hash, HashMixer.hash64(n.getNamespaceURI()));
+		if (node.isTextLeaf())
+			hash = HashMixer.combine64(hash, HashMixer.hash64(node.getTextContent()));
+		return hash;
+	}
+	
 	private int getNamespaceUriHashCode(Wom3Node node)
 	{
 		String uri = node.getNamespaceURI();
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.wom;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import org.sweble.wom3.Wom3Document;
+import org.sweble.wom3.Wom3ElementNode;
+import org.sweble.wom3.Wom3Node;
+import org.sweble.wom3.impl.DocumentImpl;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeUpdate;
+
+public class WomNodeCodecTest
+{
+	private final WomNodeCodec codec = new WomNodeCodec();
+	
+	private final Wom3Document doc = new DocumentImpl();
+	
+	private final WomDiffNodeAdapter root = new WomDiffNodeAdapter(doc);
+	
+	// =========================================================================
+	
+	@Test
+	public void testElementWithAttributesRoundTrips() throws Exception
+	{
+		WomDiffNodeAdapter node = element("p", "class", "lead", "id", "intro");
+		
+		DiffNode read = readNode(writeNode(node));
+		
+		assertEquals(WomDiffNodeAdapter.class, read.getClass());
+		assertTrue(node.isSameNodeType(read));
+		node.compareNativeDeep(read);
+	}
+	
+	@Test
+	public void testElementWithoutAttributesRoundTrips() throws Exception
+	{
+		WomDiffNodeAdapter node = element("p");
+		
+		DiffNode read = readNode(writeNode(node));
+		
+		node.compareNativeDeep(read);
+		assertFalse(((WomDiffNodeAdapter) read).getWomNode().hasAttributes());
+	}
+	
+	@Test
+	public void testTextRoundTrips() throws Exception
+	{
+		WomDiffNodeAdapterText node = text("Some text, with ümlauts");
+		
+		DiffNode read = readNode(writeNode(node));
+		
+		assertEquals(WomDiffNodeAdapterText.class, read.getClass());
+		assertEquals(node.getTextContent(), read.getTextContent());
+		node.compareNativeDeep(read);
+	}
+	
+	@Test
+	public void testAttributeUpdateRoundTrips() throws Exception
+	{
+		WomDiffNodeAdapter a = element("p", "class", "lead");
+		WomDiffNodeAdapter b = element("p", "class", "body", "id", "intro");
+		
+		NodeUpdate update = a.compareWith(b);
+		assertNotNull(update);
+		
+		a.applyUpdate(readUpdate(a, writeUpdate(a, update)));
+		a.compareNativeDeep(b);
+		assertNull(a.compareWith(b));
+	}
+	
+	@Test
+	public void testRemovingAllAttributesRoundTrips() throws Exception
+	{
+		WomDiffNodeAdapter a = element("p", "class", "lead");
+		WomDiffNodeAdapter b = element("p");
+		
+		NodeUpdate update = a.compareWith(b);
+		assertNotNull(update);
+		
+		a.applyUpdate(readUpdate(a, writeUpdate(a, update)));
+		a.compareNativeDeep(b);
+	}
+	
+	@Test
+	public void testTextUpdateRoundTrips() throws Exception
+	{
+		WomDiffNodeAdapterText a = text("old text");
+		WomDiffNodeAdapterText b = text("new text");
+		
+		NodeUpdate update = a.compareWith(b);
+		assertNotNull(update);
+		
+		a.applyUpdate(readUpdate(a, writeUpdate(a, update)));
+		assertEquals("new text", a.getTextContent());
+	}
+	
+	// =========================================================================
+	
+	private WomDiffNodeAdapter element(String name, String... attributes)
+	{
+		Wom3ElementNode elem = (Wom3ElementNode) doc.createElementNS(Wom3Node.WOM_NS_URI, name);
+		for (int i = 0; i < attributes.length; i += 2)
+			elem.setAttribute(attributes[i], attributes[i + 1]);
+		return new WomDiffNodeAdapter(elem);
+	}
+	
+	private WomDiffNodeAdapterText text(String text)
+	{
+		Wom3ElementNode elem = (Wom3ElementNode) doc.createElementNS(Wom3Node.WOM_NS_URI, "text");
+		elem.appendChild(doc.createTextNode(text));
+		return new WomDiffNodeAdapterText(elem);
+	}
+	
+	private byte[] writeNode(DiffNode node) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		codec.writeNode(node, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private DiffNode readNode(byte[] bytes) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		DiffNode node = codec.readNode(root, in);
+		assertEquals(-1, in.read());
+		return node;
+	}
+	
+	private byte[] writeUpdate(DiffNode node, NodeUpdate update) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		codec.writeUpdate(node, update, out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+	
+	private NodeUpdate readUpdate(DiffNode node, byte[] bytes) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		NodeUpdate update = codec.readUpdate(node, in);
+		assertEquals(-1, in.read());
+		return update;
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.Arrays;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.utils.LongIntHashMap;
+
+/**
+ * Ancestor match candidates gathered by the bottom-up pass: pairs of nodes
+ * from T1 and T2 and the weight they have in common.
+ * 
+ * <p>
+ * A pair is keyed by the ids of its nodes ({@code id1 << 32 | id2}) in a
+ * primitive hash table which maps to the number of the candidate. The nodes
+ * and the accumulated weights are stored in arrays indexed by that number.
+ * No object is allocated per candidate or per lookup.
+ */
+final class AncestorCandidates
+{
+	private final LongIntHashMap index;
+
+	private DiffNode[] nodes1;
+
+	private DiffNode[] nodes2;
+
+	private int[] common;
+
+	private int size;
+
+	/** Buffers of sortByCommon() */
+	private long[] sorted = new long[0];
+
+	private int[] order = new int[0];
+
+	// =========================================================================
+
+	public AncestorCandidates(int expectedSize)
+	{
+		int capacity = Math.max(expectedSize, 16);
+		index = new LongIntHashMap(capacity);
+		nodes1 = new DiffNode[capacity];
+		nodes2 = new DiffNode[capacity];
+		common = new int[capacity];
+	}
+
+	// =========================================================================
+
+	/**
+	 * Adds the given weight to the candidate (n1, n2). The candidate is
+	 * created if it does not exist yet.
+	 * 
+	 * @return The number of the candidate.
+	 */
+	public int add(DiffNode n1, DiffNode n2, int weight)
+	{
+		long key = ((long) n1.getId() << 32) | (n2.getId() & 0xFFFFFFFFL);
+		int i = index.putIfAbsent(key, size);
+		if (i == size)
+		{
+			if (size == common.length)
+				grow();
+			nodes1[i] = n1;
+			nodes2[i] = n2;
+			common[i] = weight;
+			++size;
+		}
+		else
+		{
+			common[i] += weight;
+		}
+		return i;
+	}
+
+	/**
+	 * Adds the given weight to an existing candidate.
+	 */
+	public void add(int candidate, int weight)
+	{
+		common[candidate] += weight;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Removes all candidates but keeps the allocated arrays.
+	 */
+	public void clear()
+	{
+		index.clear();
+		Arrays.fill(nodes1, 0, size, null);
+		Arrays.fill(nodes2, 0, size, null);
+		size = 0;
+	}
+
+	public DiffNode getNode1(int i)
+	{
+		return nodes1[i];
+	}
+
+	public DiffNode getNode2(int i)
+	{
+		return nodes2[i];
+	}
+
+	public int getCommon(int i)
+	{
+		return common[i];
+	}
+
+	/**
+	 * @return The candidate numbers ordered by descending common weight in
+	 *         the first size() elements. Candidates with the same weight keep
+	 *         the order in which they were added. The array is reused by the
+	 *         next call.
+	 */
+	public int[] sortByCommon()
+	{
+		if (sorted.length < size)
+		{
+			sorted = new long[common.length];
+			order = new int[common.length];
+		}
+
+		/**
+		 * The inverted weight in the upper half orders by descending weight,
+		 * the candidate number in the lower half breaks ties.
+		 */
+		for (int i = 0; i < size; ++i)
+			sorted[i] = ((long) ~common[i] << 32) | i;
+
+		Arrays.sort(sorted, 0, size);
+
+		for (int i = 0; i < size; ++i)
+			order[i] = (int) sorted[i];
+		return order;
+	}
+
+	// =========================================================================
+
+	private void grow()
+	{
+		int capacity = common.length << 1;
+		nodes1 = Arrays.copyOf(nodes1, capacity);
+		nodes2 = Arrays.copyOf(nodes2, capacity);
+		common = Arrays.copyOf(common, capacity);
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.ArrayList;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.DiffNodeStack;
+import de.fau.cs.osr.hddiff.tree.NodeTypeDictionary;
+import de.fau.cs.osr.hddiff.utils.IntLcsMyers;
+import de.fau.cs.osr.hddiff.utils.LongIntHashMap;
+import de.fau.cs.osr.hddiff.utils.NOCSstr;
+
+/**
+ * The buffers of a diff that can be kept for the next diff: walk stacks,
+ * sibling and path sequences, LCS instances and keys, the candidate table of
+ * the bottom-up pass, the character maps of TNSM and the suffix array and
+ * cover arrays of NOCSstr. The buffers grow to the largest diff seen, except
+ * for LCS traces larger than IntLcsMyers.MAX_RETAINED_TRACE, which are
+ * released after use. The node counts of the last diff are used as the
+ * initial capacities of the next precomputation.
+ * 
+ * <p>
+ * A workspace is meant to be kept per thread and passed to every HDDiff
+ * created on that thread. Only one diff can use a workspace at a time; a diff
+ * that finds its workspace in use throws an IllegalStateException. Once a
+ * diff is finished, its workspace no longer references any node of the
+ * diffed trees.
+ * 
+ * <p>
+ * Node types seen by a diff stay in the workspace's NodeTypeDictionary, the
+ * workspace therefore should only be used for trees with a bounded set of
+ * node types. Diffs of a PreparedTree use the dictionary of the prepared
+ * tree.
+ */
+public final class DiffWorkspace
+{
+	private static final int[] NO_INTS = new int[0];
+
+	private static final long[] NO_LONGS = new long[0];
+
+	// =========================================================================
+
+	private boolean inUse;
+
+	final NodeTypeDictionary nodeTypes = new NodeTypeDictionary();
+
+	final DiffNodeStack walkStack = new DiffNodeStack();
+
+	final DiffNodeStack subtreeStack = new DiffNodeStack();
+
+	// =========================================================================
+	// Node count hints
+
+	int nodeCount1;
+
+	int nodeCount2;
+
+	/** Whether the last diff that used this workspace was degraded. */
+	boolean degraded;
+
+	// =========================================================================
+	// Buffers
+
+	final ArrayList<DiffNode> path1 = new ArrayList<>();
+
+	final ArrayList<DiffNode> path2 = new ArrayList<>();
+
+	final ArrayList<DiffNode> siblingSeq1 = new ArrayList<>();
+
+	final ArrayList<DiffNode> siblingSeq2 = new ArrayList<>();
+
+	final IntLcsMyers pathTypeLcs = new IntLcsMyers();
+
+	final IntLcsMyers childHashLcs = new IntLcsMyers();
+
+	final IntLcsMyers siblingTypeLcs = new IntLcsMyers();
+
+	final LongIntHashMap subtreeHashIds = new LongIntHashMap(16);
+
+	final NOCSstr.Workspace nocss = new NOCSstr.Workspace();
+
+	private AncestorCandidates ancestorCandidates;
+
+	private NodeCharMap nodeMap1;
+
+	private NodeCharMap nodeMap2;
+
+	private int[] lcsKeys1 = NO_INTS;
+
+	private int[] lcsKeys2 = NO_INTS;
+
+	private int[] pathCandidates = NO_INTS;
+
+	private int[] alignPositions = NO_INTS;
+
+	private long[] sortedMatches = NO_LONGS;
+
+	// =========================================================================
+
+	public DiffWorkspace()
+	{
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return Whether the last diff that used this workspace was degraded
+	 *         (see HDDiff.isDegraded()).
+	 */
+	public boolean isDegraded()
+	{
+		return degraded;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @throws IllegalStateException
+	 *             If another diff is using this workspace.
+	 */
+	void acquire()
+	{
+		if (inUse)
+			throw new IllegalStateException("The workspace is used by another diff");
+		inUse = true;
+	}
+
+	/**
+	 * Drops all references to the nodes of the last diff.
+	 */
+	void release()
+	{
+		walkStack.clear();
+		subtreeStack.clear();
+		path1.clear();
+		path2.clear();
+		siblingSeq1.clear();
+		siblingSeq2.clear();
+		if (ancestorCandidates != null)
+			ancestorCandidates.clear();
+		if (nodeMap1 != null)
+			nodeMap1.clear();
+		if (nodeMap2 != null)
+			nodeMap2.clear();
+		inUse = false;
+	}
+
+	// =========================================================================
+
+	AncestorCandidates ancestorCandidates(int expectedSize)
+	{
+		if (ancestorCandidates == null)
+			ancestorCandidates = new AncestorCandidates(expectedSize);
+		else
+			ancestorCandidates.clear();
+		return ancestorCandidates;
+	}
+
+	NodeCharMap nodeMap1(int expectedLeafCount)
+	{
+		if (nodeMap1 == null)
+			nodeMap1 = new NodeCharMap(expectedLeafCount);
+		else
+			nodeMap1.clear();
+		return nodeMap1;
+	}
+
+	NodeCharMap nodeMap2(int expectedLeafCount)
+	{
+		if (nodeMap2 == null)
+			nodeMap2 = new NodeCharMap(expectedLeafCount);
+		else
+			nodeMap2.clear();
+		return nodeMap2;
+	}
+
+	int[] lcsKeys1(int size)
+	{
+		if (lcsKeys1.length < size)
+			lcsKeys1 = new int[grow(lcsKeys1.length, size)];
+		return lcsKeys1;
+	}
+
+	int[] lcsKeys2(int size)
+	{
+		if (lcsKeys2.length < size)
+			lcsKeys2 = new int[grow(lcsKeys2.length, size)];
+		return lcsKeys2;
+	}
+
+	int[] pathCandidates(int size)
+	{
+		if (pathCandidates.length < size)
+			pathCandidates = new int[grow(pathCandidates.length, size)];
+		return pathCandidates;
+	}
+
+	int[] alignPositions(int size)
+	{
+		if (alignPositions.length < size)
+			alignPositions = new int[grow(alignPositions.length, size)];
+		return alignPositions;
+	}
+
+	long[] sortedMatches(int size)
+	{
+		if (sortedMatches.length < size)
+			sortedMatches = new long[grow(sortedMatches.length, size)];
+		return sortedMatches;
+	}
+
+	private static int grow(int length, int minLength)
+	{
+		return Math.max(minLength, 2 * length);
+	}
+}
@@ -19,14 +19,14 @@ package de.fau.cs.osr.hddiff;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.lang3.StringUtils;
 
+import de.fau.cs.osr.hddiff.HDDiffOptions.SubtreeHashMode;
 import de.fau.cs.osr.hddiff.HDDiffOptions.TreeDumpPhases;
 import de.fau.cs.osr.hddiff.editscript.EditOp;
 import de.fau.cs.osr.hddiff.editscript.EditOpDelete;
@@ -34,29 +34,41 @@ import de.fau.cs.osr.hddiff.editscript.EditOpInsert;
 import de.fau.cs.osr.hddiff.editscript.EditOpMove;
 import de.fau.cs.osr.hddiff.editscript.EditOpSplit;
 import de.fau.cs.osr.hddiff.editscript.EditOpUpdate;
+import de.fau.cs.osr.hddiff.editscript.EditScriptListener;
 import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.DiffNodeStack;
+import de.fau.cs.osr.hddiff.tree.FlatTree;
 import de.fau.cs.osr.hddiff.tree.NodeEligibilityTesterInterface;
+import de.fau.cs.osr.hddiff.tree.NodeMetrics64Interface;
 import de.fau.cs.osr.hddiff.tree.NodeMetricsInterface;
+import de.fau.cs.osr.hddiff.tree.NodeStateInterface;
+import de.fau.cs.osr.hddiff.tree.NodeTypeDictionary;
 import de.fau.cs.osr.hddiff.tree.NodeUpdate;
-import de.fau.cs.osr.hddiff.utils.ElementComparatorInterface;
+import de.fau.cs.osr.hddiff.utils.Cancellation;
 import de.fau.cs.osr.hddiff.utils.HDDiffTreeVisualizer;
-import de.fau.cs.osr.hddiff.utils.LcsMyers;
+import de.fau.cs.osr.hddiff.utils.IntLcsMyers;
+import de.fau.cs.osr.hddiff.utils.LongHashIndex;
+import de.fau.cs.osr.hddiff.utils.LongIntHashMap;
 import de.fau.cs.osr.hddiff.utils.NOCSstr;
-import de.fau.cs.osr.hddiff.utils.NOCSstr.CommonSubstring;
+import de.fau.cs.osr.hddiff.utils.NOCSstr.CommonSubstrings;
+import de.fau.cs.osr.hddiff.utils.ParallelSuffixArrayBuilder;
 import de.fau.cs.osr.hddiff.utils.ReportItem;
 import de.fau.cs.osr.hddiff.utils.ReportItem.Timer;
+import de.fau.cs.osr.hddiff.utils.SuffixArrayBuilderInterface;
 import de.fau.cs.osr.utils.ComparisonException;
 
 public class HDDiff
 {
 	private static final int NODE_COUNT_ASSUMPTION = 1000;
 
-	private static final Object DUPLICATE_INDICATOR_1 = new Object();
-
-	private static final SubtreeMatch DUPLICATE_INDICATOR_2 = new SubtreeMatch(null, null, Integer.MIN_VALUE);
-
 	private static final boolean ASSERTIONS = true;
 
+	/**
+	 * Inside a loop the clock and the interrupt flag are only read on every
+	 * 256th check.
+	 */
+	private static final int CHECK_INTERVAL = 0xFF;
+
 	// =========================================================================
 
 	public static List<EditOp> editScript(
@@ -76,6 +88,76 @@ public class HDDiff
 		return new HDDiff(root1, root2, options, report).editScript();
 	}
 
+	/**
+	 * Passes the operations of the edit script to the given listener as they
+	 * are computed instead of collecting them in a list.
+	 */
+	public static void editScript(
+			DiffNode root1,
+			DiffNode root2,
+			HDDiffOptions options,
+			ReportItem report,
+			EditScriptListener listener)
+	{
+		new HDDiff(root1, root2, options, report).editScript(listener);
+	}
+
+	/**
+	 * Reuses the buffers of the given workspace, see DiffWorkspace.
+	 */
+	public static void editScript(
+			DiffNode root1,
+			DiffNode root2,
+			HDDiffOptions options,
+			ReportItem report,
+			DiffWorkspace workspace,
+			EditScriptListener listener)
+	{
+		new HDDiff(root1, root2, options, report, workspace).editScript(listener);
+	}
+
+	/**
+	 * Precomputes a tree once so that it can be diffed as T1 against many
+	 * other trees. Assigns the node ids, also in read-only mode.
+	 */
+	public static PreparedTree prepare(DiffNode root, HDDiffOptions options)
+	{
+		TreePrecomputation pre = new TreePrecomputation(
+				options.getNodeMetrics(),
+				new NodeTypeDictionary(),
+				options.getMinSubtreeWeight(),
+				options.getSubtreeHashMode() == SubtreeHashMode.BITS_64,
+				true,
+				true,
+				options.getPrecomputationForkThreshold(),
+				NODE_COUNT_ASSUMPTION);
+
+		ForkJoinPool pool = options.getPrecomputationPool();
+		if (pool != null)
+			TreePrecomputation.computeInPool(pool, root, pre);
+		else
+			pre.compute(root);
+
+		return new PreparedTree(root, options, pre);
+	}
+
+	/**
+	 * Numbers the nodes of the given tree in pre-order (DiffNode.setId()).
+	 * Diffs in read-only mode do not write to the trees and require both
+	 * trees to be numbered this way, either by this method or by prepare().
+	 */
+	public static void assignIds(DiffNode root)
+	{
+		int id = 0;
+		DiffNodeStack stack = new DiffNodeStack();
+		for (DiffNode n = root; n != null;)
+		{
+			n.setId(id++);
+			DiffNode first = stack.descend(n);
+			n = (first != null) ? first : stack.next();
+		}
+	}
+
 	// =========================================================================
 
 	private final DiffNode root1;
@@ -90,14 +172,83 @@ public class HDDiff
 
 	private final int minSubtreeWeight;
 
+	/**
+	 * Partners are only kept in the node tables and text nodes are split
+	 * virtually.
+	 */
+	private final boolean readOnlyTrees;
+
+	/**
+	 * True if equal subtree hashes imply equal subtrees. Splitting text nodes
+	 * leaves the subtree hashes of the split nodes and their ancestors stale.
+	 */
+	private boolean trustSubtreeHashes;
+
+	// =========================================================================
+	// Budget
+
+	/** System.nanoTime() after which expensive work is skipped */
+	private long deadline;
+
+	private boolean hasDeadline;
+
+	private boolean pastDeadline;
+
+	/** Counts the calls of isPastDeadline() between two clock reads */
+	private int deadlineChecks;
+
+	/** Whether work was skipped because a budget was exceeded */
+	private boolean degraded;
+
+	/** Counts the calls of checkCancelled() between two interrupt checks */
+	private int cancellationChecks;
+
+	// =========================================================================
+	// Traversal
+
+	/**
+	 * Explicit stack for the tree walks of the individual phases. Walks are
+	 * not recursive so that deeply nested documents do not overflow the call
+	 * stack.
+	 */
+	private final DiffNodeStack walkStack;
+
+	/**
+	 * Explicit stack for comparing and mapping subtrees. This happens in the
+	 * middle of walks which occupy the walkStack.
+	 */
+	private final DiffNodeStack subtreeStack;
+
 	// =========================================================================
 	// Precomputation & Subtree matching
 
-	private boolean precomputeT1;
+	private LongHashIndex<DiffNode> subtreeHashes1;
+
+	/** Maps subtree hashes to the matching subtree in T2. */
+	private LongHashIndex<DiffNode> subtreeHashes2;
 
-	private Map<Integer, Object> subtreeHashes1;
+	/** Number of entries returned by sortMatchesByWeight() */
+	private int sortedMatchCount;
 
-	private Map<Integer, SubtreeMatch> subtreeHashes2;
+	// =========================================================================
+	// Node state
+
+	/** Given by the caller if T1 has already been precomputed */
+	private TreePrecomputation pre1;
+
+	private TreePrecomputation pre2;
+
+	/** T1 as it was before the diff */
+	private FlatTree flat1;
+
+	/** T2 as it was before the diff */
+	private FlatTree flat2;
+
+	/** Matching state of the nodes in T1, indexed by DiffNode.getId() */
+	private NodeTable nodes1;
+
+	/** Matching state of the nodes in T2, indexed by DiffNode.getId() */
+	private NodeTable nodes2;
 
 	// =========================================================================
 	// STATS: Precomputation & Subtree matching
@@ -129,6 +280,12 @@ public class HDDiff
 
 	private ArrayList<DiffNode> leafSeq2;
 
+	/** Whether text nodes of T1 are split virtually, see NodeTable */
+	private boolean virtualSplits1;
+
+	/** Whether text nodes of T2 are split virtually, see NodeTable */
+	private boolean virtualSplits2;
+
 	// DEBUG
 	private int splitMatchId = 0;
 
@@ -142,16 +299,22 @@ public class HDDiff
 	// =========================================================================
 	// Bottom Up Top Down pass
 
-	private final Candidate searchCandidate = new Candidate(null, null, -1);
+	private AncestorCandidates ancestorCandidates;
+
+	/**
+	 * Candidates of the last path LCS. Valid as long as the parents of the
+	 * matched node and of its partner don't change.
+	 */
+	private int[] pathCandidates;
 
-	private Map<Candidate, Candidate> ancestorCandidates;
+	private int pathCandidateCount;
 
 	// =========================================================================
 	// STATS: Bottom Up Top Down pass
 
 	private int bottomUpAncestorMatchCount;
 
-	private LcsMyers<DiffNode> pathTypeLcs;
+	private IntLcsMyers pathTypeLcs;
 
 	// =========================================================================
 	// Top Down pass
@@ -160,9 +323,30 @@ public class HDDiff
 
 	private ArrayList<DiffNode> siblingSeq2;
 
-	private LcsMyers<DiffNode> childHashLcs;
+	private IntLcsMyers childHashLcs;
+
+	private IntLcsMyers siblingTypeLcs;
+
+	private boolean matchByLabel;
+
+	/** Dense ids for the subtree hashes in a childHashLcs run */
+	private LongIntHashMap subtreeHashIds;
+
+	/** Whether the time budget ran out during the top-down pass */
+	private boolean topDownDegraded;
+
+	/** Positions of the children of n1, indexed by node id */
+	private int[] alignPositions;
+
+	// =========================================================================
+	// LCS keys
+
+	/** Ids for the node types returned by DiffNode.getType() */
+	private final NodeTypeDictionary nodeTypes;
 
-	private LcsMyers<DiffNode> siblingTypeLcs;
+	private int[] lcsKeys1;
+
+	private int[] lcsKeys2;
 
 	// =========================================================================
 	// STATS: Top Down pass
@@ -185,7 +369,10 @@ public class HDDiff
 
 	// =========================================================================
 
-	private LinkedList<EditOp> editScript;
+	/** Owns the buffers above; private to this diff unless given */
+	private final DiffWorkspace workspace;
+
+	private EditScriptListener editScript;
 
 	// =========================================================================
 
@@ -194,6 +381,40 @@ public class HDDiff
 			DiffNode root2,
 			HDDiffOptions options,
 			ReportItem report)
+	{
+		this(root1, null, root2, options, report, null);
+	}
+
+	/**
+	 * @param workspace
+	 *            Buffers to reuse from earlier diffs. Must not be used by
+	 *            another diff at the same time.
+	 */
+	public HDDiff(
+			DiffNode root1,
+			DiffNode root2,
+			HDDiffOptions options,
+			ReportItem report,
+			DiffWorkspace workspace)
+	{
+		this(root1, null, root2, options, report, workspace);
+	}
+
+	/**
+	 * @param pre1
+	 *            The precomputation of T1 or null if T1 has to be precomputed.
+	 *            Must have been created with an index of the subtree hashes
+	 *            and with the same options.
+	 * @param workspace
+	 *            Buffers to reuse or null if this diff uses its own.
+	 */
+	HDDiff(
+			DiffNode root1,
+			TreePrecomputation pre1,
+			DiffNode root2,
+			HDDiffOptions options,
+			ReportItem report,
+			DiffWorkspace workspace)
 	{
 		if (!root1.isSameNodeType(root2))
 			throw new IllegalArgumentException("We assume that the root "
@@ -202,9 +423,21 @@ public class HDDiff
 
 		this.root1 = root1;
 		this.root2 = root2;
+		this.pre1 = pre1;
+		this.workspace = (workspace != null) ? workspace : new DiffWorkspace();
+		this.walkStack = this.workspace.walkStack;
+		this.subtreeStack = this.workspace.subtreeStack;
+		this.nodeTypes = (pre1 != null) ? pre1.getTypes() : this.workspace.nodeTypes;
 		this.options = options;
 		this.nodeMetrics = options.getNodeMetrics();
 		this.minSubtreeWeight = options.getMinSubtreeWeight();
+		this.readOnlyTrees = options.isReadOnlyTrees();
+		this.virtualSplits1 = readOnlyTrees;
+		this.virtualSplits2 = readOnlyTrees;
+		// Mixed 32 bit node hashes collide as often as the 32 bit hashes do
+		this.trustSubtreeHashes = !options.isVerifySubtreeHashes() &&
+				(options.getSubtreeHashMode() == SubtreeHashMode.BITS_64) &&
+				(nodeMetrics instanceof NodeMetrics64Interface);
 		this.report = report;
 	}
 
@@ -212,30 +445,70 @@ public class HDDiff
 
 	public List<EditOp> editScript()
 	{
-		Timer timer = null;
-		if (report != null)
-			timer = report.startTimer("00) HDDiff");
+		EditScriptCollector collector = new EditScriptCollector();
+		editScript(collector);
+		return collector.editScript;
+	}
 
-		editScript = new LinkedList<>();
+	/**
+	 * Computes the edit script and passes its operations to the given
+	 * listener.
+	 * 
+	 * <p>
+	 * The diff can be cancelled by interrupting the calling thread. It is
+	 * checked between the phases and periodically inside the long running
+	 * loops (tree walks, LCS computations, suffix array construction). On
+	 * cancellation a CancellationException is thrown and the interrupt flag
+	 * stays set. The trees are then left as follows:
+	 * <ul>
+	 * <li>The operations passed to the listener so far do not form a valid
+	 * edit script and must be discarded.</li>
+	 * <li>Nodes of both trees may have partners set, unless the trees are
+	 * read-only. Call unmapDeep() on both roots before diffing them again.
+	 * </li>
+	 * <li>If TNSM had started, text nodes of both trees may have been split,
+	 * unless they were split virtually as in read-only mode. Each split leaves
+	 * the text content of the tree unchanged.</li>
+	 * <li>The node ids are the pre-order indexes assigned during
+	 * precomputation.</li>
+	 * </ul>
+	 * Apart from splits the structure of the trees is not changed; inserted
+	 * nodes are only created, not attached.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the workspace of this diff is used by another diff.
+	 */
+	public void editScript(EditScriptListener listener)
+	{
+		resetEditScript(listener);
 
+		Timer timer = null;
+		workspace.acquire();
 		try
 		{
+			if (report != null)
+				timer = report.startTimer("00) HDDiff");
+
+			checkCancelled(true);
 			precompute();
 
 			if (options.getDumpTreesPhase() == TreeDumpPhases.AFTER_PRECOMPUTE)
-				HDDiffTreeVisualizer.drawGraph(options, root1, root2);
+				HDDiffTreeVisualizer.drawGraph(options, root1, nodes1, root2, nodes2);
+
+			checkCancelled(true);
 
 			boolean complete = false;
 			complete = greedySubtreeMatching();
 
 			if (complete)
 			{
-				// Also checks for updates
-				ssrMapSubtrees(root1, root2);
+				// Also checks for updates. If the hashes of the roots merely
+				// collided, the trees are diffed in full.
+				complete = ssrMapSubtrees(root1, root2);
 			}
 
 			if (options.getDumpTreesPhase() == TreeDumpPhases.AFTER_SSR)
-				HDDiffTreeVisualizer.drawGraph(options, root1, root2);
+				HDDiffTreeVisualizer.drawGraph(options, root1, nodes1, root2, nodes2);
 
 			if (!complete)
 			{
@@ -245,26 +518,43 @@ public class HDDiff
 				 * properties/values might still differ, in which case an update
 				 * operation will be added to the edit script laters.
 				 */
-				mapFull(root1, root2);
+				mapRoots();
+
+				checkCancelled(true);
 
+				// TNSM splits text nodes in place or virtually
 				if (options.isTnsmEnabled())
-					textNodeSplitMatching();
+				{
+					if (isPastDeadline(true))
+						degrade("TNSM skipped");
+					else
+						textNodeSplitMatching();
+				}
 
 				if (options.getDumpTreesPhase() == TreeDumpPhases.AFTER_TNSM)
-					HDDiffTreeVisualizer.drawGraph(options, root1, root2);
+					HDDiffTreeVisualizer.drawGraph(options, root1, nodes1, root2, nodes2);
 
 				if (!options.isOnlySplitNodes())
 				{
-					bottomUpMatching();
+					checkCancelled(true);
+
+					if (isPastDeadline(true))
+						degrade("bottom-up matching skipped");
+					else
+						bottomUpMatching();
 
 					if (options.getDumpTreesPhase() == TreeDumpPhases.AFTER_TREE2TREE_BOTTOMUP)
-						HDDiffTreeVisualizer.drawGraph(options, root1, root2);
+						HDDiffTreeVisualizer.drawGraph(options, root1, nodes1, root2, nodes2);
+
+					checkCancelled(true);
 
 					// Also builds edit script
 					topDownMatching();
 
 					if (options.getDumpTreesPhase() == TreeDumpPhases.AFTER_TREE2TREE_TOPDOWN)
-						HDDiffTreeVisualizer.drawGraph(options, root1, root2);
+						HDDiffTreeVisualizer.drawGraph(options, root1, nodes1, root2, nodes2);
+
+					checkCancelled(true);
 
 					gatherDeletes();
 				}
@@ -272,16 +562,104 @@ public class HDDiff
 		}
 		finally
 		{
+			rememberNodeCounts();
+			workspace.degraded = degraded;
+			workspace.release();
+
 			if (timer != null)
 				timer.stop();
 		}
+	}
+
+	/**
+	 * @return Whether the time budget or the TNSM leaf string budget was
+	 *         exceeded and the edit script is therefore coarser than it would
+	 *         be otherwise. The edit script is still valid.
+	 */
+	public boolean isDegraded()
+	{
+		return degraded;
+	}
+
+	/**
+	 * @return The matching state of the nodes of T1. In read-only mode this
+	 *         is the only place where the partners can be looked up.
+	 */
+	public NodeStateInterface getNodeState1()
+	{
+		return nodes1;
+	}
 
-		return editScript;
+	/**
+	 * @return The matching state of the nodes of T2.
+	 */
+	public NodeStateInterface getNodeState2()
+	{
+		return nodes2;
 	}
 
 	// =========================================================================
+	// The individual phases are package-private so that they can be driven
+	// (and measured) one by one, see HDDiffPhases. Outside of editScript() the
+	// caller has to call them in the same order as editScript() does.
+
+	void resetEditScript()
+	{
+		resetEditScript(new EditScriptCollector());
+	}
+
+	void resetEditScript(EditScriptListener listener)
+	{
+		editScript = listener;
+
+		long budget = options.getTimeBudgetMillis();
+		hasDeadline = (budget > 0);
+		if (hasDeadline)
+			deadline = System.nanoTime() + budget * 1000000L;
+		pastDeadline = options.isTimeBudgetExpired();
+		deadlineChecks = 0;
+		degraded = false;
+		cancellationChecks = 0;
+	}
+
+	/**
+	 * Reads the clock only every so many calls once the check happens inside
+	 * a loop.
+	 */
+	private boolean isPastDeadline(boolean force)
+	{
+		if (pastDeadline)
+			return true;
+		if (!hasDeadline)
+			return false;
+		if (!force && ((++deadlineChecks & CHECK_INTERVAL) != 0))
+			return false;
+		pastDeadline = (System.nanoTime() - deadline >= 0);
+		return pastDeadline;
+	}
+
+	/**
+	 * @throws CancellationException
+	 *             If the calling thread has been interrupted.
+	 */
+	private void checkCancelled(boolean force)
+	{
+		if (!force && ((++cancellationChecks & CHECK_INTERVAL) != 0))
+			return;
+		Cancellation.checkInterrupted();
+	}
+
+	private void degrade(String reason)
+	{
+		degraded = true;
+		if (report != null)
+		{
+			report.recordFigure("00.00) HDDiff: degraded", 1, "#");
+			report.warn("HDDiff degraded: %s", reason);
+		}
+	}
 
-	private void precompute()
+	void precompute()
 	{
 		precomputationWalk();
 	}
@@ -294,13 +672,50 @@ public class HDDiff
 
 		try
 		{
+			int forkThreshold = options.getPrecomputationForkThreshold();
+			boolean hash64 = (options.getSubtreeHashMode() == SubtreeHashMode.BITS_64);
+
+			ForkJoinPool pool = options.getPrecomputationPool();
+			if (pre1 != null)
+			{
+				// T1 has been precomputed by the caller
+				pre2 = new TreePrecomputation(nodeMetrics, nodeTypes, minSubtreeWeight, hash64, false, !readOnlyTrees, forkThreshold, estimateCapacityT2(pre1.getNodeCount()));
+				if (pool != null)
+					TreePrecomputation.computeInPool(pool, root2, pre2);
+				else
+					pre2.compute(root2);
+			}
+			else if (pool != null)
+			{
+				pre1 = new TreePrecomputation(nodeMetrics, nodeTypes, minSubtreeWeight, hash64, true, !readOnlyTrees, forkThreshold, nodeCountHint(workspace.nodeCount1));
+				pre2 = new TreePrecomputation(nodeMetrics, nodeTypes, minSubtreeWeight, hash64, false, !readOnlyTrees, forkThreshold, nodeCountHint(workspace.nodeCount2));
+				TreePrecomputation.computeConcurrently(pool, root1, pre1, root2, pre2);
+			}
+			else
+			{
+				pre1 = new TreePrecomputation(nodeMetrics, nodeTypes, minSubtreeWeight, hash64, true, !readOnlyTrees, forkThreshold, nodeCountHint(workspace.nodeCount1));
+				pre1.compute(root1);
+
+				pre2 = new TreePrecomputation(nodeMetrics, nodeTypes, minSubtreeWeight, hash64, false, !readOnlyTrees, forkThreshold, estimateCapacityT2(pre1.getNodeCount()));
+				pre2.compute(root2);
+			}
+
 			// Do T1
 			{
-				leafSeq1 = new ArrayList<>(NODE_COUNT_ASSUMPTION);
-				subtreeHashes1 = new HashMap<>(NODE_COUNT_ASSUMPTION);
+				leafSeq1 = pre1.getLeafSeq();
+				subtreeHashes1 = pre1.getSubtreeHashes();
+				flat1 = pre1.getFlatTree();
+				nodes1 = pre1.getNodeTable();
+				nodeCount1 = pre1.getNodeCount();
+				leafCount1 = pre1.getLeafCount();
+				textLength1 = pre1.getTextLength();
+				ssrSuitableSubtreeCount1 = pre1.getSuitableSubtreeCount();
 
-				precomputeT1 = true;
-				precompute(root1);
+				if (isWarningEnabled())
+				{
+					for (int i = 0; i < pre1.getHashCollisionCount(); ++i)
+						report.warn("00.01) SSR: Subtree hash collision in T1!");
+				}
 
 				if (report != null)
 				{
@@ -313,21 +728,12 @@ public class HDDiff
 
 			// Do T2
 			{
-				/**
-				 * 1.2f is an arbitrary guess that was never tested... It simply
-				 * makes sure that the initial capacity is sufficient if the
-				 * document grew slightly in size.
-				 */
-				int initialCapacity = (int) (nodeCount1 * 1.2f);
-				leafSeq2 = new ArrayList<>(initialCapacity);
-				subtreeHashes2 = new HashMap<>(initialCapacity);
-
-				// Make sure subtreeHashes1 is not written for T2
-				Map<Integer, Object> subtreeHashes1tmp = subtreeHashes1;
-				subtreeHashes1 = null;
-
-				precomputeT1 = false;
-				precompute(root2);
+				leafSeq2 = pre2.getLeafSeq();
+				flat2 = pre2.getFlatTree();
+				nodes2 = pre2.getNodeTable();
+				nodeCount2 = pre2.getNodeCount();
+				leafCount2 = pre2.getLeafCount();
+				textLength2 = pre2.getTextLength();
 
 				if (report != null)
 				{
@@ -336,8 +742,6 @@ public class HDDiff
 					report.recordFigure("00.01.c) PRECOMP: Inner nodes in T2", nodeCount2 - leafCount2, "#");
 					report.recordFigure("00.01.d) PRECOMP: Text length in T2", textLength2, "#");
 				}
-
-				subtreeHashes1 = subtreeHashes1tmp;
 			}
 		}
 		finally
@@ -347,88 +751,65 @@ public class HDDiff
 		}
 	}
 
-	private void precompute(DiffNode node)
+	/**
+	 * @return The node count of the same tree in the last diff that used the
+	 *         workspace or NODE_COUNT_ASSUMPTION.
+	 */
+	private static int nodeCountHint(int lastNodeCount)
 	{
-		DiffNode child = node.getFirstChild();
-		if (child != null)
-		{
-			// node is a inner node
-			do
-			{
-				precompute(child);
-				child = child.getNextSibling();
-			} while (child != null);
-		}
-		else
-		{
-			// node is a leaf node
-			if (leafSeq2 != null)
-				leafSeq2.add(node);
-			else if (leafSeq1 != null)
-				leafSeq1.add(node);
-
-			int textSize = 0;
-			if (node.isTextLeaf())
-				textSize = node.getTextContent().length();
-
-			if (precomputeT1)
-			{
-				textLength1 += textSize;
-				++leafCount1;
-			}
-			else
-			{
-				textLength2 += textSize;
-				++leafCount2;
-			}
-		}
-
-		// post-order visit
-
-		DiffNode parent = node.getParent();
+		return (lastNodeCount > 0) ? lastNodeCount : NODE_COUNT_ASSUMPTION;
+	}
 
-		int newWeight = node.addWeight(nodeMetrics.computeWeight(node));
-		int newHash = node.updateSubtreeHash(nodeMetrics.computeHash(node));
+	private void rememberNodeCounts()
+	{
+		if (nodeCount1 > 0)
+			workspace.nodeCount1 = nodeCount1;
+		if (nodeCount2 > 0)
+			workspace.nodeCount2 = nodeCount2;
+	}
 
-		if (parent != null)
-		{
-			parent.addWeight(newWeight);
-			parent.updateSubtreeHash(31 * newHash);
-		}
+	private static int estimateCapacityT2(int nodeCount1)
+	{
+		/**
+		 * 1.2f is an arbitrary guess that was never tested... It simply makes
+		 * sure that the initial capacity is sufficient if the document grew
+		 * slightly in size.
+		 */
+		return (int) (nodeCount1 * 1.2f);
+	}
 
-		if ((subtreeHashes1 != null) &&
-				(newWeight >= minSubtreeWeight))
-		{
-			Object old = subtreeHashes1.put(newHash, node);
-			++ssrSuitableSubtreeCount1;
+	/**
+	 * Lets the diff split the text nodes of the given trees virtually (see
+	 * NodeTable) so that the trees stay unchanged, as they do in read-only
+	 * mode. Must be called before editScript().
+	 */
+	void setVirtualSplits(boolean inT1, boolean inT2)
+	{
+		virtualSplits1 = readOnlyTrees || inT1;
+		virtualSplits2 = readOnlyTrees || inT2;
+	}
 
-			/**
-			 * There's a possibility of hash collisions here. But checking the
-			 * suspected subtrees for real equality is too expensive. It would
-			 * be done for duplicate subtrees as well as for hash collisions. We
-			 * assume that hash collisions are far more unlikely then duplicate
-			 * trees and accept that we might accidently flag a subtree as
-			 * duplicate although it isn't. This decreases (initial) match
-			 * quality but does not affect correctness.
-			 */
-			if (old != null)
-			{
-				if (isWarningEnabled())
-					report.warn("00.01) SSR: Subtree hash collision in T1!");
+	/**
+	 * Hands the precomputation of T2 over to the next diff, which diffs T2 as
+	 * its T1. Only the subtree hash index is built. T2 must have been split
+	 * virtually and its partners must have been cleared.
+	 */
+	TreePrecomputation precomputeT2AsT1()
+	{
+		if (!virtualSplits2)
+			throw new IllegalStateException("T2 was split in place");
 
-				subtreeHashes1.put(newHash, DUPLICATE_INDICATOR_1);
-			}
-		}
+		int forkThreshold = options.getPrecomputationForkThreshold();
+		boolean hash64 = (options.getSubtreeHashMode() == SubtreeHashMode.BITS_64);
 
-		if (precomputeT1)
-			++nodeCount1;
-		else
-			++nodeCount2;
+		TreePrecomputation next = new TreePrecomputation(nodeMetrics, nodeTypes, minSubtreeWeight, hash64, true, !readOnlyTrees, forkThreshold, nodeCount2);
+		next.takeOver(pre2);
+		return next;
 	}
 
 	// =========================================================================
 
-	private boolean greedySubtreeMatching()
+	boolean greedySubtreeMatching()
 	{
 		Timer timer = null;
 		if (report != null)
@@ -443,7 +824,13 @@ public class HDDiff
 
 				try
 				{
-					if (matchSubtreesInT2(root2))
+					/**
+					 * Only hashes found in T1 are added, the table therefore
+					 * never has to grow.
+					 */
+					subtreeHashes2 = new LongHashIndex<>(subtreeHashes1.size());
+
+					if (matchSubtreesInT2())
 						// The tree's structure is identical
 						return true;
 				}
@@ -461,11 +848,7 @@ public class HDDiff
 
 				try
 				{
-					SubtreeMatch[] n2sorted = subtreeHashes2.values().toArray(
-							new SubtreeMatch[subtreeHashes2.size()]);
-
-					Arrays.sort(n2sorted);
-					mapAllSubtrees(n2sorted);
+					mapAllSubtrees(sortMatchesByWeight());
 					return false;
 				}
 				finally
@@ -486,29 +869,46 @@ public class HDDiff
 		}
 	}
 
-	private boolean matchSubtreesInT2(DiffNode n2)
+	private boolean matchSubtreesInT2()
+	{
+		if ((nodes2.getWeight(root2) >= minSubtreeWeight) &&
+				(subtreeHashes1.getUnique(nodes2.getSubtreeHash(root2)) == root1))
+			// The tree's structure is identical
+			return true;
+
+		// Pre-order walk, skipping subtrees by their size
+		int size = flat2.size();
+		for (int i = 0; i < size;)
+		{
+			if (matchSubtreeInT2(flat2.getNode(i)))
+				++i;
+			else
+				i += flat2.getSubtreeSize(i);
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return Whether the children of the given node should be visited.
+	 */
+	private boolean matchSubtreeInT2(DiffNode n2)
 	{
 		// No point in checking for match or descending further if weight of 
 		// this node is not sufficient.
-		int weight = n2.getWeight();
+		int weight = nodes2.getWeight(n2);
 		if (weight >= minSubtreeWeight)
 		{
 			boolean descend;
 
 			++ssrSuitableSubtreeCount2;
 
-			int hash = n2.getSubtreeHash();
-			Object partnerObj = subtreeHashes1.get(hash);
-			if ((partnerObj != null) && (partnerObj != DUPLICATE_INDICATOR_1))
+			long hash = nodes2.getSubtreeHash(n2);
+			DiffNode n1 = subtreeHashes1.getUnique(hash);
+			if (n1 != null)
 			{
-				DiffNode n1 = (DiffNode) partnerObj;
-
 				if ((n1 == root1) || (n2 == root2))
 				{
-					boolean identical = ((n1 == root1) && (n2 == root2));
-					if (identical)
-						return true;
-
 					/**
 					 * We cannot match one root to anything else but the other
 					 * root. If a root matches some subtree we have to ignore
@@ -518,10 +918,6 @@ public class HDDiff
 				}
 				else
 				{
-					SubtreeMatch old2 = subtreeHashes2.put(
-							hash,
-							new SubtreeMatch(n1, n2, weight));
-
 					/**
 					 * There's a possibility of hash collisions here. But
 					 * checking the suspected subtrees for real equality is too
@@ -532,12 +928,10 @@ public class HDDiff
 					 * duplicate although it isn't. This decreases (initial)
 					 * match quality but does not affect correctness.
 					 */
-					if ((old2 != null) || (old2 == DUPLICATE_INDICATOR_2))
+					if (!subtreeHashes2.putOrMarkDuplicate(hash, n2))
 					{
 						if (isWarningEnabled())
 							report.warn("00.02.01) SSR: Subtree hash collision in T2!");
-
-						subtreeHashes2.put(hash, DUPLICATE_INDICATOR_2);
 					}
 
 					/**
@@ -554,31 +948,48 @@ public class HDDiff
 			else
 				descend = true;
 
-			if (descend)
+			return descend;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Packs the weight of each unique match in T2 together with the match's
+	 * slot in subtreeHashes2 into a long and sorts these ASCENDING by weight.
+	 * Duplicates are left out.
+	 */
+	private long[] sortMatchesByWeight()
+	{
+		long[] sorted = workspace.sortedMatches(subtreeHashes2.size());
+		int count = 0;
+		for (int slot = 0; slot < subtreeHashes2.capacity(); ++slot)
+		{
+			if (subtreeHashes2.isUniqueAt(slot))
 			{
-				for (DiffNode c2 = n2.getFirstChild(); c2 != null; c2 = c2.getNextSibling())
-					matchSubtreesInT2(c2);
+				long weight = nodes2.getWeight(subtreeHashes2.valueAt(slot));
+				sorted[count++] = (weight << 32) | slot;
 			}
 		}
 
-		return false;
+		Arrays.sort(sorted, 0, count);
+		sortedMatchCount = count;
+		return sorted;
 	}
 
-	private void mapAllSubtrees(SubtreeMatch[] n2sorted)
+	private void mapAllSubtrees(long[] sorted)
 	{
-		for (int i = 0; i < n2sorted.length; ++i)
+		// Heaviest subtrees first
+		for (int i = sortedMatchCount - 1; i >= 0; --i)
 		{
-			SubtreeMatch match = n2sorted[i];
-			if (match == DUPLICATE_INDICATOR_2)
-				// Due to the sorting only duplicates can follow.
-				break;
+			int slot = (int) sorted[i];
 
-			DiffNode n1 = match.n1;
-			DiffNode n2 = match.n2;
+			DiffNode n1 = subtreeHashes1.getUnique(subtreeHashes2.keyAt(slot));
+			DiffNode n2 = subtreeHashes2.valueAt(slot);
 
 			// Subtree is subtree of an already matched subtree.
 			// TODO: Can that even happen?
-			if (isMatched(n1) || isMatched(n2))
+			if (isMatched(nodes1, n1) || isMatched(nodes2, n2))
 				continue;
 
 			ssrMapSubtrees(n1, n2);
@@ -593,7 +1004,12 @@ public class HDDiff
 		}
 	}
 
-	private void ssrMapSubtrees(DiffNode n1, DiffNode n2)
+	void mapRoots()
+	{
+		mapFull(root1, root2);
+	}
+
+	private boolean ssrMapSubtrees(DiffNode n1, DiffNode n2)
 	{
 		int nodesMatched = mapSubtrees(n1, n2);
 		if (nodesMatched > 0)
@@ -601,11 +1017,12 @@ public class HDDiff
 			ssrSubtreeNodeMatchCount += nodesMatched;
 			++ssrSubtreeMatchCount;
 		}
+		return (nodesMatched > 0);
 	}
 
 	// =========================================================================
 
-	private void textNodeSplitMatching()
+	void textNodeSplitMatching()
 	{
 		Timer timer = null;
 		if (report != null)
@@ -617,8 +1034,8 @@ public class HDDiff
 
 			String str1;
 			String str2;
-			ArrayList<NodeCharPos> nodeMap1 = new ArrayList<>(textLength1);
-			ArrayList<NodeCharPos> nodeMap2 = new ArrayList<>(textLength2);
+			NodeCharMap nodeMap1 = workspace.nodeMap1(leafCount1);
+			NodeCharMap nodeMap2 = workspace.nodeMap2(leafCount2);
 			{
 				Timer timer2 = null;
 				if (report != null)
@@ -647,7 +1064,13 @@ public class HDDiff
 				report.recordFigure("00.03.01.b) TNSM: Leaf string length in T2", str2.length(), "#chr");
 			}
 
-			List<CommonSubstring> nocss;
+			if ((long) str1.length() + str2.length() > options.getTnsmMaxLeafStringLength())
+			{
+				degrade("TNSM skipped, leaf strings too long");
+				return;
+			}
+
+			CommonSubstrings nocss;
 			{
 				Timer timer2 = null;
 				if (report != null)
@@ -660,6 +1083,8 @@ public class HDDiff
 							str2,
 							NOCSstr.MARKER_SEQ_D_MIN + 1,
 							options.getTnsmSubstringJudge(),
+							getTnsmSuffixArrayBuilder(),
+							workspace.nocss,
 							null/*report*/);
 				}
 				finally
@@ -681,16 +1106,25 @@ public class HDDiff
 				try
 				{
 					int nocssCount = nocss.size();
-					int maxNocsLen = nocss.get(0).len;
-					int minNocsLen = nocss.get(nocssCount - 1).len;
+					int maxNocsLen = nocss.getLength(0);
+					int minNocsLen = nocss.getLength(nocssCount - 1);
 					if (report != null)
 					{
 						report.recordFigure("00.03.03.a) TNSM: Max NOCS length", maxNocsLen, "#chr");
 						report.recordFigure("00.03.03.c) TNSM: Min NOCS length", minNocsLen, "#chr");
 					}
 
-					for (CommonSubstring nocs : nocss)
-						splitMatchedTexts(str1, str2, nodeMap1, nodeMap2, nocs);
+					for (int i = 0; i < nocssCount; ++i)
+					{
+						splitMatchedTexts(
+								str1,
+								str2,
+								nodeMap1,
+								nodeMap2,
+								nocss.getStart1(i),
+								nocss.getStart2(i),
+								nocss.getLength(i));
+					}
 
 					if (report != null)
 					{
@@ -715,19 +1149,33 @@ public class HDDiff
 		}
 	}
 
+	private SuffixArrayBuilderInterface getTnsmSuffixArrayBuilder()
+	{
+		SuffixArrayBuilderInterface saBuilder = options.getTnsmSuffixArrayBuilder();
+		if (options.getTnsmPool() == null)
+			return saBuilder;
+
+		return new ParallelSuffixArrayBuilder(
+				options.getTnsmPool(),
+				options.getTnsmParallelThreshold(),
+				saBuilder);
+	}
+
 	private String unmatchedLeafString(
 			boolean left,
 			NodeEligibilityTesterInterface tester,
 			ArrayList<DiffNode> seq,
-			ArrayList<NodeCharPos> nodeCharPos)
+			NodeCharMap nodeMap)
 	{
 		int nodeCounter = 0;
 
+		NodeTable nodes = left ? nodes1 : nodes2;
+
 		boolean hadSep = false;
 		StringBuilder sb = new StringBuilder(left ? textLength1 : textLength2);
 		for (DiffNode node : seq)
 		{
-			if (!isMatched(node))
+			if (!isMatched(nodes, node))
 			{
 				if (tester.isEligible(node))
 				{
@@ -736,8 +1184,7 @@ public class HDDiff
 					if (textContent != null)
 					{
 						sb.append(textContent);
-						for (int i = 0; i < textContent.length(); ++i)
-							nodeCharPos.add(new NodeCharPos(node, i));
+						nodeMap.append(node, textContent.length());
 						hadSep = false;
 					}
 				}
@@ -747,7 +1194,7 @@ public class HDDiff
 				if (!hadSep)
 				{
 					sb.append((char) NOCSstr.MARKER_SEQ_D_MIN);
-					nodeCharPos.add(new NodeCharPos(node, -1));
+					nodeMap.append(node, 1);
 					hadSep = true;
 				}
 			}
@@ -768,62 +1215,54 @@ public class HDDiff
 	private void splitMatchedTexts(
 			String str1,
 			String str2,
-			ArrayList<NodeCharPos> nodeMap1,
-			ArrayList<NodeCharPos> nodeMap2,
-			CommonSubstring nocs)
+			NodeCharMap nodeMap1,
+			NodeCharMap nodeMap2,
+			int start1,
+			int start2,
+			int len)
 	{
-		boolean addSplitIds = options.isAddSplitIds();
-		boolean recordSplitOps = options.isRecordSplitOps();
-
-		int start1 = nocs.start1;
-		int start2 = nocs.start2;
-		int len = nocs.len;
+		// Virtually split trees are not written to
+		boolean addSplitIds = options.isAddSplitIds() && !virtualSplits1 && !virtualSplits2;
 
 		int splitCounter = 0;
 		int matchCounter = 0;
 
-		NodeCharPos lastNcp1 = (start1 > 0) ? nodeMap1.get(start1 - 1) : null;
-		NodeCharPos lastNcp2 = (start2 > 0) ? nodeMap2.get(start2 - 1) : null;
-
-		NodeCharPos ncp1 = nodeMap1.get(start1);
-		NodeCharPos ncp2 = nodeMap2.get(start2);
-
-		DiffNode curNode1 = ncp1.node;
-		int curNode1PosCorrect = 0;
+		DiffNode curNode1 = nodeMap1.nodeAt(start1);
 
 		// We have to split if we don't start at node boundary
-		DiffNode startSplit1 = null;
-		if ((lastNcp1 != null) && (lastNcp1.node == ncp1.node))
+		if ((start1 > 0) && (nodeMap1.nodeAt(start1 - 1) == curNode1))
 		{
-			startSplit1 = curNode1 = splitText(ncp1.node, ncp1.pos, recordSplitOps);
-			ncp1.node.setWeight(nodeMetrics.computeWeight(ncp1.node));
-			ncp1.node.setSplit(true);
-			curNode1PosCorrect = ncp1.pos;
+			DiffNode node1 = curNode1;
+			curNode1 = splitText(nodeMap1, start1, true/*inT1*/);
+			node1 = nodes1.substitute(node1);
+			nodes1.setWeight(node1, nodeMetrics.computeWeight(node1));
+			nodes1.setSplit(node1, true);
 			++splitCounter;
 			++nocssNodeSplitCount;
 		}
 
-		DiffNode curNode2 = ncp2.node;
-		int curNode2PosCorrect = 0;
+		DiffNode curNode2 = nodeMap2.nodeAt(start2);
 
-		DiffNode startSplit2 = null;
-		if ((lastNcp2 != null) && (lastNcp2.node == ncp2.node))
+		if ((start2 > 0) && (nodeMap2.nodeAt(start2 - 1) == curNode2))
 		{
-			startSplit2 = curNode2 = splitText(ncp2.node, ncp2.pos, false/*recordSplitOps*/);
-			ncp2.node.setWeight(nodeMetrics.computeWeight(ncp2.node));
-			ncp2.node.setSplit(true);
-			curNode2PosCorrect = ncp2.pos;
+			DiffNode node2 = curNode2;
+			curNode2 = splitText(nodeMap2, start2, false/*inT1*/);
+			node2 = nodes2.substitute(node2);
+			nodes2.setWeight(node2, nodeMetrics.computeWeight(node2));
+			nodes2.setSplit(node2, true);
 			++splitCounter;
 			++nocssNodeSplitCount;
 		}
 
 		for (int i = 1; i <= len; ++i)
 		{
-			lastNcp1 = ncp1;
-			lastNcp2 = ncp2;
+			/**
+			 * The map always reflects the splits done so far, the nodes of
+			 * the previous character are therefore curNode1 and curNode2.
+			 */
 
 			// Binary search for break
-			i = binarySearchBreak(nodeMap1, nodeMap2, lastNcp1, lastNcp2, start1, start2, i, len);
+			i = binarySearchBreak(nodeMap1, nodeMap2, curNode1, curNode2, start1, start2, i, len);
 
 			if (addSplitIds)
 			{
@@ -832,24 +1271,26 @@ public class HDDiff
 				++splitMatchId;
 			}
 
+			DiffNode next1;
+			DiffNode next2;
 			boolean break1;
 			boolean break2;
 			boolean endNocs = (i >= len);
 			if (!endNocs)
 			{
-				ncp1 = nodeMap1.get(start1 + i);
-				ncp2 = nodeMap2.get(start2 + i);
+				next1 = nodeMap1.nodeAt(start1 + i);
+				next2 = nodeMap2.nodeAt(start2 + i);
 				// Means: node in T1 breaks
-				break1 = lastNcp1.node != ncp1.node;
-				break2 = lastNcp2.node != ncp2.node;
+				break1 = curNode1 != next1;
+				break2 = curNode2 != next2;
 			}
 			else
 			{
-				ncp1 = (start1 + i < nodeMap1.size()) ? nodeMap1.get(start1 + i) : null;
-				ncp2 = (start2 + i < nodeMap2.size()) ? nodeMap2.get(start2 + i) : null;
+				next1 = (start1 + i < nodeMap1.length()) ? nodeMap1.nodeAt(start1 + i) : null;
+				next2 = (start2 + i < nodeMap2.length()) ? nodeMap2.nodeAt(start2 + i) : null;
 				// Means: node in T1 continues but has to be split at NOCSstr end
-				break1 = (ncp1 != null) && (lastNcp1.node == ncp1.node);
-				break2 = (ncp2 != null) && (lastNcp2.node == ncp2.node);
+				break1 = (next1 != null) && (curNode1 == next1);
+				break2 = (next2 != null) && (curNode2 == next2);
 			}
 
 			DiffNode na1 = curNode1;
@@ -862,37 +1303,27 @@ public class HDDiff
 			 */
 			if ((break1 && !break2 && !endNocs) || (break2 && endNocs))
 			{
-				curNode2 = splitText(na2, ncp2.pos - curNode2PosCorrect, false/*recordSplitOps*/);
-				curNode2PosCorrect = ncp2.pos;
+				curNode2 = splitText(nodeMap2, start2 + i, false/*inT1*/);
 				++splitCounter;
 				++nocssNodeSplitCount;
-
-				if (break2)
-					correctNodeMapForward(nodeMap2, start2 + i, ncp2.node, curNode2, curNode2PosCorrect);
 			}
 
 			if ((break2 && !break1 && !endNocs) || (break1 && endNocs))
 			{
-				curNode1 = splitText(na1, ncp1.pos - curNode1PosCorrect, recordSplitOps);
-				curNode1PosCorrect = ncp1.pos;
+				curNode1 = splitText(nodeMap1, start1 + i, true/*inT1*/);
 				++splitCounter;
 				++nocssNodeSplitCount;
-
-				if (break1)
-					correctNodeMapForward(nodeMap1, start1 + i, ncp1.node, curNode1, curNode1PosCorrect);
 			}
 
-			if (break1)
-			{
-				curNode1 = ncp1.node;
-				curNode1PosCorrect = 0;
-			}
+			if (break1 && !endNocs)
+				curNode1 = next1;
 
-			if (break2)
-			{
-				curNode2 = ncp2.node;
-				curNode2PosCorrect = 0;
-			}
+			if (break2 && !endNocs)
+				curNode2 = next2;
+
+			// A node that was split virtually has been replaced by its copy
+			na1 = nodes1.substitute(na1);
+			na2 = nodes2.substitute(na2);
 
 			if ((break1 || break2) || endNocs)
 			{
@@ -901,28 +1332,23 @@ public class HDDiff
 				++matchCounter;
 				++nocssNodeMatchCount;
 
-				curNode1.setSplit(true);
+				nodes1.setSplit(curNode1, true);
 				if (curNode1 != na1)
 				{
-					na1.setSplit(true);
-					na1.setWeight(nodeMetrics.computeWeight(na1));
-					curNode1.setWeight(nodeMetrics.computeWeight(curNode1));
+					nodes1.setSplit(na1, true);
+					nodes1.setWeight(na1, nodeMetrics.computeWeight(na1));
+					nodes1.setWeight(curNode1, nodeMetrics.computeWeight(curNode1));
 				}
-				curNode2.setSplit(true);
+				nodes2.setSplit(curNode2, true);
 				if (curNode2 != na2)
 				{
-					na2.setSplit(true);
-					na2.setWeight(nodeMetrics.computeWeight(na2));
-					curNode2.setWeight(nodeMetrics.computeWeight(curNode2));
+					nodes2.setSplit(na2, true);
+					nodes2.setWeight(na2, nodeMetrics.computeWeight(na2));
+					nodes2.setWeight(curNode2, nodeMetrics.computeWeight(curNode2));
 				}
 			}
 		}
 
-		if (startSplit1 != null)
-			correctNodeMapBackward(nodeMap1, start1, startSplit1);
-		if (startSplit2 != null)
-			correctNodeMapBackward(nodeMap2, start2, startSplit2);
-
 		if (isDebugEnabled())
 			report.debug(
 					"00.03.03) TNSM: NOCS = \"%s\", matches = %d, splits = %d",
@@ -931,19 +1357,74 @@ public class HDDiff
 					splitCounter);
 	}
 
-	private DiffNode splitText(DiffNode node, int pos, boolean recordSplitOps)
+	/**
+	 * Splits the text node owning character c of the leaf string at c.
+	 * 
+	 * <p>
+	 * If the tree is split virtually, a text node that was not split before
+	 * is first replaced by a private copy (see NodeTable) which is split
+	 * instead. The split is recorded as split of the original text node.
+	 * 
+	 * @param inT1
+	 *            Whether the node belongs to T1. Only splits in T1 are
+	 *            recorded as edit operations. Virtual splits are always
+	 *            recorded, they are replayed when the edit script is applied.
+	 * @return The new node holding the text from c on.
+	 */
+	private DiffNode splitText(NodeCharMap nodeMap, int c, boolean inT1)
 	{
+		NodeTable nodes = inT1 ? nodes1 : nodes2;
+		boolean virtual = inT1 ? virtualSplits1 : virtualSplits2;
+
+		DiffNode node = nodeMap.nodeAt(c);
+		int pos = nodeMap.posAt(c);
+		DiffNode splitNode = node;
+		if (virtual)
+		{
+			if (nodes.getOrigin(node) == null)
+			{
+				node = copyForSplit(nodes, node, inT1 ? root1 : root2);
+				nodeMap.split(c - pos, node);
+			}
+			else if (nodes.isCopy(node))
+			{
+				splitNode = nodes.getOrigin(node);
+			}
+		}
+
 		DiffNode otherHalf = node.splitText(pos);
-		if (recordSplitOps)
-			editScript.add(new EditOpSplit(node, pos, otherHalf));
+		if (virtual)
+			nodes.addPart(otherHalf, node);
+		else
+			nodes.add(otherHalf);
+		nodes.setSplit(node, true);
+		nodeMap.split(c, otherHalf);
+		trustSubtreeHashes = false;
+		if (inT1 && (virtual || options.isRecordSplitOps()))
+			editScript.editOp(new EditOpSplit(splitNode, pos, otherHalf, !virtual));
 		return otherHalf;
 	}
 
+	/**
+	 * Creates the private copy of a text node that is split virtually and
+	 * the holder for the copy and the parts that will be split off it.
+	 * 
+	 * @return The copy which replaces the text node from now on.
+	 */
+	private DiffNode copyForSplit(NodeTable nodes, DiffNode node, DiffNode root)
+	{
+		DiffNode copy = node.createSame(root);
+		DiffNode holder = node.getParent().createSame(root);
+		holder.appendOrInsert(copy, null);
+		nodes.addCopy(copy, node, holder);
+		return copy;
+	}
+
 	private int binarySearchBreak(
-			ArrayList<NodeCharPos> nodeMap1,
-			ArrayList<NodeCharPos> nodeMap2,
-			NodeCharPos lastNcp1,
-			NodeCharPos lastNcp2,
+			NodeCharMap nodeMap1,
+			NodeCharMap nodeMap2,
+			DiffNode lastNode1,
+			DiffNode lastNode2,
 			int start1,
 			int start2,
 			int i,
@@ -955,8 +1436,8 @@ public class HDDiff
 		{
 			int w = k - j;
 			int x = j + w / 2;
-			if ((nodeMap1.get(start1 + x).node == lastNcp1.node) &&
-					(nodeMap2.get(start2 + x).node == lastNcp2.node))
+			if ((nodeMap1.nodeAt(start1 + x) == lastNode1) &&
+					(nodeMap2.nodeAt(start2 + x) == lastNode2))
 			{
 				if (w == 1)
 					break;
@@ -971,43 +1452,9 @@ public class HDDiff
 		return i;
 	}
 
-	private void correctNodeMapBackward(
-			ArrayList<NodeCharPos> nodeMap,
-			int i,
-			DiffNode newNode)
-	{
-		/**
-		 * We don't have to correct the whole node as we do in "forward". Only
-		 * the first item to stop any attempts to break this node. The rest is
-		 * inside the already matched substring and should never be touched by
-		 * any other substring anyway.
-		 */
-		NodeCharPos ncp = nodeMap.get(i);
-		ncp.node = newNode;
-		ncp.pos = 0; // unnecessary
-	}
-
-	private void correctNodeMapForward(
-			ArrayList<NodeCharPos> nodeMap,
-			int i,
-			DiffNode oldNode,
-			DiffNode newNode,
-			int posCorrect)
-	{
-		while (i < nodeMap.size())
-		{
-			NodeCharPos ncp = nodeMap.get(i);
-			if (ncp.node != oldNode)
-				break;
-			ncp.node = newNode;
-			ncp.pos -= posCorrect;
-			++i;
-		}
-	}
-
 	// =========================================================================
 
-	private void bottomUpMatching()
+	void bottomUpMatching()
 	{
 		Timer timer = null;
 		if (report != null)
@@ -1022,22 +1469,23 @@ public class HDDiff
 
 				try
 				{
-					// Again: Quite arbitrary choice of initial size of paths arrays
-					double depth = Math.log(nodeCount2) * 2;
-					ArrayList<DiffNode> path1 = new ArrayList<>((int) depth);
-					ArrayList<DiffNode> path2 = new ArrayList<>((int) depth);
+					ArrayList<DiffNode> path1 = workspace.path1;
+					ArrayList<DiffNode> path2 = workspace.path2;
+					path1.clear();
+					path2.clear();
 
-					ancestorCandidates = new HashMap<>((nodeCount1 + nodeCount2) * 2);
+					ancestorCandidates = workspace.ancestorCandidates(nodeCount2);
 
-					pathTypeLcs = new LcsMyers<>(new IsSameNodeTypeComparator());
+					pathTypeLcs = workspace.pathTypeLcs;
 
 					/**
 					 * We have to skip the root node which has already been
 					 * matched! This does not work if inner nodes are matched
 					 * without matching the whole subtree!
 					 */
-					for (DiffNode child = root2.getFirstChild(); child != null; child = child.getNextSibling())
-						gatherCandidates(child, path1, path2);
+					DiffNode first = nodes2.getFirstChild(root2);
+					if (first != null)
+						gatherCandidates(first, path1, path2);
 				}
 				finally
 				{
@@ -1053,13 +1501,15 @@ public class HDDiff
 
 				try
 				{
-					Candidate[] sorted = ancestorCandidates.values().toArray(new Candidate[ancestorCandidates.size()]);
-					Arrays.sort(sorted);
+					int[] sorted = ancestorCandidates.sortByCommon();
 
-					for (int i = 0; i < sorted.length; ++i)
+					for (int i = 0; i < ancestorCandidates.size(); ++i)
 					{
-						Candidate c = sorted[i];
-						if (mapIfNotAlreadyMapped(c.n1, c.n2, c.common))
+						int c = sorted[i];
+						if (mapIfNotAlreadyMapped(
+								ancestorCandidates.getNode1(c),
+								ancestorCandidates.getNode2(c),
+								ancestorCandidates.getCommon(c)))
 							++bottomUpAncestorMatchCount;
 					}
 				}
@@ -1083,78 +1533,156 @@ public class HDDiff
 			report.recordFigure("00.04.a) T2T BU: Ancestor nodes matched", bottomUpAncestorMatchCount, "#");
 	}
 
+	/**
+	 * Walks the subtrees of the given node and all its following siblings.
+	 */
 	private void gatherCandidates(
-			DiffNode node,
+			DiffNode first,
 			ArrayList<DiffNode> path1,
 			ArrayList<DiffNode> path2)
 	{
-		if (isMatched(node))
-		{
-			DiffNode partner = node.getPartner();
-			fillPartnerPath(partner, path1);
+		/**
+		 * Every level on the stack but the first corresponds to a node in
+		 * path2: the parent of the level's cursor.
+		 */
+		walkStack.clear();
+		walkStack.push(first);
 
-			/*int d = */pathTypeLcs.lcs(path1, path2);
-			ArrayList<DiffNode> s = pathTypeLcs.getLcs();
-			for (int i = 0; i < s.size();)
-			{
-				DiffNode n1 = s.get(i++);
-				DiffNode n2 = s.get(i++);
-				addCandidate(n1, n2, partner.getWeight());
-			}
-		}
-		else
+		/**
+		 * path1 only depends on the partner's parent. All nodes in path2 are
+		 * unmatched inner nodes that we descended into, path2 is therefore
+		 * determined by the parent of the current node. Consecutive matched
+		 * nodes with the same pair of parents (typically sibling leaves whose
+		 * partners are siblings as well) share the result of the path LCS.
+		 */
+		DiffNode lcsParent1 = null;
+		DiffNode lcsParent2 = null;
+		boolean lcsValid = false;
+
+		DiffNode node = first;
+		while (node != null)
 		{
-			// Unmatched inner node...
-			DiffNode child = node.getFirstChild();
-			if (child != null)
-			{
-				path2.add(node);
+			checkCancelled(false);
 
-				for (; child != null; child = child.getNextSibling())
-					gatherCandidates(child, path1, path2);
+			/**
+			 * The candidates gathered so far are still valid, the remaining
+			 * nodes are left to the top-down pass.
+			 */
+			if (isPastDeadline(false))
+			{
+				degrade("bottom-up matching truncated");
+				break;
+			}
 
-				removeLast(path2);
+			DiffNode partner = nodes2.getPartner(node);
+			if (partner != null)
+			{
+				DiffNode parent1 = nodes1.getParent(partner);
+				DiffNode parent2 = nodes2.getParent(node);
+				if (!lcsValid || (parent1 != lcsParent1) || (parent2 != lcsParent2))
+				{
+					if (!lcsValid || (parent1 != lcsParent1))
+						fillPartnerPath(partner, path1);
+					alignPaths(path1, path2, nodes1.getWeight(partner));
+					lcsParent1 = parent1;
+					lcsParent2 = parent2;
+					lcsValid = true;
+				}
+				else
+				{
+					for (int k = 0; k < pathCandidateCount; ++k)
+						ancestorCandidates.add(pathCandidates[k], nodes1.getWeight(partner));
+				}
 			}
 			else
 			{
-				// Unmatched leaf...
+				// Unmatched inner node...
+				DiffNode child = nodes2.getFirstChild(node);
+				if (child != null)
+				{
+					path2.add(node);
+					walkStack.push(child);
+					node = child;
+					continue;
+				}
+				else
+				{
+					// Unmatched leaf...
+				}
 			}
+
+			node = nextCandidateNode(path2);
 		}
 	}
 
-	private void addCandidate(DiffNode n1, DiffNode n2, int weight)
+	private DiffNode nextCandidateNode(ArrayList<DiffNode> path2)
 	{
-		searchCandidate.n1 = n1;
-		searchCandidate.n2 = n2;
-		Candidate c = ancestorCandidates.get(searchCandidate);
-		if (c != null)
+		while (true)
 		{
-			c.common += weight;
+			DiffNode next = nodes2.getNextSibling(walkStack.peek1());
+			if (next != null)
+			{
+				walkStack.set1(next);
+				return next;
+			}
+
+			walkStack.pop();
+			if (walkStack.isEmpty())
+				return null;
+
+			removeLast(path2);
 		}
-		else
+	}
+
+	/**
+	 * Adds the nodes on the LCS of both paths as candidates and remembers
+	 * them for the following nodes with the same paths.
+	 */
+	private void alignPaths(
+			ArrayList<DiffNode> path1,
+			ArrayList<DiffNode> path2,
+			int weight)
+	{
+		fillTypeKeys(path1, path2);
+		/*int d = */pathTypeLcs.lcs(lcsKeys1, path1.size(), lcsKeys2, path2.size());
+
+		int len = pathTypeLcs.getLcsLength();
+		pathCandidates = workspace.pathCandidates(len);
+
+		for (int k = 0; k < len; ++k)
 		{
-			c = new Candidate(n1, n2, weight);
-			ancestorCandidates.put(c, c);
+			DiffNode n1 = path1.get(pathTypeLcs.getIndex1(k));
+			DiffNode n2 = path2.get(pathTypeLcs.getIndex2(k));
+			pathCandidates[k] = ancestorCandidates.add(n1, n2, weight);
 		}
+		pathCandidateCount = len;
 	}
 
+	/**
+	 * Fills path1 with the ancestors of the partner, from the child of the
+	 * root down to the partner's parent.
+	 */
 	private void fillPartnerPath(DiffNode partner, ArrayList<DiffNode> path1)
 	{
 		path1.clear();
-		DiffNode node = partner;
-		DiffNode parent = node.getParent();
-		if (parent != null)
+		DiffNode parent = nodes1.getParent(partner);
+		if (parent == null)
+			return;
+
+		// Only split text nodes need the node table, their ancestors don't
+		int depth = 0;
+		for (DiffNode n = parent; n.getParent() != null; n = n.getParent())
+			++depth;
+
+		for (int i = 0; i < depth; ++i)
+			path1.add(null);
+
+		DiffNode n = parent;
+		for (int i = depth - 1; i >= 0; --i)
 		{
-			node = parent;
-			parent = parent.getParent();
-			while (parent != null)
-			{
-				path1.add(node);
-				node = parent;
-				parent = parent.getParent();
-			}
+			path1.set(i, n);
+			n = n.getParent();
 		}
-		Collections.reverse(path1);
 	}
 
 	private void removeLast(ArrayList<DiffNode> path)
@@ -1164,7 +1692,7 @@ public class HDDiff
 
 	// =========================================================================
 
-	private void topDownMatching()
+	void topDownMatching()
 	{
 		// TODO: Make configuration option.
 		boolean matchByLabel = true;
@@ -1175,21 +1703,22 @@ public class HDDiff
 
 		try
 		{
-			siblingSeq1 = new ArrayList<>();
-			siblingSeq2 = new ArrayList<>();
+			siblingSeq1 = workspace.siblingSeq1;
+			siblingSeq2 = workspace.siblingSeq2;
 
-			childHashLcs = new LcsMyers<>(new IsSameSubtreeHashComparator(minSubtreeWeight));
+			childHashLcs = workspace.childHashLcs;
+			subtreeHashIds = workspace.subtreeHashIds;
 
-			siblingTypeLcs = new LcsMyers<>(matchByLabel ?
-					new IsMatchedOrSameNodeTypeComparator() :
-					new IsPartnerComparator());
+			siblingTypeLcs = workspace.siblingTypeLcs;
+			this.matchByLabel = matchByLabel;
 
 			t2ttdSubtreeMatchCount = 0;
 			t2ttdSubtreeNodeMatchCount = 0;
 			t2ttdChildLabelNodeMatchCount = 0;
+			topDownDegraded = false;
 
 			checkUpdate(root1, root2);
-			topDownRec(root1, root2);
+			topDownWalk(root1, root2);
 
 			if (report != null)
 			{
@@ -1208,6 +1737,7 @@ public class HDDiff
 			siblingSeq1 = null;
 			siblingSeq2 = null;
 			childHashLcs = null;
+			subtreeHashIds = null;
 			siblingTypeLcs = null;
 
 			if (timer2 != null)
@@ -1215,94 +1745,152 @@ public class HDDiff
 		}
 	}
 
-	private void topDownRec(DiffNode n1, DiffNode n2)
+	private void topDownWalk(DiffNode root1, DiffNode root2)
 	{
-		if (n1 != n2.getPartner())
-			throw new AssertionError("n1 != n2.getPartner()");
+		/**
+		 * A frame holds a node in T1, the next child of its partner in T2 that
+		 * has to be visited and that child's index.
+		 */
+		walkStack.clear();
+		topDownEnter(root1, root2);
+		while (!walkStack.isEmpty())
+		{
+			checkCancelled(false);
+
+			DiffNode c2 = walkStack.peek2();
+			if (c2 == null)
+			{
+				walkStack.pop();
+				continue;
+			}
+
+			DiffNode n1 = walkStack.peek1();
+			int i = walkStack.peekInt();
+			walkStack.set2(nodes2.getNextSibling(c2));
+			walkStack.setInt(i + 1);
+
+			DiffNode c1 = topDownVisitChild(n1, c2, i);
+			topDownEnter(c1, c2);
+		}
+	}
+
+	/**
+	 * Matches the children of two partners and pushes a frame for visiting
+	 * them.
+	 */
+	private void topDownEnter(DiffNode n1, DiffNode n2)
+	{
+		if (n1 != nodes2.getPartner(n2))
+			throw new AssertionError("n1 != partner(n2)");
 
 		if (n2.isLeaf())
 			return;
 
-		if (n1.isSubtreeMatched())
+		if (nodes1.isSubtreeMatched(n1))
 			return;
 
 		// TODO: Make configuration option.
 		boolean subtreeLcs = true;
-		if (!n1.isLeaf())
+		if (!n1.isLeaf() && isPastDeadline(false))
+		{
+			if (!topDownDegraded)
+			{
+				topDownDegraded = true;
+				degrade("top-down LCS skipped");
+			}
+
+			buildCompleteChildSeq(nodes1, n1, siblingSeq1);
+			buildCompleteChildSeq(nodes2, n2, siblingSeq2);
+
+			topDownGreedyAlign(n1);
+		}
+		else if (!n1.isLeaf())
 		{
 			if (subtreeLcs)
 			{
-				buildUnmatchedChildSeq(n1, siblingSeq1);
-				buildUnmatchedChildSeq(n2, siblingSeq2);
+				buildUnmatchedChildSeq(nodes1, n1, siblingSeq1);
+				buildUnmatchedChildSeq(nodes2, n2, siblingSeq2);
 
 				topDownSubtreeLcs();
 			}
 
-			buildCompleteChildSeq(n1, siblingSeq1);
-			buildCompleteChildSeq(n2, siblingSeq2);
+			buildCompleteChildSeq(nodes1, n1, siblingSeq1);
+			buildCompleteChildSeq(nodes2, n2, siblingSeq2);
 
 			topDownLabelLcs(n1, n2);
 		}
 
-		int i = 0;
-		for (DiffNode c2 = n2.getFirstChild(); c2 != null; c2 = c2.getNextSibling())
+		walkStack.push(n1, nodes2.getFirstChild(n2), 0);
+	}
+
+	/**
+	 * Emits an insert or a move if the given child of n1's partner is not in
+	 * place.
+	 * 
+	 * @return The partner of the given child.
+	 */
+	private DiffNode topDownVisitChild(DiffNode n1, DiffNode c2, int i)
+	{
+		DiffNode c1 = nodes2.getPartner(c2);
+		if (c1 == null)
 		{
-			DiffNode c1 = c2.getPartner();
-			if (c1 == null)
+			c1 = c2.createSame(root1 /* for tree */);
+			nodes1.add(c1);
+
+			// TODO: Why is this necessary again?
+			map(c1, c2, -2);
+
+			// indexOf() updates the child index of T2 and doesn't know about
+			// virtual splits
+			if (ASSERTIONS && !readOnlyTrees && !virtualSplits2)
 			{
-				c1 = c2.createSame(root1 /* for tree */);
+				if (i != c2.indexOf())
+					throw new AssertionError("i != c2.indexOf()");
+			}
 
-				// TODO: Why is this necessary again?
-				map(c1, c2, -2);
+			editScript.editOp(new EditOpInsert(
+					n1,
+					c1,
+					c2,
+					i));
+			++editScriptInsertCount;
+		}
+		else
+		{
+			checkUpdate(c1, c2);
 
-				if (ASSERTIONS)
+			DiffNode parent1 = nodes1.getParent(c1);
+			if (parent1 != n1)
+			{
+				if (ASSERTIONS && !readOnlyTrees && !virtualSplits2)
 				{
 					if (i != c2.indexOf())
 						throw new AssertionError("i != c2.indexOf()");
 				}
 
-				editScript.add(new EditOpInsert(
+				editScript.editOp(new EditOpMove(
+						ref1(c1),
 						n1,
-						c1,
 						c2,
 						i));
-				++editScriptInsertCount;
+				++editScriptMoveCount;
 			}
-			else
-			{
-				checkUpdate(c1, c2);
-
-				DiffNode parent1 = c1.getParent();
-				if (parent1 != n1)
-				{
-					if (ASSERTIONS)
-					{
-						if (i != c2.indexOf())
-							throw new AssertionError("i != c2.indexOf()");
-					}
-
-					editScript.add(new EditOpMove(
-							c1,
-							n1,
-							c2,
-							i));
-					++editScriptMoveCount;
-				}
-			}
-
-			topDownRec(c1, c2);
-			++i;
 		}
+
+		return c1;
 	}
 
 	// =========================================================================
 
-	private void buildUnmatchedChildSeq(DiffNode n, ArrayList<DiffNode> seq)
+	private void buildUnmatchedChildSeq(
+			NodeTable nodes,
+			DiffNode n,
+			ArrayList<DiffNode> seq)
 	{
 		seq.clear();
-		for (DiffNode c = n.getFirstChild(); c != null; c = c.getNextSibling())
+		for (DiffNode c = nodes.getFirstChild(n); c != null; c = nodes.getNextSibling(c))
 		{
-			if (!isMatched(c))
+			if (!isMatched(nodes, c))
 				seq.add(c);
 		}
 	}
@@ -1316,19 +1904,19 @@ public class HDDiff
 			// Shortcut
 			DiffNode c1 = siblingSeq1.get(0);
 			DiffNode c2 = siblingSeq2.get(0);
-			if (c1.getSubtreeHash() == c2.getSubtreeHash())
+			if (nodes1.getSubtreeHash(c1) == nodes2.getSubtreeHash(c2))
 				mapSubtrees(c1, c2);
 
 			return;
 		}
 
-		/*int d = */childHashLcs.lcs(siblingSeq1, siblingSeq2);
+		fillSubtreeHashKeys(siblingSeq1, siblingSeq2);
+		/*int d = */childHashLcs.lcs(lcsKeys1, s1len, lcsKeys2, s2len);
 
-		ArrayList<DiffNode> s = childHashLcs.getLcs();
-		for (int i = 0; i < s.size();)
+		for (int k = 0; k < childHashLcs.getLcsLength(); ++k)
 		{
-			DiffNode c1 = s.get(i++);
-			DiffNode c2 = s.get(i++);
+			DiffNode c1 = siblingSeq1.get(childHashLcs.getIndex1(k));
+			DiffNode c2 = siblingSeq2.get(childHashLcs.getIndex2(k));
 			topDownMapSubtrees(c1, c2);
 		}
 	}
@@ -1350,9 +1938,9 @@ public class HDDiff
 		try
 		{
 			checkSubtreeEqualityDeep(c1, c2);
-			c1.setSubtreeMatched(true);
-			c2.setSubtreeMatched(true);
-			return mapSubtreesRec(c1, c2);
+			nodes1.setSubtreeMatched(c1, true);
+			nodes2.setSubtreeMatched(c2, true);
+			return mapSubtreesDeep(c1, c2);
 		}
 		catch (ComparisonException e)
 		{
@@ -1362,29 +1950,51 @@ public class HDDiff
 		}
 	}
 
-	private int mapSubtreesRec(DiffNode n1, DiffNode n2) throws ComparisonException
+	private int mapSubtreesDeep(DiffNode n1, DiffNode n2) throws ComparisonException
 	{
 		int nodeMatchCount = 0;
 
-		checkUpdate(n1, n2);
-		mapFull(n1, n2);
-		++nodeMatchCount;
-
-		DiffNode c1 = n1.getFirstChild();
-		DiffNode c2 = n2.getFirstChild();
-		while ((c1 != null) && (c2 != null))
+		subtreeStack.clear();
+		while (true)
 		{
-			nodeMatchCount += mapSubtreesRec(c1, c2);
-			c1 = c1.getNextSibling();
-			c2 = c2.getNextSibling();
-		}
+			checkUpdate(n1, n2);
+			mapFull(n1, n2);
+			++nodeMatchCount;
 
-		return nodeMatchCount;
+			if (!descendOrNextPair(n1, n2))
+				throw new ComparisonException();
+			if (subtreeStack.isEmpty())
+				return nodeMatchCount;
+
+			n1 = subtreeStack.peek1();
+			n2 = subtreeStack.peek2();
+		}
 	}
 
 	private void checkSubtreeEqualityDeep(DiffNode n1, DiffNode n2) throws ComparisonException
 	{
-		if (!nodeMetrics.verifyHashEquality(n1, n2))
+		subtreeStack.clear();
+		while (true)
+		{
+			checkNodeEquality(n1, n2);
+
+			if (!descendOrNextPair(n1, n2))
+				throw new ComparisonException();
+			if (subtreeStack.isEmpty())
+				return;
+
+			n1 = subtreeStack.peek1();
+			n2 = subtreeStack.peek2();
+		}
+	}
+
+	private void checkNodeEquality(DiffNode n1, DiffNode n2) throws ComparisonException
+	{
+		/**
+		 * Trusted 64 bit hashes make comparing the nodes themselves
+		 * unnecessary. The partners still have to be checked.
+		 */
+		if (!trustSubtreeHashes && !nodeMetrics.verifyHashEquality(n1, n2))
 			throw new ComparisonException();
 
 		/**
@@ -1393,40 +2003,74 @@ public class HDDiff
 		 * to match it with a duplicate in the other tree. However, in the other
 		 * tree the matched node's parent WAS matched to some other node.
 		 */
-		DiffNode p1 = n1.getPartner();
+		DiffNode p1 = nodes1.getPartner(n1);
 		if ((p1 != null) && (p1 != n2))
 			throw new ComparisonException();
-		DiffNode p2 = n2.getPartner();
+		DiffNode p2 = nodes2.getPartner(n2);
 		if ((p2 != null) && (p2 != n1))
 			throw new ComparisonException();
+	}
 
-		DiffNode c1 = n1.getFirstChild();
-		DiffNode c2 = n2.getFirstChild();
-		while ((c1 != null) && (c2 != null))
+	/**
+	 * Moves the subtreeStack to the next pair of nodes in a lockstep pre-order
+	 * walk over two subtrees. Like DiffNodeStack.nextPair() but follows the
+	 * tree links of the node tables.
+	 * 
+	 * @return False if the subtrees differ in structure.
+	 */
+	private boolean descendOrNextPair(DiffNode n1, DiffNode n2)
+	{
+		DiffNode c1 = nodes1.getFirstChild(n1);
+		DiffNode c2 = nodes2.getFirstChild(n2);
+		if ((c1 != null) && (c2 != null))
 		{
-			checkSubtreeEqualityDeep(c1, c2);
-			c1 = c1.getNextSibling();
-			c2 = c2.getNextSibling();
+			subtreeStack.push(c1, c2);
+			return true;
 		}
 
 		if (c1 != c2)
-			throw new ComparisonException();
+			return false;
+
+		while (!subtreeStack.isEmpty())
+		{
+			DiffNode next1 = nodes1.getNextSibling(subtreeStack.peek1());
+			DiffNode next2 = nodes2.getNextSibling(subtreeStack.peek2());
+			if ((next1 != null) && (next2 != null))
+			{
+				subtreeStack.set1(next1);
+				subtreeStack.set2(next2);
+				return true;
+			}
+
+			if (next1 != next2)
+				return false;
+
+			subtreeStack.pop();
+		}
+		return true;
 	}
 
 	// =========================================================================
 
-	private void buildCompleteChildSeq(DiffNode n, ArrayList<DiffNode> seq)
+	private void buildCompleteChildSeq(
+			NodeTable nodes,
+			DiffNode n,
+			ArrayList<DiffNode> seq)
 	{
 		seq.clear();
-		for (DiffNode c = n.getFirstChild(); c != null; c = c.getNextSibling())
+		for (DiffNode c = nodes.getFirstChild(n); c != null; c = nodes.getNextSibling(c))
 			seq.add(c);
 	}
 
 	private void topDownLabelLcs(DiffNode n1, DiffNode n2)
 	{
-		siblingTypeLcs.lcs(siblingSeq1, siblingSeq2);
+		if (matchByLabel)
+			fillMatchedOrTypeKeys(siblingSeq1, siblingSeq2);
+		else
+			fillPartnerKeys(siblingSeq1, siblingSeq2);
+		siblingTypeLcs.lcs(lcsKeys1, siblingSeq1.size(), lcsKeys2, siblingSeq2.size());
 
-		ArrayList<DiffNode> s = siblingTypeLcs.getLcs();
+		int lcsLength = siblingTypeLcs.getLcsLength();
 
 		int i = 0;
 		for (int j = 0; j < siblingSeq2.size(); ++j)
@@ -1434,23 +2078,23 @@ public class HDDiff
 			DiffNode b = siblingSeq2.get(j);
 
 			// An unaligned node must have a partner
-			DiffNode a = b.getPartner();
+			DiffNode a = nodes2.getPartner(b);
 			if (a != null)
 			{
 				// An unaligned node's partner must have the same parent
-				DiffNode bParentsPartnerIn1 = b.getParent().getPartner();
-				if (bParentsPartnerIn1 == a.getParent())
+				DiffNode bParentsPartnerIn1 = nodes2.getPartner(nodes2.getParent(b));
+				if (bParentsPartnerIn1 == nodes1.getParent(a))
 				{
-					if ((i >= s.size()) || (b != s.get(i + 1)))
+					if ((i >= lcsLength) || (j != siblingTypeLcs.getIndex2(i)))
 					{
-						if (ASSERTIONS)
+						if (ASSERTIONS && !readOnlyTrees && !virtualSplits2)
 						{
 							if (j != b.indexOf())
 								throw new AssertionError("j != b.indexOf()");
 						}
 
-						editScript.add(new EditOpMove(
-								a,
+						editScript.editOp(new EditOpMove(
+								ref1(a),
 								n1,
 								b,
 								j));
@@ -1464,7 +2108,7 @@ public class HDDiff
 						 * and b is part of the LCS. This means that b is
 						 * properly aligned. We have to skip it.
 						 */
-						i += 2;
+						++i;
 					}
 				}
 				else
@@ -1484,13 +2128,13 @@ public class HDDiff
 				 * means that it soon will have a partner. This also implies
 				 * that the label matching will only create aligned matches.
 				 */
-				if ((i < s.size()) && (b == s.get(i + 1)))
+				if ((i < lcsLength) && (j == siblingTypeLcs.getIndex2(i)))
 				{
-					DiffNode c1 = s.get(i++);
-					DiffNode c2 = s.get(i++);
+					DiffNode c1 = siblingSeq1.get(siblingTypeLcs.getIndex1(i++));
+					DiffNode c2 = b;
 
-					if (c1.getPartner() != null)
-						throw new AssertionError("c1.getPartner() != null");
+					if (nodes1.getPartner(c1) != null)
+						throw new AssertionError("partner(c1) != null");
 
 					map(c1, c2, -3);
 					++t2ttdChildLabelNodeMatchCount;
@@ -1506,259 +2150,289 @@ public class HDDiff
 		}
 	}
 
-	// =========================================================================
-
-	private void checkUpdate(DiffNode n1, DiffNode n2)
+	/**
+	 * Cheap replacement of topDownLabelLcs() once the time budget is used up.
+	 * Partners that appear in increasing order of their position under n1
+	 * stay in place, all other partners are aligned with a move. Unmatched
+	 * children are not matched by label; they will become inserts and
+	 * deletes.
+	 */
+	private void topDownGreedyAlign(DiffNode n1)
 	{
-		NodeUpdate update = n1.compareWith(n2);
-		if (update != null)
+		alignPositions = workspace.alignPositions(nodes1.size());
+		for (int i = 0; i < siblingSeq1.size(); ++i)
+			alignPositions[siblingSeq1.get(i).getId()] = i;
+
+		int last = -1;
+		for (int j = 0; j < siblingSeq2.size(); ++j)
 		{
-			editScript.add(new EditOpUpdate(
-					n1,
-					update,
-					n2));
-			++editScriptUpdateCount;
+			DiffNode b = siblingSeq2.get(j);
+			DiffNode a = nodes2.getPartner(b);
+			if ((a == null) || (nodes1.getParent(a) != n1))
+				continue;
+
+			int i = alignPositions[a.getId()];
+			if (i > last)
+			{
+				last = i;
+			}
+			else
+			{
+				editScript.editOp(new EditOpMove(
+						ref1(a),
+						n1,
+						b,
+						j));
+
+				++editScriptAlignmentCount;
+			}
 		}
 	}
 
 	// =========================================================================
 
-	private void gatherDeletes()
+	/**
+	 * Node types are compared as keys; DiffNode.isSameNodeType() agrees with
+	 * equality of DiffNode.getType().
+	 */
+	private void fillTypeKeys(ArrayList<DiffNode> seq1, ArrayList<DiffNode> seq2)
 	{
-		gatherDeletesRec(root1);
-
-		if (report != null)
-			report.recordFigure("00.06.e) T2T ES: delete count", editScriptDeleteCount, "#");
+		ensureLcsKeyCapacity(seq1.size(), seq2.size());
+		for (int i = 0; i < seq1.size(); ++i)
+			lcsKeys1[i] = nodeTypeId(flat1, seq1.get(i));
+		for (int j = 0; j < seq2.size(); ++j)
+			lcsKeys2[j] = nodeTypeId(flat2, seq2.get(j));
 	}
 
-	private void gatherDeletesRec(DiffNode n1)
+	/**
+	 * A child in T1 only matches a child in T2 with the same subtree hash if
+	 * its weight exceeds minSubtreeWeight. All other children get keys that
+	 * are unique within both sequences.
+	 */
+	private void fillSubtreeHashKeys(ArrayList<DiffNode> seq1, ArrayList<DiffNode> seq2)
 	{
-		for (DiffNode child = n1.getFirstChild(); child != null; child = child.getNextSibling())
-			gatherDeletesRec(child);
+		int n = seq1.size();
+		int m = seq2.size();
+		ensureLcsKeyCapacity(n, m);
 
-		checkDelete(n1);
-	}
-
-	private void checkDelete(DiffNode n1)
-	{
-		if (n1.getPartner() == null)
+		subtreeHashIds.clear();
+		for (int i = 0; i < n; ++i)
 		{
-			editScript.add(new EditOpDelete(n1));
-			++editScriptDeleteCount;
+			DiffNode a = seq1.get(i);
+			lcsKeys1[i] = (nodes1.getWeight(a) > minSubtreeWeight) ?
+					subtreeHashIds.putIfAbsent(nodes1.getSubtreeHash(a), subtreeHashIds.size()) :
+					-(1 + i);
 		}
-	}
 
-	// =========================================================================
-
-	private void map(DiffNode nodeIn1, DiffNode nodeIn2, int common)
-	{
-		nodeIn1.set(nodeIn2, common);
-		nodeIn2.set(nodeIn1, common);
-	}
-
-	private void mapFull(DiffNode n1, DiffNode n2)
-	{
-		n1.set(n2, n1.getWeight());
-		n2.set(n1, n1.getWeight());
+		for (int j = 0; j < m; ++j)
+			lcsKeys2[j] = subtreeHashIds.get(nodes2.getSubtreeHash(seq2.get(j)), -(1 + n + j));
 	}
 
-	private boolean mapIfNotAlreadyMapped(DiffNode n1, DiffNode n2, int common)
+	/**
+	 * Matched nodes are keyed by the id of their partnership (the id of the
+	 * node in T2), unmatched nodes by their type. Type ids are never
+	 * negative, partnership keys always are.
+	 */
+	private void fillMatchedOrTypeKeys(ArrayList<DiffNode> seq1, ArrayList<DiffNode> seq2)
 	{
-		if ((n1.getPartner() != null) || (n2.getPartner() != null))
-			return false;
-		n1.set(n2, common);
-		n2.set(n1, common);
-		return true;
-	}
+		ensureLcsKeyCapacity(seq1.size(), seq2.size());
+		for (int i = 0; i < seq1.size(); ++i)
+		{
+			DiffNode a = seq1.get(i);
+			DiffNode partner = nodes1.getPartner(a);
+			lcsKeys1[i] = (partner != null) ? -(1 + partner.getId()) : nodeTypeId(flat1, a);
+		}
 
-	private boolean isMatched(DiffNode node)
-	{
-		return (node.getPartner() != null);
+		for (int j = 0; j < seq2.size(); ++j)
+		{
+			DiffNode b = seq2.get(j);
+			lcsKeys2[j] = (nodes2.getPartner(b) != null) ? -(1 + b.getId()) : nodeTypeId(flat2, b);
+		}
 	}
 
-	private static String abbreviateRep(String label)
+	/**
+	 * Only partners match.
+	 */
+	private void fillPartnerKeys(ArrayList<DiffNode> seq1, ArrayList<DiffNode> seq2)
 	{
-		label = label.replace("\n", "\\n");
-		label = label.replace("\"", "\\\"");
-		label = StringUtils.abbreviateMiddle(label, "...", 64);
-		return label;
-	}
+		ensureLcsKeyCapacity(seq1.size(), seq2.size());
+		for (int i = 0; i < seq1.size(); ++i)
+		{
+			DiffNode partner = nodes1.getPartner(seq1.get(i));
+			lcsKeys1[i] = (partner != null) ? -(1 + partner.getId()) : i;
+		}
 
-	private static String abbreviateRep(Object obj)
-	{
-		return abbreviateRep(String.valueOf(obj));
+		for (int j = 0; j < seq2.size(); ++j)
+			lcsKeys2[j] = -(1 + seq2.get(j).getId());
 	}
 
-	private boolean isDebugEnabled()
+	/**
+	 * Nodes that existed before the diff have their type id in the flat tree.
+	 */
+	private int nodeTypeId(FlatTree flat, DiffNode node)
 	{
-		return (report != null) && (report.isDebugEnabled());
+		int id = node.getId();
+		if (id < flat.size())
+			return flat.getTypeId(id);
+		return nodeTypes.idOf(node.getType());
 	}
 
-	private boolean isWarningEnabled()
+	private void ensureLcsKeyCapacity(int n, int m)
 	{
-		return (report != null) && (report.isWarningEnabled());
+		lcsKeys1 = workspace.lcsKeys1(n);
+		lcsKeys2 = workspace.lcsKeys2(m);
 	}
 
 	// =========================================================================
 
-	private static final class Candidate
-			implements
-				Comparable<Candidate>
+	private void checkUpdate(DiffNode n1, DiffNode n2)
 	{
-		private DiffNode n1;
-
-		private DiffNode n2;
-
-		private int common;
-
-		public Candidate(DiffNode node, DiffNode partner, int common)
-		{
-			this.n1 = node;
-			this.n2 = partner;
-			this.common = common;
-		}
-
-		@Override
-		public int hashCode()
-		{
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + n1.hashCode();
-			result = prime * result + n2.hashCode();
-			return result;
-		}
-
-		@Override
-		public boolean equals(Object obj)
-		{
-			Candidate other = (Candidate) obj;
-			return (other.n1 == this.n1) && (other.n2 == this.n2);
-		}
-
-		@Override
-		public int compareTo(Candidate o)
-		{
-			// Sort DESCENDING
-			return -Integer.compare(this.common, o.common);
-		}
-
-		@Override
-		public String toString()
+		NodeUpdate update = n1.compareWith(n2);
+		if (update != null)
 		{
-			return "Candidate [node=" + abbreviateRep(n1) +
-					", partner=" + abbreviateRep(n2) +
-					", common=" + common + "]";
+			editScript.editOp(new EditOpUpdate(
+					ref1(n1),
+					update,
+					n2));
+			++editScriptUpdateCount;
 		}
 	}
 
 	// =========================================================================
 
-	private static final class SubtreeMatch
-			implements
-				Comparable<SubtreeMatch>
+	void gatherDeletes()
 	{
-		private final DiffNode n1;
-
-		private final DiffNode n2;
+		gatherDeletesWalk();
 
-		private final int weight;
+		if (report != null)
+			report.recordFigure("00.06.e) T2T ES: delete count", editScriptDeleteCount, "#");
+	}
 
-		public SubtreeMatch(DiffNode n1, DiffNode n2, int weight)
+	private void gatherDeletesWalk()
+	{
+		// Post-order: Children are deleted before their parents
+		walkStack.clear();
+		DiffNode n1 = root1;
+		while (n1 != null)
 		{
-			this.n1 = n1;
-			this.n2 = n2;
-			this.weight = weight;
-		}
+			DiffNode first = nodes1.getFirstChild(n1);
+			if (first != null)
+			{
+				walkStack.push(first);
+				n1 = first;
+				continue;
+			}
 
-		@Override
-		public int compareTo(SubtreeMatch o)
-		{
-			// Sort DESCENDING
-			return -Integer.compare(weight, o.weight);
+			checkDelete(n1);
+
+			n1 = null;
+			while (!walkStack.isEmpty())
+			{
+				DiffNode cursor = walkStack.peek1();
+				n1 = nodes1.getNextSibling(cursor);
+				if (n1 != null)
+				{
+					walkStack.set1(n1);
+					break;
+				}
+
+				walkStack.pop();
+				checkDelete(nodes1.getParent(cursor));
+			}
 		}
+	}
 
-		@Override
-		public String toString()
+	private void checkDelete(DiffNode n1)
+	{
+		if (nodes1.getPartner(n1) == null)
 		{
-			return "SubtreeMatch [n1=" + abbreviateRep(n1) + ", n2=" + abbreviateRep(n2) + ", weight=" + weight + "]";
+			editScript.editOp(new EditOpDelete(ref1(n1)));
+			++editScriptDeleteCount;
 		}
 	}
 
 	// =========================================================================
 
-	private static final class NodeCharPos
+	/**
+	 * @return The node of T1 an edit operation refers to for the given node:
+	 *         A virtually split text node is referred to by itself instead of
+	 *         by its copy. Only text nodes are ever copied, the parents in
+	 *         edit operations therefore need no translation.
+	 */
+	private DiffNode ref1(DiffNode n1)
 	{
-		DiffNode node;
-
-		int pos;
+		return nodes1.isCopy(n1) ? nodes1.getOrigin(n1) : n1;
+	}
 
-		NodeCharPos(DiffNode node, int pos)
+	private void map(DiffNode nodeIn1, DiffNode nodeIn2, int common)
+	{
+		if (readOnlyTrees)
 		{
-			super();
-			this.node = node;
-			this.pos = pos;
+			// The checks DiffNode.set() would do
+			if (isMatched(nodes1, nodeIn1) || isMatched(nodes2, nodeIn2))
+				throw new RuntimeException("Partner already set!");
+			if (!nodeIn1.isSameNodeType(nodeIn2))
+				throw new AssertionError("!isSameNodeType(partner)");
 		}
-
-		@Override
-		public String toString()
+		else
 		{
-			return "NodeCharPos [node=" + abbreviateRep(node) + ", pos=" + pos + "]";
+			nodeIn1.set(nodeIn2);
+			nodeIn2.set(nodeIn1);
 		}
+		nodes1.setPartner(nodeIn1, nodeIn2);
+		nodes2.setPartner(nodeIn2, nodeIn1);
+		nodes1.setCommon(nodeIn1, common);
+		nodes2.setCommon(nodeIn2, common);
 	}
 
-	// =========================================================================
+	private void mapFull(DiffNode n1, DiffNode n2)
+	{
+		map(n1, n2, nodes1.getWeight(n1));
+	}
 
-	private static final class IsSameSubtreeHashComparator
-			implements
-				ElementComparatorInterface<DiffNode>
+	private boolean mapIfNotAlreadyMapped(DiffNode n1, DiffNode n2, int common)
 	{
-		private final int minSubtreeWeight;
+		if (isMatched(nodes1, n1) || isMatched(nodes2, n2))
+			return false;
+		map(n1, n2, common);
+		return true;
+	}
 
-		public IsSameSubtreeHashComparator(int minSubtreeWeight)
-		{
-			this.minSubtreeWeight = minSubtreeWeight;
-		}
+	private boolean isMatched(NodeTable nodes, DiffNode node)
+	{
+		return (nodes.getPartner(node) != null);
+	}
 
-		@Override
-		public boolean equals(DiffNode a, DiffNode b)
-		{
-			return (a.getSubtreeHash() == b.getSubtreeHash()) && (a.getWeight() > minSubtreeWeight);
-		}
+	private static String abbreviateRep(String label)
+	{
+		label = label.replace("\n", "\\n");
+		label = label.replace("\"", "\\\"");
+		label = StringUtils.abbreviateMiddle(label, "...", 64);
+		return label;
 	}
 
-	private static final class IsSameNodeTypeComparator
-			implements
-				ElementComparatorInterface<DiffNode>
+	private boolean isDebugEnabled()
 	{
-		@Override
-		public boolean equals(DiffNode a, DiffNode b)
-		{
-			return a.isSameNodeType(b);
-		}
+		return (report != null) && (report.isDebugEnabled());
 	}
 
-	private static final class IsMatchedOrSameNodeTypeComparator
-			implements
-				ElementComparatorInterface<DiffNode>
+	private boolean isWarningEnabled()
 	{
-		@Override
-		public boolean equals(DiffNode a, DiffNode b)
-		{
-			DiffNode aPartner = a.getPartner();
-			return (aPartner == null) ?
-					(b.getPartner() == null) && a.isSameNodeType(b) :
-					(aPartner == b);
-		}
+		return (report != null) && (report.isWarningEnabled());
 	}
 
-	private static final class IsPartnerComparator
+	// =========================================================================
+
+	private static final class EditScriptCollector
 			implements
-				ElementComparatorInterface<DiffNode>
+				EditScriptListener
 	{
+		private final LinkedList<EditOp> editScript = new LinkedList<>();
+
 		@Override
-		public boolean equals(DiffNode a, DiffNode b)
+		public void editOp(EditOp op)
 		{
-			return a.getPartner() == b;
+			editScript.add(op);
 		}
 	}
 }
@@ -0,0 +1,143 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.utils.ReportItem;
+
+/**
+ * Diffs a chain of revisions pairwise: r1 against r2, r2 against r3 and so
+ * on.
+ * 
+ * <p>
+ * Every revision is precomputed only once in full, as the new side of a diff.
+ * When it becomes the old side of the next diff its precomputation is taken
+ * over.
+ * 
+ * <p>
+ * Text nodes of the new revision are split virtually (see NodeTable), the
+ * new revision therefore enters the next step exactly as it was passed in and
+ * every step yields the same edit script as an independent diff of the two
+ * revisions. Text nodes of the old revision are split as usual. Applied to
+ * the old revision, the edit script yields the new revision with some of its
+ * text nodes split; the text is the same.
+ * 
+ * <p>
+ * After each step the partner links of the new revision (and thereby those
+ * of the old revision) are cleared. The edit script of a step stays valid;
+ * the old revision must not be diffed again. In read-only mode the revisions
+ * must have been numbered (see HDDiff.assignIds()).
+ * 
+ * <p>
+ * If a step is cancelled (see HDDiff.editScript()), the current revision
+ * stays the same and the partner links of both revisions are cleared. Text
+ * nodes of the current revision may have been split, the given revision
+ * stays unsplit.
+ * 
+ * <p>
+ * The steps reuse one DiffWorkspace. Instances are not thread-safe.
+ */
+public final class HDDiffChain
+{
+	private final HDDiffOptions options;
+
+	private DiffNode current;
+
+	/** Precomputation of current, null until current was diffed once. */
+	private TreePrecomputation precomputation;
+
+	/** Buffers shared by the consecutive diffs */
+	private final DiffWorkspace workspace = new DiffWorkspace();
+
+	/** Whether the last step was degraded */
+	private boolean degraded;
+
+	// =========================================================================
+
+	public HDDiffChain(DiffNode first, HDDiffOptions options)
+	{
+		this.current = first;
+		this.options = options;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The revision that the next call of diffNext() diffs against.
+	 */
+	public DiffNode getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 * @return Whether the last call of diffNext() exceeded a budget and
+	 *         returned a coarser edit script (see HDDiff.isDegraded()).
+	 */
+	public boolean isDegraded()
+	{
+		return degraded;
+	}
+
+	public List<EditOp> diffNext(DiffNode next)
+	{
+		return diffNext(next, null);
+	}
+
+	/**
+	 * Computes the edit script from the current revision to the given one
+	 * and makes the given revision the current one.
+	 */
+	public List<EditOp> diffNext(DiffNode next, ReportItem report)
+	{
+		HDDiff diff = new HDDiff(current, precomputation, next, options, report, workspace);
+		diff.setVirtualSplits(false, true);
+		List<EditOp> editScript;
+		degraded = false;
+		try
+		{
+			editScript = diff.editScript();
+			degraded = diff.isDegraded();
+		}
+		catch (CancellationException e)
+		{
+			/**
+			 * The precomputation of the current revision was used up by the
+			 * diff. The next diff precomputes the current revision again.
+			 */
+			if (!options.isReadOnlyTrees())
+			{
+				current.unmapDeep();
+				next.unmapDeep();
+			}
+			precomputation = null;
+			throw e;
+		}
+
+		if (!options.isReadOnlyTrees())
+			next.unmapDeep();
+		precomputation = diff.precomputeT2AsT1();
+		current = next;
+
+		return editScript;
+	}
+}
@@ -18,10 +18,13 @@
 package de.fau.cs.osr.hddiff;
 
 import java.io.File;
+import java.util.concurrent.ForkJoinPool;
 
 import de.fau.cs.osr.hddiff.tree.NodeEligibilityTesterInterface;
 import de.fau.cs.osr.hddiff.tree.NodeMetricsInterface;
 import de.fau.cs.osr.hddiff.utils.SubstringJudgeInterface;
+import de.fau.cs.osr.hddiff.utils.SuffixArrayAlgorithm;
+import de.fau.cs.osr.hddiff.utils.SuffixArrayBuilderInterface;
 
 public final class HDDiffOptions
 		implements
@@ -29,6 +32,12 @@ public final class HDDiffOptions
 {
 	private NodeMetricsInterface nodeMetrics;
 
+	private boolean readOnlyTrees;
+
+	private long timeBudgetMillis;
+
+	private boolean timeBudgetExpired;
+
 	// Debug stuff
 
 	private TreeDumpPhases dumpTreesPhase;
@@ -37,6 +46,16 @@ public final class HDDiffOptions
 
 	private File graphvizDotBin = new File("/usr/bin/dot");
 
+	// Precomputation phase
+
+	private ForkJoinPool precomputationPool;
+
+	private int precomputationForkThreshold = 256;
+
+	private SubtreeHashMode subtreeHashMode = SubtreeHashMode.BITS_32;
+
+	private boolean verifySubtreeHashes = true;
+
 	// Search Space Reduction (SSR) phase
 
 	private int minSubtreeWeight;
@@ -51,6 +70,14 @@ public final class HDDiffOptions
 
 	private SubstringJudgeInterface<String> tnsmSsj;
 
+	private SuffixArrayBuilderInterface tnsmSaBuilder = SuffixArrayAlgorithm.SAIS;
+
+	private ForkJoinPool tnsmPool;
+
+	private int tnsmParallelThreshold = 1 << 20;
+
+	private int tnsmMaxLeafStringLength = Integer.MAX_VALUE;
+
 	// Debug stuff
 
 	private boolean onlySplitNodes;
@@ -135,6 +162,134 @@ public final class HDDiffOptions
 		return nodeMetrics;
 	}
 
+	/**
+	 * In read-only mode the partners of the matched nodes are only kept by
+	 * HDDiff itself and not set on the DiffNodes, and text nodes are split
+	 * virtually: TNSM splits private copies of the text nodes, the splits are
+	 * recorded as EditOpSplit operations and replayed when the edit script is
+	 * applied. Applying the edit script turns T1 into T2 with its text nodes
+	 * split the same way.
+	 * 
+	 * <p>
+	 * The trees are not written to, not even the node ids. Both trees must
+	 * therefore be numbered beforehand, see HDDiff.assignIds() and
+	 * HDDiff.prepare(). A tree can then take part in several diffs at the same
+	 * time. Disabled by default.
+	 */
+	public void setReadOnlyTrees(boolean readOnlyTrees)
+	{
+		this.readOnlyTrees = readOnlyTrees;
+	}
+
+	public boolean isReadOnlyTrees()
+	{
+		return readOnlyTrees;
+	}
+
+	/**
+	 * Time a single diff may take, measured from the start of
+	 * HDDiff.editScript(). Once the budget is used up the remaining expensive
+	 * work is skipped: TNSM is not started, bottom-up matching stops gathering
+	 * candidates and the top-down pass aligns children greedily instead of
+	 * computing LCSs. The edit script stays valid but gets larger; such a diff
+	 * is reported as degraded (HDDiff.isDegraded()). Precomputation and SSR
+	 * are always completed. A value &lt;= 0 (the default) disables the budget.
+	 */
+	public void setTimeBudgetMillis(long timeBudgetMillis)
+	{
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	public long getTimeBudgetMillis()
+	{
+		return timeBudgetMillis;
+	}
+
+	/**
+	 * Lets every diff start with its time budget already used up, regardless
+	 * of the configured budget. For tests that need a degraded diff without
+	 * depending on the clock.
+	 */
+	void setTimeBudgetExpired(boolean timeBudgetExpired)
+	{
+		this.timeBudgetExpired = timeBudgetExpired;
+	}
+
+	boolean isTimeBudgetExpired()
+	{
+		return timeBudgetExpired;
+	}
+
+	// =========================================================================
+	// Precomputation phase
+
+	/**
+	 * If a pool is given, T1 and T2 are precomputed concurrently in that pool.
+	 * The node metrics must then be safe to use from multiple threads. If no
+	 * pool is given (the default), both trees are precomputed one after the
+	 * other on the calling thread.
+	 */
+	public void setPrecomputationPool(ForkJoinPool precomputationPool)
+	{
+		this.precomputationPool = precomputationPool;
+	}
+
+	public ForkJoinPool getPrecomputationPool()
+	{
+		return precomputationPool;
+	}
+
+	/**
+	 * When precomputing in a pool, the metrics (weight and hash) of the
+	 * individual nodes of a tree are computed in chunks of at most this many
+	 * nodes, which run as separate tasks. A value &lt;= 0 disables the
+	 * splitting.
+	 */
+	public void setPrecomputationForkThreshold(int precomputationForkThreshold)
+	{
+		this.precomputationForkThreshold = precomputationForkThreshold;
+	}
+
+	public int getPrecomputationForkThreshold()
+	{
+		return precomputationForkThreshold;
+	}
+
+	/**
+	 * Selects the width of the subtree hashes. 32 bit hashes are combined with
+	 * a cheap function and collide often enough on large trees that hash
+	 * equality has to be verified node by node and that colliding subtrees get
+	 * flagged as duplicates. 64 bit hashes are combined with a proper mixing
+	 * function. If the node metrics implement NodeMetrics64Interface its 64
+	 * bit node hashes are used.
+	 */
+	public void setSubtreeHashMode(SubtreeHashMode subtreeHashMode)
+	{
+		this.subtreeHashMode = subtreeHashMode;
+	}
+
+	public SubtreeHashMode getSubtreeHashMode()
+	{
+		return subtreeHashMode;
+	}
+
+	/**
+	 * If disabled, subtrees with equal hashes are mapped without comparing
+	 * their nodes using NodeMetricsInterface.verifyHashEquality(). Only
+	 * honored in 64 bit mode and if the node metrics implement
+	 * NodeMetrics64Interface; otherwise the 64 bit hashes are derived from 32
+	 * bit node hashes and are still verified. Enabled by default.
+	 */
+	public void setVerifySubtreeHashes(boolean verifySubtreeHashes)
+	{
+		this.verifySubtreeHashes = verifySubtreeHashes;
+	}
+
+	public boolean isVerifySubtreeHashes()
+	{
+		return verifySubtreeHashes;
+	}
+
 	// =========================================================================
 	// Search Space Reduction (SSR) phase
 
@@ -193,8 +348,74 @@ public final class HDDiffOptions
 		return tnsmSsj;
 	}
 
+	/**
+	 * The suffix array construction used to find the common substrings of the
+	 * leaf strings. Defaults to SA-IS, DC3 is still available for comparison.
+	 */
+	public void setTnsmSuffixArrayBuilder(
+			SuffixArrayBuilderInterface tnsmSaBuilder)
+	{
+		this.tnsmSaBuilder = tnsmSaBuilder;
+	}
+
+	public SuffixArrayBuilderInterface getTnsmSuffixArrayBuilder()
+	{
+		return tnsmSaBuilder;
+	}
+
+	/**
+	 * If a pool is given, the suffix array and the LCP array of leaf strings
+	 * that are longer than the parallel threshold are built in that pool.
+	 * Shorter strings are always handled by the suffix array builder on the
+	 * calling thread. This can be the same pool as the precomputation pool.
+	 */
+	public void setTnsmPool(ForkJoinPool tnsmPool)
+	{
+		this.tnsmPool = tnsmPool;
+	}
+
+	public ForkJoinPool getTnsmPool()
+	{
+		return tnsmPool;
+	}
+
+	/**
+	 * Minimum length of the combined leaf strings of T1 and T2 for which the
+	 * parallel construction is used. Only effective if a TNSM pool is set.
+	 */
+	public void setTnsmParallelThreshold(int tnsmParallelThreshold)
+	{
+		this.tnsmParallelThreshold = tnsmParallelThreshold;
+	}
+
+	public int getTnsmParallelThreshold()
+	{
+		return tnsmParallelThreshold;
+	}
+
+	/**
+	 * TNSM is skipped and the diff reported as degraded if the combined
+	 * length of the leaf strings of T1 and T2 exceeds this limit. Unlimited by
+	 * default.
+	 */
+	public void setTnsmMaxLeafStringLength(int tnsmMaxLeafStringLength)
+	{
+		this.tnsmMaxLeafStringLength = tnsmMaxLeafStringLength;
+	}
+
+	public int getTnsmMaxLeafStringLength()
+	{
+		return tnsmMaxLeafStringLength;
+	}
+
 	// =========================================================================
 
+	public enum SubtreeHashMode
+	{
+		BITS_32,
+		BITS_64,
+	}
+
 	public enum TreeDumpPhases
 	{
 		AFTER_PRECOMPUTE,
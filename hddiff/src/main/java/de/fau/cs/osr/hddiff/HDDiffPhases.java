@@ -0,0 +1,134 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+
+/**
+ * Runs the phases of a diff one by one so that they can be measured or
+ * tested individually. Meant for benchmarks and tests, not as an API for
+ * diffing; use HDDiff.editScript() for that.
+ * 
+ * <p>
+ * The phases have to be run in the order in which HDDiff.editScript() runs
+ * them, see Phase.
+ */
+public final class HDDiffPhases
+{
+	/**
+	 * The phases in the order in which HDDiff.editScript() runs them.
+	 */
+	public enum Phase
+	{
+		PRECOMPUTATION
+		{
+			@Override
+			void run(HDDiff diff)
+			{
+				diff.precompute();
+			}
+		},
+		GREEDY_SUBTREE_MATCHING
+		{
+			@Override
+			void run(HDDiff diff)
+			{
+				if (diff.greedySubtreeMatching())
+					throw new IllegalStateException("The trees are identical, there is nothing left to match");
+				diff.mapRoots();
+			}
+		},
+		TEXT_NODE_SPLIT_MATCHING
+		{
+			@Override
+			void run(HDDiff diff)
+			{
+				diff.textNodeSplitMatching();
+			}
+		},
+		BOTTOM_UP_MATCHING
+		{
+			@Override
+			void run(HDDiff diff)
+			{
+				diff.bottomUpMatching();
+			}
+		},
+		TOP_DOWN_MATCHING
+		{
+			@Override
+			void run(HDDiff diff)
+			{
+				diff.topDownMatching();
+				diff.gatherDeletes();
+			}
+		};
+
+		abstract void run(HDDiff diff);
+	}
+
+	// =========================================================================
+
+	private final HDDiff diff;
+
+	/** The phase to run next */
+	private int next;
+
+	// =========================================================================
+
+	public HDDiffPhases(DiffNode root1, DiffNode root2, HDDiffOptions options)
+	{
+		this.diff = new HDDiff(root1, root2, options, null);
+		this.diff.resetEditScript();
+	}
+
+	// =========================================================================
+
+	/**
+	 * Runs the given phase, which must be the next one.
+	 * 
+	 * @throws IllegalStateException
+	 *             If the given phase is not the next one or if the trees turn
+	 *             out to be identical after greedy subtree matching.
+	 */
+	public void run(Phase phase)
+	{
+		if (phase.ordinal() != next)
+			throw new IllegalStateException("Phase " + phase + " cannot run now, the next phase is " + nextPhase());
+		phase.run(diff);
+		++next;
+	}
+
+	/**
+	 * Runs all phases preceding the given phase that have not run yet.
+	 */
+	public void runUntil(Phase phase)
+	{
+		while (next < phase.ordinal())
+			run(Phase.values()[next]);
+	}
+
+	/**
+	 * @return The phase to run next or null if all phases have run.
+	 */
+	public Phase nextPhase()
+	{
+		Phase[] phases = Phase.values();
+		return (next < phases.length) ? phases[next] : null;
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.Arrays;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+
+/**
+ * Maps each character of a leaf string to the node it came from and its
+ * position in that node's text.
+ * 
+ * <p>
+ * Every node occupies a contiguous run of characters and a node's first
+ * character always has position 0. It is therefore enough to store the start
+ * offset of every run. The runs of the leaves are stored in ascending order
+ * and found by binary search. Splitting a node adds a run for the new node.
+ * These additional runs are kept in a singly linked list per leaf, ordered by
+ * start offset, so that splitting never has to shift the leaf runs.
+ * 
+ * <p>
+ * Memory consumption is linear in the number of leaves and splits, not in the
+ * number of characters.
+ */
+final class NodeCharMap
+{
+	private static final int NONE = -1;
+
+	// =========================================================================
+
+	private int[] leafStarts;
+
+	private DiffNode[] leafNodes;
+
+	/** Head of the list of additional runs for each leaf or NONE. */
+	private int[] firstSplit;
+
+	private int leafCount;
+
+	private int length;
+
+	private int[] splitStarts;
+
+	private DiffNode[] splitNodes;
+
+	private int[] nextSplit;
+
+	private int splitCount;
+
+	// =========================================================================
+
+	public NodeCharMap(int expectedLeafCount)
+	{
+		int capacity = Math.max(expectedLeafCount, 16);
+		leafStarts = new int[capacity];
+		leafNodes = new DiffNode[capacity];
+		firstSplit = new int[capacity];
+
+		splitStarts = new int[16];
+		splitNodes = new DiffNode[16];
+		nextSplit = new int[16];
+	}
+
+	// =========================================================================
+
+	/**
+	 * Appends the next len characters of the leaf string which all belong to
+	 * the given node.
+	 */
+	public void append(DiffNode node, int len)
+	{
+		if (len <= 0)
+			return;
+
+		if (leafCount == leafStarts.length)
+		{
+			int capacity = leafCount << 1;
+			leafStarts = Arrays.copyOf(leafStarts, capacity);
+			leafNodes = Arrays.copyOf(leafNodes, capacity);
+			firstSplit = Arrays.copyOf(firstSplit, capacity);
+		}
+
+		leafStarts[leafCount] = length;
+		leafNodes[leafCount] = node;
+		firstSplit[leafCount] = NONE;
+		++leafCount;
+		length += len;
+	}
+
+	public int length()
+	{
+		return length;
+	}
+
+	public boolean isEmpty()
+	{
+		return length == 0;
+	}
+
+	/**
+	 * Removes all runs but keeps the allocated arrays.
+	 */
+	public void clear()
+	{
+		Arrays.fill(leafNodes, 0, leafCount, null);
+		Arrays.fill(splitNodes, 0, splitCount, null);
+		leafCount = 0;
+		length = 0;
+		splitCount = 0;
+	}
+
+	// =========================================================================
+
+	public DiffNode nodeAt(int c)
+	{
+		int leaf = findLeaf(c);
+		int split = findSplit(leaf, c);
+		return (split == NONE) ? leafNodes[leaf] : splitNodes[split];
+	}
+
+	/**
+	 * @return The position of the given character in the text of the node it
+	 *         belongs to.
+	 */
+	public int posAt(int c)
+	{
+		int leaf = findLeaf(c);
+		int split = findSplit(leaf, c);
+		return c - ((split == NONE) ? leafStarts[leaf] : splitStarts[split]);
+	}
+
+	/**
+	 * Records that the node owning character c was split at c. The characters
+	 * from c up to the end of that node's run now belong to newNode.
+	 */
+	public void split(int c, DiffNode newNode)
+	{
+		int leaf = findLeaf(c);
+		int pred = findSplit(leaf, c);
+
+		if (((pred == NONE) ? leafStarts[leaf] : splitStarts[pred]) == c)
+		{
+			// A split at the start of a run only replaces its node
+			if (pred == NONE)
+				leafNodes[leaf] = newNode;
+			else
+				splitNodes[pred] = newNode;
+			return;
+		}
+
+		if (splitCount == splitStarts.length)
+		{
+			int capacity = splitCount << 1;
+			splitStarts = Arrays.copyOf(splitStarts, capacity);
+			splitNodes = Arrays.copyOf(splitNodes, capacity);
+			nextSplit = Arrays.copyOf(nextSplit, capacity);
+		}
+
+		int split = splitCount++;
+		splitStarts[split] = c;
+		splitNodes[split] = newNode;
+		if (pred == NONE)
+		{
+			nextSplit[split] = firstSplit[leaf];
+			firstSplit[leaf] = split;
+		}
+		else
+		{
+			nextSplit[split] = nextSplit[pred];
+			nextSplit[pred] = split;
+		}
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The index of the last leaf run that starts at or before c.
+	 */
+	private int findLeaf(int c)
+	{
+		if ((c < 0) || (c >= length))
+			throw new IndexOutOfBoundsException("Index: " + c + ", Length: " + length);
+
+		int i = Arrays.binarySearch(leafStarts, 0, leafCount, c);
+		return (i >= 0) ? i : -i - 2;
+	}
+
+	/**
+	 * @return The last additional run of the given leaf that starts at or
+	 *         before c or NONE if c lies in the leaf's first run.
+	 */
+	private int findSplit(int leaf, int c)
+	{
+		int found = NONE;
+		for (int s = firstSplit[leaf]; (s != NONE) && (splitStarts[s] <= c); s = nextSplit[s])
+			found = s;
+		return found;
+	}
+}
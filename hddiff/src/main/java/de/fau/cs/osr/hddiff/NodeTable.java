@@ -0,0 +1,382 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.Arrays;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeStateInterface;
+
+/**
+ * Matching state of the nodes of one tree in primitive arrays indexed by
+ * DiffNode.getId().
+ * 
+ * <p>
+ * The nodes present before the diff are numbered in pre-order, in the order
+ * of their FlatTree. Adding a node assigns it the next id; nodes created
+ * while diffing (split text nodes, inserted nodes) are added when they are
+ * created.
+ * 
+ * <p>
+ * A text node of a tree that must not be changed is split virtually: The diff
+ * splits a private copy of the text node instead, which it keeps in a
+ * private copy of the text node's parent (the holder). The table then
+ * replaces the text node by its parts when the diff walks the tree with
+ * getParent(), getFirstChild() and getNextSibling().
+ */
+final class NodeTable
+		implements
+			NodeStateInterface
+{
+	private DiffNode[] nodes;
+
+	private DiffNode[] partners;
+
+	private int[] weights;
+
+	/** Either a 32 bit hash (sign-extended) or a 64 bit hash. */
+	private long[] subtreeHashes;
+
+	/** common in 0..weight. */
+	private int[] common;
+
+	/** One bit per node. */
+	private long[] subtreeMatched;
+
+	/**
+	 * One bit per node. Set for text nodes that were split and for the parts
+	 * created by splitting.
+	 */
+	private long[] split;
+
+	/**
+	 * For the parts of a virtually split text node, the text node. Null until
+	 * the first virtual split.
+	 */
+	private DiffNode[] origins;
+
+	/**
+	 * For a virtually split text node, the holder of its parts. Null until
+	 * the first virtual split.
+	 */
+	private DiffNode[] holders;
+
+	private int size;
+
+	// =========================================================================
+
+	/**
+	 * Assigns ids to the first {@code size} nodes in the given order. The
+	 * weight and hash arrays are taken over, they must have the same length as
+	 * the node array.
+	 * 
+	 * @param assignIds
+	 *            If false, the nodes must already carry their ids and are not
+	 *            written to.
+	 * @throws IllegalArgumentException
+	 *             If ids are not assigned and a node does not carry its id.
+	 */
+	public NodeTable(
+			DiffNode[] nodes,
+			int[] weights,
+			long[] subtreeHashes,
+			int size,
+			boolean assignIds)
+	{
+		for (int i = 0; i < size; ++i)
+		{
+			if (nodes[i].getId() == i)
+				continue;
+
+			if (!assignIds)
+				throw new IllegalArgumentException("The nodes of a read-only "
+						+ "tree must be numbered in pre-order beforehand, see "
+						+ "HDDiff.assignIds()");
+			nodes[i].setId(i);
+		}
+
+		int capacity = nodes.length;
+		this.nodes = Arrays.copyOf(nodes, capacity);
+		this.partners = new DiffNode[capacity];
+		this.weights = weights;
+		this.subtreeHashes = subtreeHashes;
+		this.common = new int[capacity];
+		this.subtreeMatched = new long[(capacity + 63) >>> 6];
+		this.split = new long[(capacity + 63) >>> 6];
+		this.size = size;
+	}
+
+	private NodeTable(NodeTable other)
+	{
+		this.nodes = other.nodes.clone();
+		this.partners = other.partners.clone();
+		this.weights = other.weights.clone();
+		this.subtreeHashes = other.subtreeHashes.clone();
+		this.common = other.common.clone();
+		this.subtreeMatched = other.subtreeMatched.clone();
+		this.split = other.split.clone();
+		this.origins = (other.origins != null) ? other.origins.clone() : null;
+		this.holders = (other.holders != null) ? other.holders.clone() : null;
+		this.size = other.size;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return A deep copy of this table. The ids of the nodes stay the same.
+	 */
+	public NodeTable copy()
+	{
+		return new NodeTable(this);
+	}
+
+	/**
+	 * Assigns the next id to the given node.
+	 * 
+	 * @return The id of the node.
+	 */
+	public int add(DiffNode node)
+	{
+		if (size == nodes.length)
+			grow(size + 1);
+		node.setId(size);
+		nodes[size] = node;
+		return size++;
+	}
+
+	/**
+	 * Adds the private copy of a text node that is about to be split
+	 * virtually. The copy takes over the state of the text node and replaces
+	 * it from now on.
+	 * 
+	 * @param holder
+	 *            The private copy of the text node's parent which the copy is
+	 *            the only child of.
+	 * @return The id of the copy.
+	 */
+	public int addCopy(DiffNode copy, DiffNode node, DiffNode holder)
+	{
+		if (origins == null)
+		{
+			origins = new DiffNode[nodes.length];
+			holders = new DiffNode[nodes.length];
+		}
+
+		int id = add(copy);
+		int from = node.getId();
+		partners[id] = partners[from];
+		weights[id] = weights[from];
+		subtreeHashes[id] = subtreeHashes[from];
+		common[id] = common[from];
+		set(subtreeMatched, id, isSet(subtreeMatched, from));
+		set(split, id, isSet(split, from));
+		origins[id] = node;
+		holders[from] = holder;
+		return id;
+	}
+
+	/**
+	 * Adds a part that was split off a part of a virtually split text node.
+	 * 
+	 * @return The id of the part.
+	 */
+	public int addPart(DiffNode part, DiffNode splitPart)
+	{
+		int id = add(part);
+		origins[id] = origins[splitPart.getId()];
+		return id;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public DiffNode getNode(int id)
+	{
+		return nodes[id];
+	}
+
+	// =========================================================================
+	// Tree links as seen by the diff
+
+	public boolean hasVirtualSplits()
+	{
+		return origins != null;
+	}
+
+	/**
+	 * @return The text node the given node is a part of if that text node
+	 *         was split virtually, otherwise null.
+	 */
+	public DiffNode getOrigin(DiffNode node)
+	{
+		return (origins != null) ? origins[node.getId()] : null;
+	}
+
+	/**
+	 * @return The first part of the given node if it was split virtually,
+	 *         otherwise the node itself. The first part is the copy of the
+	 *         node.
+	 */
+	public DiffNode substitute(DiffNode node)
+	{
+		if ((origins == null) || (node == null))
+			return node;
+		DiffNode holder = holders[node.getId()];
+		return (holder != null) ? holder.getFirstChild() : node;
+	}
+
+	/**
+	 * @return Whether the given node is the copy of a virtually split text
+	 *         node, that is, its first part.
+	 */
+	public boolean isCopy(DiffNode node)
+	{
+		DiffNode origin = getOrigin(node);
+		return (origin != null) && (holders[origin.getId()].getFirstChild() == node);
+	}
+
+	public DiffNode getParent(DiffNode node)
+	{
+		DiffNode origin = getOrigin(node);
+		return (origin != null) ? origin.getParent() : node.getParent();
+	}
+
+	public DiffNode getFirstChild(DiffNode node)
+	{
+		return substitute(node.getFirstChild());
+	}
+
+	public DiffNode getNextSibling(DiffNode node)
+	{
+		DiffNode next = node.getNextSibling();
+		if (next == null)
+		{
+			DiffNode origin = getOrigin(node);
+			if (origin != null)
+				next = origin.getNextSibling();
+		}
+		return substitute(next);
+	}
+
+	// =========================================================================
+
+	@Override
+	public DiffNode getPartner(DiffNode node)
+	{
+		return partners[node.getId()];
+	}
+
+	public void setPartner(DiffNode node, DiffNode partner)
+	{
+		partners[node.getId()] = partner;
+	}
+
+	@Override
+	public int getWeight(DiffNode node)
+	{
+		return weights[node.getId()];
+	}
+
+	public void setWeight(DiffNode node, int weight)
+	{
+		weights[node.getId()] = weight;
+	}
+
+	public int addWeight(DiffNode node, int weight)
+	{
+		return weights[node.getId()] += weight;
+	}
+
+	@Override
+	public long getSubtreeHash(DiffNode node)
+	{
+		return subtreeHashes[node.getId()];
+	}
+
+	public void setSubtreeHash(DiffNode node, long hash)
+	{
+		subtreeHashes[node.getId()] = hash;
+	}
+
+	@Override
+	public int getCommon(DiffNode node)
+	{
+		return common[node.getId()];
+	}
+
+	public void setCommon(DiffNode node, int common)
+	{
+		this.common[node.getId()] = common;
+	}
+
+	@Override
+	public boolean isSubtreeMatched(DiffNode node)
+	{
+		return isSet(subtreeMatched, node.getId());
+	}
+
+	public void setSubtreeMatched(DiffNode node, boolean subtreeMatched)
+	{
+		set(this.subtreeMatched, node.getId(), subtreeMatched);
+	}
+
+	@Override
+	public boolean isSplit(DiffNode node)
+	{
+		return isSet(split, node.getId());
+	}
+
+	public void setSplit(DiffNode node, boolean split)
+	{
+		set(this.split, node.getId(), split);
+	}
+
+	// =========================================================================
+
+	private boolean isSet(long[] bits, int id)
+	{
+		return (bits[id >>> 6] & (1L << id)) != 0;
+	}
+
+	private void set(long[] bits, int id, boolean value)
+	{
+		if (value)
+			bits[id >>> 6] |= (1L << id);
+		else
+			bits[id >>> 6] &= ~(1L << id);
+	}
+
+	private void grow(int minCapacity)
+	{
+		int capacity = Math.max(minCapacity, nodes.length << 1);
+		nodes = Arrays.copyOf(nodes, capacity);
+		partners = Arrays.copyOf(partners, capacity);
+		weights = Arrays.copyOf(weights, capacity);
+		subtreeHashes = Arrays.copyOf(subtreeHashes, capacity);
+		common = Arrays.copyOf(common, capacity);
+		subtreeMatched = Arrays.copyOf(subtreeMatched, (capacity + 63) >>> 6);
+		split = Arrays.copyOf(split, (capacity + 63) >>> 6);
+		if (origins != null)
+		{
+			origins = Arrays.copyOf(origins, capacity);
+			holders = Arrays.copyOf(holders, capacity);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.List;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptListener;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.utils.ReportItem;
+
+/**
+ * A tree that was precomputed once and can be diffed as T1 against many
+ * other trees. The flat tree, weights, subtree hashes, the subtree hash index
+ * and the leaf sequence are computed when the tree is prepared; each diff
+ * only copies the node table.
+ * 
+ * <p>
+ * Diffs split the text nodes of the prepared tree virtually (see NodeTable):
+ * the splits only exist in the diff's copy of the node table, the prepared
+ * tree and its precomputation stay as they were. Every diff therefore sees
+ * the same unsplit tree, no matter which diffs ran before. The edit scripts
+ * refer to the nodes of the prepared tree and replay their splits when they
+ * are applied; once one of them has been applied, the tree must not be
+ * diffed again.
+ * 
+ * <p>
+ * After each diff the partner links between the prepared tree and the other
+ * tree are cleared. Instances are not thread-safe, unless the tree was
+ * prepared in read-only mode (HDDiffOptions.setReadOnlyTrees()). Diffs then
+ * neither split (text nodes are split virtually) nor link the nodes of
+ * either tree and can run concurrently. The other trees must have been
+ * numbered with HDDiff.assignIds().
+ * 
+ * <p>
+ * A diff that is cancelled (see HDDiff.editScript()) leaves the prepared tree
+ * usable: its partner links are cleared. The partners of the other tree are
+ * not cleared.
+ */
+public final class PreparedTree
+{
+	private final DiffNode root;
+
+	private final HDDiffOptions options;
+
+	private final TreePrecomputation precomputation;
+
+	/** Whether the last diff that finished was degraded */
+	private volatile boolean degraded;
+
+	// =========================================================================
+
+	PreparedTree(
+			DiffNode root,
+			HDDiffOptions options,
+			TreePrecomputation precomputation)
+	{
+		this.root = root;
+		this.options = options;
+		this.precomputation = precomputation;
+	}
+
+	// =========================================================================
+
+	public DiffNode getRoot()
+	{
+		return root;
+	}
+
+	public HDDiffOptions getOptions()
+	{
+		return options;
+	}
+
+	/**
+	 * @return Whether the last diff that finished exceeded a budget and
+	 *         returned a coarser edit script (see HDDiff.isDegraded()). If
+	 *         diffs run concurrently, ask the workspace of the diff instead
+	 *         (DiffWorkspace.isDegraded()).
+	 */
+	public boolean isDegraded()
+	{
+		return degraded;
+	}
+
+	// =========================================================================
+
+	public List<EditOp> editScript(DiffNode root2)
+	{
+		return editScript(root2, null);
+	}
+
+	/**
+	 * Computes the edit script from the prepared tree to the given tree using
+	 * the options the tree was prepared with.
+	 */
+	public List<EditOp> editScript(DiffNode root2, ReportItem report)
+	{
+		HDDiff diff = newDiff(root2, report, null);
+		try
+		{
+			return diff.editScript();
+		}
+		finally
+		{
+			finishDiff(diff);
+		}
+	}
+
+	/**
+	 * Passes the operations of the edit script to the given listener as they
+	 * are computed, e.g. to only count them.
+	 */
+	public void editScript(
+			DiffNode root2,
+			ReportItem report,
+			EditScriptListener listener)
+	{
+		editScript(root2, report, null, listener);
+	}
+
+	/**
+	 * Reuses the buffers of the given workspace (see DiffWorkspace). Diffs
+	 * that run concurrently need a workspace each.
+	 */
+	public void editScript(
+			DiffNode root2,
+			ReportItem report,
+			DiffWorkspace workspace,
+			EditScriptListener listener)
+	{
+		HDDiff diff = newDiff(root2, report, workspace);
+		try
+		{
+			diff.editScript(listener);
+		}
+		finally
+		{
+			finishDiff(diff);
+		}
+	}
+
+	private HDDiff newDiff(
+			DiffNode root2,
+			ReportItem report,
+			DiffWorkspace workspace)
+	{
+		HDDiff diff = new HDDiff(root, precomputation.copyForDiff(), root2, options, report, workspace);
+		diff.setVirtualSplits(true, false);
+		return diff;
+	}
+
+	private void finishDiff(HDDiff diff)
+	{
+		degraded = diff.isDegraded();
+		if (!options.isReadOnlyTrees())
+			root.unmapDeep();
+	}
+}
@@ -0,0 +1,527 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.FlatTree;
+import de.fau.cs.osr.hddiff.tree.NodeMetrics64Interface;
+import de.fau.cs.osr.hddiff.tree.NodeMetricsInterface;
+import de.fau.cs.osr.hddiff.tree.NodeTypeDictionary;
+import de.fau.cs.osr.hddiff.utils.HashMixer;
+import de.fau.cs.osr.hddiff.utils.LongHashIndex;
+
+/**
+ * Precomputation state of one tree: the flat tree, node ids, weights and
+ * subtree hashes (in a NodeTable), the leaf sequence, the subtree hash index
+ * (T1 only) and statistics.
+ * 
+ * <p>
+ * The tree is first flattened into pre-order arrays. The metrics of the
+ * individual nodes are then computed per node and afterwards combined into
+ * weights and subtree hashes in reverse pre-order, where all children of a
+ * node have been combined before the node itself.
+ * 
+ * <p>
+ * Since every tree has its own state object, T1 and T2 can be precomputed
+ * concurrently. Inside a fork-join pool the metrics of the individual nodes,
+ * which is where the node's text gets hashed, are additionally computed in
+ * chunks of nodes that run as separate tasks.
+ * 
+ * <p>
+ * A tree that was precomputed as T2 of one diff and was only split virtually
+ * can become T1 of the next diff: its flat tree, leaf sequence, weights and
+ * subtree hashes are taken over and only the subtree hash index is built.
+ */
+final class TreePrecomputation
+{
+	private final NodeMetricsInterface nodeMetrics;
+
+	/** Only set in 64 bit mode if the metrics can compute 64 bit hashes. */
+	private final NodeMetrics64Interface nodeMetrics64;
+
+	private final boolean hash64;
+
+	private final int minSubtreeWeight;
+
+	private final int forkThreshold;
+
+	private final NodeTypeDictionary types;
+
+	private final boolean indexSubtreeHashes;
+
+	private final boolean assignIds;
+
+	private final int initialCapacity;
+
+	private FlatTree tree;
+
+	private NodeTable nodes;
+
+	/** Weight of each subtree, by flat tree index. */
+	private int[] weights;
+
+	/** Hash of each subtree, by flat tree index. */
+	private long[] hashes;
+
+	private ArrayList<DiffNode> leafSeq;
+
+	private LongHashIndex<DiffNode> subtreeHashes;
+
+	private int leafCount;
+
+	private int suitableSubtreeCount;
+
+	private int hashCollisionCount;
+
+	// =========================================================================
+
+	/**
+	 * @param hash64
+	 *            Whether 64 bit subtree hashes should be computed.
+	 * @param indexSubtreeHashes
+	 *            Whether suitable subtrees should be indexed by their hash.
+	 * @param assignIds
+	 *            Whether the node ids should be assigned. Otherwise the nodes
+	 *            must already carry their pre-order index as id.
+	 * @param forkThreshold
+	 *            The metrics of the individual nodes are computed in chunks of
+	 *            this many nodes which run as separate fork-join tasks. Only
+	 *            effective when computing inside a fork-join pool. Values &lt;=
+	 *            0 disable splitting.
+	 */
+	public TreePrecomputation(
+			NodeMetricsInterface nodeMetrics,
+			NodeTypeDictionary types,
+			int minSubtreeWeight,
+			boolean hash64,
+			boolean indexSubtreeHashes,
+			boolean assignIds,
+			int forkThreshold,
+			int initialCapacity)
+	{
+		this.nodeMetrics = nodeMetrics;
+		this.nodeMetrics64 = (hash64 && (nodeMetrics instanceof NodeMetrics64Interface)) ?
+				(NodeMetrics64Interface) nodeMetrics : null;
+		this.types = types;
+		this.hash64 = hash64;
+		this.minSubtreeWeight = minSubtreeWeight;
+		this.forkThreshold = forkThreshold;
+		this.indexSubtreeHashes = indexSubtreeHashes;
+		this.assignIds = assignIds;
+		this.initialCapacity = initialCapacity;
+	}
+
+	/**
+	 * Copies the given precomputation. Everything but the node table is
+	 * shared.
+	 */
+	private TreePrecomputation(TreePrecomputation other)
+	{
+		this.nodeMetrics = other.nodeMetrics;
+		this.nodeMetrics64 = other.nodeMetrics64;
+		this.types = other.types;
+		this.hash64 = other.hash64;
+		this.minSubtreeWeight = other.minSubtreeWeight;
+		this.forkThreshold = other.forkThreshold;
+		this.indexSubtreeHashes = other.indexSubtreeHashes;
+		this.assignIds = other.assignIds;
+		this.initialCapacity = other.initialCapacity;
+		this.tree = other.tree;
+		this.nodes = other.nodes.copy();
+		this.weights = other.weights;
+		this.hashes = other.hashes;
+		this.leafSeq = other.leafSeq;
+		this.subtreeHashes = other.subtreeHashes;
+		this.leafCount = other.leafCount;
+		this.suitableSubtreeCount = other.suitableSubtreeCount;
+		this.hashCollisionCount = other.hashCollisionCount;
+	}
+
+	// =========================================================================
+
+	/**
+	 * Precomputes both trees concurrently in the given pool.
+	 */
+	public static void computeConcurrently(
+			ForkJoinPool pool,
+			DiffNode root1,
+			TreePrecomputation pre1,
+			DiffNode root2,
+			TreePrecomputation pre2)
+	{
+		pool.invoke(new TreesTask(
+				new TreeTask(pre1, root1),
+				new TreeTask(pre2, root2)));
+	}
+
+	/**
+	 * Precomputes a single tree in the given pool.
+	 */
+	public static void computeInPool(
+			ForkJoinPool pool,
+			DiffNode root,
+			TreePrecomputation pre)
+	{
+		pool.invoke(new TreeTask(pre, root));
+	}
+
+	public void compute(DiffNode root)
+	{
+		tree = FlatTree.build(root, types, initialCapacity);
+		NodeMetricsTask metrics = new NodeMetricsTask(this, 0, tree.size());
+		metrics.computeSequentially();
+		combine(metrics.weights, metrics.hashes);
+	}
+
+	private void computeForked(DiffNode root)
+	{
+		tree = FlatTree.build(root, types, initialCapacity);
+		NodeMetricsTask metrics = new NodeMetricsTask(this, 0, tree.size());
+		metrics.invoke();
+		combine(metrics.weights, metrics.hashes);
+	}
+
+	/**
+	 * Takes over the precomputation of a tree that was precomputed as T2 of a
+	 * diff. The diff must have split the tree only virtually; it then only
+	 * wrote to the entries of the node table that lie behind the tree's
+	 * nodes. A fresh node table is created from the weights and subtree
+	 * hashes and the subtree hash index is built if this precomputation
+	 * indexes subtree hashes. Both precomputations must use the same node
+	 * metrics and hash width.
+	 */
+	public void takeOver(TreePrecomputation previous)
+	{
+		tree = previous.tree;
+		leafSeq = previous.leafSeq;
+		leafCount = previous.leafCount;
+
+		int size = tree.size();
+		int capacity = tree.getNodes().length;
+		weights = new int[capacity];
+		hashes = new long[capacity];
+		System.arraycopy(previous.weights, 0, weights, 0, size);
+		System.arraycopy(previous.hashes, 0, hashes, 0, size);
+
+		nodes = new NodeTable(tree.getNodes(), weights, hashes, size, assignIds);
+		indexSubtrees();
+	}
+
+	/**
+	 * A diff only writes to the node tables of its precomputations. The
+	 * flat tree, the leaf sequence and the subtree hash index are only read.
+	 * 
+	 * @return A precomputation that shares everything with this one but the
+	 *         node table, which is copied. It can be handed to a diff while
+	 *         this precomputation is kept for further diffs.
+	 */
+	public TreePrecomputation copyForDiff()
+	{
+		return new TreePrecomputation(this);
+	}
+
+	// =========================================================================
+
+	public NodeTypeDictionary getTypes()
+	{
+		return types;
+	}
+
+	public FlatTree getFlatTree()
+	{
+		return tree;
+	}
+
+	public NodeTable getNodeTable()
+	{
+		return nodes;
+	}
+
+	public ArrayList<DiffNode> getLeafSeq()
+	{
+		return leafSeq;
+	}
+
+	public LongHashIndex<DiffNode> getSubtreeHashes()
+	{
+		return subtreeHashes;
+	}
+
+	public int getNodeCount()
+	{
+		return tree.size();
+	}
+
+	public int getLeafCount()
+	{
+		return leafCount;
+	}
+
+	public int getTextLength()
+	{
+		return tree.getTotalTextLength();
+	}
+
+	public int getSuitableSubtreeCount()
+	{
+		return suitableSubtreeCount;
+	}
+
+	public int getHashCollisionCount()
+	{
+		return hashCollisionCount;
+	}
+
+	// =========================================================================
+
+	private int computeNodeWeight(DiffNode node)
+	{
+		return nodeMetrics.computeWeight(node);
+	}
+
+	/**
+	 * 32 bit hashes are stored sign-extended. Without 64 bit node metrics the
+	 * 32 bit node hashes are mixed to 64 bits, which spreads them but keeps
+	 * their collisions.
+	 */
+	private long computeNodeHash(DiffNode node)
+	{
+		if (!hash64)
+			return nodeMetrics.computeHash(node);
+
+		return (nodeMetrics64 != null) ?
+				nodeMetrics64.computeHash64(node) :
+				HashMixer.mix64(nodeMetrics.computeHash(node));
+	}
+
+	/**
+	 * Combines the metrics of the individual nodes into weights and subtree
+	 * hashes. Visits the nodes in reverse pre-order, all children of a node
+	 * have been visited before the node itself.
+	 */
+	private void combine(int[] nodeWeights, long[] nodeHashes)
+	{
+		int size = tree.size();
+		weights = new int[nodeWeights.length];
+		hashes = new long[nodeHashes.length];
+
+		for (int i = size - 1; i >= 0; --i)
+		{
+			int weight = 0;
+			long hash = 0;
+
+			// Children are combined in document order
+			for (int child = tree.getFirstChild(i); child >= 0; child = tree.getNextSibling(child))
+			{
+				weight += weights[child];
+				hash = combineChildHash(hash, hashes[child]);
+			}
+
+			weights[i] = weight + nodeWeights[i];
+			hashes[i] = combineNodeHash(hash, nodeHashes[i]);
+		}
+
+		nodes = new NodeTable(tree.getNodes(), weights, hashes, size, assignIds);
+
+		leafSeq = new ArrayList<>(size / 2 + 1);
+		for (int i = 0; i < size; ++i)
+		{
+			if (tree.isLeaf(i))
+			{
+				leafSeq.add(tree.getNode(i));
+				++leafCount;
+			}
+		}
+
+		indexSubtrees();
+	}
+
+	private void indexSubtrees()
+	{
+		if (!indexSubtreeHashes)
+			return;
+
+		int size = tree.size();
+		subtreeHashes = new LongHashIndex<>(size);
+		for (int i = 0; i < size; ++i)
+		{
+			if (weights[i] >= minSubtreeWeight)
+			{
+				++suitableSubtreeCount;
+				indexSubtree(hashes[i], tree.getNode(i));
+			}
+		}
+	}
+
+	private long combineChildHash(long hash, long childHash)
+	{
+		if (hash64)
+			return HashMixer.combine64(hash, childHash);
+		return combine32(hash, 31 * (int) childHash);
+	}
+
+	private long combineNodeHash(long hash, long nodeHash)
+	{
+		if (hash64)
+			return HashMixer.combine64(hash, nodeHash);
+		return combine32(hash, (int) nodeHash);
+	}
+
+	private static long combine32(long hash, int other)
+	{
+		return (17 * (int) hash) ^ other;
+	}
+
+	private void indexSubtree(long hash, DiffNode node)
+	{
+
+		/**
+		 * There's a possibility of hash collisions here. But checking the
+		 * suspected subtrees for real equality is too expensive. It would be
+		 * done for duplicate subtrees as well as for hash collisions. We assume
+		 * that hash collisions are far more unlikely then duplicate trees and
+		 * accept that we might accidently flag a subtree as duplicate although
+		 * it isn't. This decreases (initial) match quality but does not affect
+		 * correctness.
+		 */
+		if (!subtreeHashes.putOrMarkDuplicate(hash, node))
+			++hashCollisionCount;
+	}
+
+	// =========================================================================
+
+	/**
+	 * Computes the weight and hash of the nodes in {@code [from, to)} of the
+	 * flat tree, not including their children. Ranges larger than the fork
+	 * threshold are split in halves which are computed as separate tasks.
+	 */
+	private static final class NodeMetricsTask
+			extends
+				RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final TreePrecomputation state;
+
+		private final int from;
+
+		private final int to;
+
+		/** Shared by all tasks of a tree. */
+		private final int[] weights;
+
+		/** Shared by all tasks of a tree. */
+		private final long[] hashes;
+
+		public NodeMetricsTask(TreePrecomputation state, int from, int to)
+		{
+			this.state = state;
+			this.from = from;
+			this.to = to;
+			int capacity = state.tree.getNodes().length;
+			this.weights = new int[capacity];
+			this.hashes = new long[capacity];
+		}
+
+		private NodeMetricsTask(NodeMetricsTask parent, int from, int to)
+		{
+			this.state = parent.state;
+			this.from = from;
+			this.to = to;
+			this.weights = parent.weights;
+			this.hashes = parent.hashes;
+		}
+
+		@Override
+		protected void compute()
+		{
+			int threshold = state.forkThreshold;
+			if ((threshold <= 0) || (to - from <= threshold))
+			{
+				computeSequentially();
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(
+					new NodeMetricsTask(this, from, mid),
+					new NodeMetricsTask(this, mid, to));
+		}
+
+		public void computeSequentially()
+		{
+			FlatTree tree = state.tree;
+			for (int i = from; i < to; ++i)
+			{
+				DiffNode node = tree.getNode(i);
+				weights[i] = state.computeNodeWeight(node);
+				hashes[i] = state.computeNodeHash(node);
+			}
+		}
+	}
+
+	private static final class TreeTask
+			extends
+				RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final TreePrecomputation state;
+
+		private final DiffNode root;
+
+		public TreeTask(TreePrecomputation state, DiffNode root)
+		{
+			this.state = state;
+			this.root = root;
+		}
+
+		@Override
+		protected void compute()
+		{
+			state.computeForked(root);
+		}
+	}
+
+	private static final class TreesTask
+			extends
+				RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final TreeTask tree1;
+
+		private final TreeTask tree2;
+
+		public TreesTask(TreeTask tree1, TreeTask tree2)
+		{
+			this.tree1 = tree1;
+			this.tree2 = tree2;
+		}
+
+		@Override
+		protected void compute()
+		{
+			invokeAll(tree1, tree2);
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+
+/**
+ * Applies an edit script in bulk. Same result as EditScriptManager.apply()
+ * but without hash maps and per-parent lists:
+ * 
+ * <ul>
+ * <li>Splits that the diff did not apply to T1 are replayed first, see
+ * EditOpSplit.isApplied().</li>
+ * <li>Every node the script refers to gets a slot in a set of arrays. The
+ * slot is stored as the node's id while applying, the original ids are
+ * restored afterwards.</li>
+ * <li>Moved nodes and the topmost deleted nodes are removed from their
+ * parents. Deleted nodes below a deleted node stay attached to it.</li>
+ * <li>The inserted and moved nodes are grouped by their new parent and sorted
+ * by final position in one primitive array. Each parent's child list is then
+ * merged with its new children in a single pass.</li>
+ * </ul>
+ */
+final class BulkEditScriptApplier
+{
+	private static final boolean ASSERTIONS = true;
+
+	private static final byte MOVED = 1;
+
+	private static final byte DELETED = 2;
+
+	// =========================================================================
+
+	private DiffNode[] slotNodes;
+
+	/** The id each node had before it got its slot */
+	private int[] savedIds;
+
+	private byte[] flags;
+
+	private int slotCount;
+
+	/** Slot of the new parent of each inserted or moved node */
+	private int[] entryParents;
+
+	private int[] entryPositions;
+
+	private DiffNode[] entryNodes;
+
+	private int entryCount;
+
+	private EditOpUpdate[] updates;
+
+	private int updateCount;
+
+	// =========================================================================
+
+	public BulkEditScriptApplier(int capacity)
+	{
+		capacity = Math.max(capacity, 16);
+		slotNodes = new DiffNode[capacity];
+		savedIds = new int[capacity];
+		flags = new byte[capacity];
+		entryParents = new int[capacity];
+		entryPositions = new int[capacity];
+		entryNodes = new DiffNode[capacity];
+		updates = new EditOpUpdate[16];
+	}
+
+	// =========================================================================
+
+	public void apply(List<EditOp> editScript)
+	{
+		try
+		{
+			for (EditOp op : editScript)
+				collect(op);
+
+			removeNodes();
+
+			for (int i = 0; i < updateCount; ++i)
+				updates[i].getUpdatedNode().applyUpdate(updates[i].getUpdate());
+
+			insertNodes();
+		}
+		finally
+		{
+			for (int slot = 0; slot < slotCount; ++slot)
+				slotNodes[slot].setId(savedIds[slot]);
+		}
+	}
+
+	private void collect(EditOp op)
+	{
+		switch (op.getType())
+		{
+			case INSERT:
+			{
+				EditOpInsert ins = (EditOpInsert) op;
+				addEntry(slot(ins.getParent()), ins.getFinalPosition(), ins.getInsertedNode());
+				break;
+			}
+			case MOVE:
+			{
+				EditOpMove mov = (EditOpMove) op;
+				int moved = slot(mov.getMovedNode());
+				flags[moved] |= MOVED;
+				addEntry(slot(mov.getToParent()), mov.getFinalPosition(), mov.getMovedNode());
+				break;
+			}
+			case DELETE:
+			{
+				int deleted = slot(((EditOpDelete) op).getDeletedNode());
+				flags[deleted] |= DELETED;
+				break;
+			}
+			case UPDATE:
+				if (updateCount == updates.length)
+					updates = Arrays.copyOf(updates, updateCount * 2);
+				updates[updateCount++] = (EditOpUpdate) op;
+				break;
+			case SPLIT:
+			{
+				EditOpSplit split = (EditOpSplit) op;
+				if (!split.isApplied())
+					EditScriptManager.replaySplit(split);
+				break;
+			}
+		}
+	}
+
+	// =========================================================================
+
+	private void removeNodes()
+	{
+		for (int slot = 0; slot < slotCount; ++slot)
+		{
+			DiffNode node = slotNodes[slot];
+			if ((flags[slot] & MOVED) != 0)
+			{
+				node.removeFromParent();
+			}
+			else if ((flags[slot] & DELETED) != 0)
+			{
+				// The parent is removed, the node goes with it
+				int parent = slotOf(node.getParent());
+				if ((parent < 0) || ((flags[parent] & DELETED) == 0))
+					node.removeFromParent();
+			}
+		}
+	}
+
+	private void insertNodes()
+	{
+		// Group the entries by parent, ordered by final position
+		int[] offsets = new int[slotCount + 1];
+		for (int i = 0; i < entryCount; ++i)
+			++offsets[entryParents[i] + 1];
+		for (int slot = 0; slot < slotCount; ++slot)
+			offsets[slot + 1] += offsets[slot];
+
+		int[] fill = Arrays.copyOf(offsets, slotCount);
+		long[] sorted = new long[entryCount];
+		for (int i = 0; i < entryCount; ++i)
+			sorted[fill[entryParents[i]]++] = ((long) entryPositions[i] << 32) | i;
+
+		for (int slot = 0; slot < slotCount; ++slot)
+		{
+			int from = offsets[slot];
+			int to = offsets[slot + 1];
+			if (from == to)
+				continue;
+
+			Arrays.sort(sorted, from, to);
+			merge(slotNodes[slot], sorted, from, to);
+		}
+	}
+
+	/**
+	 * Inserts the new children of the given parent while walking its
+	 * remaining children once.
+	 */
+	private void merge(DiffNode parent, long[] sorted, int from, int to)
+	{
+		int i = 0;
+		DiffNode child = parent.getFirstChild();
+		for (int k = from; k < to; ++k)
+		{
+			int entry = (int) sorted[k];
+			int position = entryPositions[entry];
+			while ((i < position) && (child != null))
+			{
+				child = child.getNextSibling();
+				++i;
+			}
+
+			if (ASSERTIONS && (i != position))
+				throw new AssertionError("Final position behind the last child");
+
+			parent.appendOrInsert(entryNodes[entry], child);
+			++i;
+		}
+	}
+
+	// =========================================================================
+
+	private int slotOf(DiffNode node)
+	{
+		if (node == null)
+			return -1;
+		int id = node.getId();
+		if ((id >= 0) && (id < slotCount) && (slotNodes[id] == node))
+			return id;
+		return -1;
+	}
+
+	private int slot(DiffNode node)
+	{
+		int slot = slotOf(node);
+		if (slot >= 0)
+			return slot;
+
+		if (slotCount == slotNodes.length)
+		{
+			int capacity = slotCount * 2;
+			slotNodes = Arrays.copyOf(slotNodes, capacity);
+			savedIds = Arrays.copyOf(savedIds, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+
+		slot = slotCount++;
+		slotNodes[slot] = node;
+		savedIds[slot] = node.getId();
+		node.setId(slot);
+		return slot;
+	}
+
+	private void addEntry(int parent, int position, DiffNode node)
+	{
+		if (entryCount == entryNodes.length)
+		{
+			int capacity = entryCount * 2;
+			entryParents = Arrays.copyOf(entryParents, capacity);
+			entryPositions = Arrays.copyOf(entryPositions, capacity);
+			entryNodes = Arrays.copyOf(entryNodes, capacity);
+		}
+
+		entryParents[entryCount] = parent;
+		entryPositions[entryCount] = position;
+		entryNodes[entryCount] = node;
+		++entryCount;
+	}
+}
@@ -30,13 +30,30 @@ public class EditOpSplit
 
 	private final DiffNode otherHalf;
 
+	private final boolean applied;
+
 	// =========================================================================
 
 	public EditOpSplit(DiffNode node, int pos, DiffNode otherHalf)
+	{
+		this(node, pos, otherHalf, true);
+	}
+
+	/**
+	 * @param applied
+	 *            Whether the split has already been applied to T1, see
+	 *            isApplied().
+	 */
+	public EditOpSplit(
+			DiffNode node,
+			int pos,
+			DiffNode otherHalf,
+			boolean applied)
 	{
 		this.splitNode = node;
 		this.splitPos = pos;
 		this.otherHalf = otherHalf;
+		this.applied = applied;
 	}
 
 	// =========================================================================
@@ -64,6 +81,17 @@ public class EditOpSplit
 		return otherHalf;
 	}
 
+	/**
+	 * @return Whether the split has already been applied to T1 while diffing.
+	 *         Otherwise T1 was split virtually: the other half is not part of
+	 *         T1 yet and the split is replayed when the edit script is
+	 *         applied. The other half already holds its final text then.
+	 */
+	public boolean isApplied()
+	{
+		return applied;
+	}
+
 	// =========================================================================
 
 	@Override
@@ -73,9 +101,11 @@ public class EditOpSplit
 				"DiffNodeEditOpSplit:\n" +
 				"  splitNode:\n%s\n" +
 				"  splitPos = %d\n" +
-				"  otherHalf:\n%s\n",
+				"  otherHalf:\n%s\n" +
+				"  applied = %s\n",
 				StringTools.indent(splitNode.toString(), "    "),
 				splitPos,
-				StringTools.indent(otherHalf.toString(), "    "));
+				StringTools.indent(otherHalf.toString(), "    "),
+				applied);
 	}
 }
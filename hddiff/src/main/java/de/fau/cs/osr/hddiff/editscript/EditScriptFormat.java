@@ -0,0 +1,67 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+/**
+ * Layout of the binary edit script format written by EditScriptWriter.
+ * 
+ * <pre>
+ * script  := MAGIC version:varint op* END
+ * op      := SPLIT original:varint offset:varint
+ *          | TREE size:varint
+ *          | INSERT parent:ref position:varint node
+ *          | MOVE node:ref parent:ref position:varint
+ *          | UPDATE node:ref update
+ *          | DELETE node:ref
+ * </pre>
+ * 
+ * Split operations refer to the text node of the unsplit tree by its
+ * pre-order index and give the split position as offset into the text of
+ * that unsplit node. TREE precedes the first operation that is not a split
+ * and gives the number of nodes of the tree after all splits. A ref is the
+ * pre-order index of a node in that tree or, counting on from the size of the
+ * tree, the number of the insert operation that created the node. The node
+ * and update payloads are written by a NodeCodecInterface. All ints are
+ * unsigned LEB128 varints.
+ */
+final class EditScriptFormat
+{
+	static final int MAGIC = 0x48444553; // "HDES"
+
+	static final int VERSION = 1;
+
+	static final int END = 0;
+
+	static final int SPLIT = 1;
+
+	static final int TREE = 2;
+
+	static final int INSERT = 3;
+
+	static final int MOVE = 4;
+
+	static final int UPDATE = 5;
+
+	static final int DELETE = 6;
+
+	// =========================================================================
+
+	private EditScriptFormat()
+	{
+	}
+}
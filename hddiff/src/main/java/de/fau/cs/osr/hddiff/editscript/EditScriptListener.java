@@ -0,0 +1,35 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+/**
+ * Receives the operations of an edit script one by one while HDDiff computes
+ * it: splits during text node splitting, inserts, moves and updates during
+ * the top-down pass and deletes at the very end. The operations arrive in the
+ * order in which they appear in the edit script that HDDiff would otherwise
+ * return as a list.
+ * 
+ * <p>
+ * The operations refer to nodes of the trees being diffed. A listener must
+ * not change these trees (or apply the operations) before the diff is
+ * complete.
+ */
+public interface EditScriptListener
+{
+	void editOp(EditOp op);
+}
@@ -67,7 +67,7 @@ public class EditScriptManager
 					addMapping((EditOpUpdate) eo);
 					break;
 				case SPLIT:
-					// Splits were already applied during diffing.
+					// Applied during diffing or replayed by processSplits()
 					break;
 			}
 		}
@@ -113,12 +113,51 @@ public class EditScriptManager
 
 	// =========================================================================
 
+	/**
+	 * Applies the edit script without building the effect map first. Gives the
+	 * same result as {@code new EditScriptManager(editScript).apply()}, see
+	 * BulkEditScriptApplier.
+	 */
+	public static void applyBulk(List<EditOp> editScript)
+	{
+		new BulkEditScriptApplier(editScript.size()).apply(editScript);
+	}
+
 	public void apply()
 	{
+		processSplits();
 		processRemoves();
 		processNonRemoves();
 	}
 
+	private void processSplits()
+	{
+		for (EditOp op : editScript)
+		{
+			if ((op.getType() == EditOp.Operation.SPLIT) && !((EditOpSplit) op).isApplied())
+				replaySplit((EditOpSplit) op);
+		}
+	}
+
+	/**
+	 * Replays a split that the diff did not apply to T1. The other half
+	 * already holds its final text and is moved behind the split node. The
+	 * split node is cut at the split position unless it is already that
+	 * short: The original text node still holds its whole text while the
+	 * parts split off its copy were cut during the diff.
+	 */
+	static void replaySplit(EditOpSplit split)
+	{
+		DiffNode node = split.getSplitNode();
+		if (split.getSplitPos() < node.getTextContent().length())
+			node.splitText(split.getSplitPos()).removeFromParent();
+
+		DiffNode otherHalf = split.getOtherHalf();
+		if (otherHalf.getParent() != null)
+			otherHalf.removeFromParent();
+		node.getParent().appendOrInsert(otherHalf, node.getNextSibling());
+	}
+
 	private void processRemoves()
 	{
 		ListIterator<EditOp> i = editScript.listIterator(editScript.size());
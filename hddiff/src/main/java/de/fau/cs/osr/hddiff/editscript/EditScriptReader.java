@@ -0,0 +1,284 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.DiffNodeStack;
+import de.fau.cs.osr.hddiff.tree.NodeCodecInterface;
+import de.fau.cs.osr.hddiff.tree.NodeUpdate;
+
+/**
+ * Reads an edit script written by EditScriptWriter and binds it to the given
+ * T1, which must be equal to the T1 the script was computed for, before any
+ * text node splits.
+ * 
+ * <p>
+ * The splits are applied to T1 while reading, as HDDiff applies them while
+ * diffing. The other operations can then be applied with
+ * EditScriptManager. Operations read from the binary format do not refer to
+ * nodes of T2: EditOpInsert.getInsertedNodeRight(),
+ * EditOpMove.getMovedNodeRight() and EditOpUpdate.getUpdatedNodeRight() are
+ * null.
+ */
+public final class EditScriptReader
+{
+	private final DataInputStream in;
+
+	private final DiffNode root1;
+
+	private final NodeCodecInterface codec;
+
+	/** The nodes of T1 before the splits, in pre-order */
+	private ArrayList<DiffNode> originalNodes;
+
+	/** The parts of the split text nodes by pre-order index of the text node */
+	private HashMap<Integer, SplitParts> splitParts;
+
+	/** The nodes of T1 after the splits in pre-order, then the inserted nodes */
+	private ArrayList<DiffNode> refs;
+
+	// =========================================================================
+
+	public EditScriptReader(
+			InputStream in,
+			DiffNode root1,
+			NodeCodecInterface codec) throws IOException
+	{
+		this.in = new DataInputStream(in);
+		this.root1 = root1;
+		this.codec = codec;
+
+		if (this.in.readInt() != EditScriptFormat.MAGIC)
+			throw new IOException("Not an edit script");
+		int version = readVarInt(this.in);
+		if (version != EditScriptFormat.VERSION)
+			throw new IOException("Unsupported edit script version: " + version);
+	}
+
+	// =========================================================================
+
+	public static List<EditOp> read(
+			InputStream in,
+			DiffNode root1,
+			NodeCodecInterface codec) throws IOException
+	{
+		EditScriptReader reader = new EditScriptReader(in, root1, codec);
+
+		LinkedList<EditOp> editScript = new LinkedList<>();
+		for (EditOp op = reader.read(); op != null; op = reader.read())
+			editScript.add(op);
+		return editScript;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The next operation or null at the end of the script.
+	 */
+	public EditOp read() throws IOException
+	{
+		while (true)
+		{
+			int tag = in.readUnsignedByte();
+			switch (tag)
+			{
+				case EditScriptFormat.END:
+					return null;
+				case EditScriptFormat.SPLIT:
+					return readSplit();
+				case EditScriptFormat.TREE:
+					readTree();
+					break;
+				case EditScriptFormat.INSERT:
+					return readInsert();
+				case EditScriptFormat.MOVE:
+					return readMove();
+				case EditScriptFormat.UPDATE:
+					return readUpdate();
+				case EditScriptFormat.DELETE:
+					return new EditOpDelete(ref());
+				default:
+					throw new IOException("Unknown operation: " + tag);
+			}
+		}
+	}
+
+	// =========================================================================
+
+	private EditOp readSplit() throws IOException
+	{
+		if (refs != null)
+			throw new IOException("Split after other operations");
+
+		if (originalNodes == null)
+		{
+			originalNodes = numberNodes();
+			splitParts = new HashMap<>();
+		}
+
+		int index = readVarInt(in);
+		int offset = readVarInt(in);
+		if (index >= originalNodes.size())
+			throw new IOException("Split of a node that does not exist: " + index);
+
+		SplitParts parts = splitParts.get(index);
+		if (parts == null)
+			splitParts.put(index, parts = new SplitParts(originalNodes.get(index)));
+
+		int i = parts.partAt(offset);
+		DiffNode node = parts.nodes.get(i);
+		int pos = offset - parts.offsets.get(i);
+		if (pos <= 0)
+			throw new IOException("Split at the start of a text node");
+
+		DiffNode otherHalf = node.splitText(pos);
+		parts.nodes.add(i + 1, otherHalf);
+		parts.offsets.add(i + 1, offset);
+
+		return new EditOpSplit(node, pos, otherHalf);
+	}
+
+	private void readTree() throws IOException
+	{
+		int treeSize = readVarInt(in);
+		refs = numberNodes();
+		if (refs.size() != treeSize)
+			throw new IOException("The tree does not match the edit script");
+	}
+
+	private EditOp readInsert() throws IOException
+	{
+		DiffNode parent = ref();
+		int position = readVarInt(in);
+		DiffNode node = codec.readNode(root1, in);
+		refs.add(node);
+		return new EditOpInsert(parent, node, null, position);
+	}
+
+	private EditOp readMove() throws IOException
+	{
+		DiffNode node = ref();
+		DiffNode parent = ref();
+		int position = readVarInt(in);
+		return new EditOpMove(node, parent, null, position);
+	}
+
+	private EditOp readUpdate() throws IOException
+	{
+		DiffNode node = ref();
+		NodeUpdate update = codec.readUpdate(node, in);
+		return new EditOpUpdate(node, update, null);
+	}
+
+	private DiffNode ref() throws IOException
+	{
+		if (refs == null)
+			throw new IOException("Node reference before the tree size");
+
+		int ref = readVarInt(in);
+		if (ref >= refs.size())
+			throw new IOException("Reference to a node that does not exist: " + ref);
+		return refs.get(ref);
+	}
+
+	private ArrayList<DiffNode> numberNodes()
+	{
+		ArrayList<DiffNode> nodes = new ArrayList<>();
+
+		DiffNodeStack stack = new DiffNodeStack();
+		DiffNode n = root1;
+		while (n != null)
+		{
+			nodes.add(n);
+
+			DiffNode first = stack.descend(n);
+			n = (first != null) ? first : stack.next();
+		}
+
+		return nodes;
+	}
+
+	// =========================================================================
+
+	public static int readVarInt(DataInput in) throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Reads a string written by EditScriptWriter.writeString().
+	 */
+	public static String readString(DataInput in) throws IOException
+	{
+		int length = readVarInt(in);
+		if (length == 0)
+			return null;
+
+		byte[] bytes = new byte[length - 1];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// =========================================================================
+
+	/**
+	 * The parts a text node has been split into so far, in document order.
+	 */
+	private static final class SplitParts
+	{
+		public final ArrayList<DiffNode> nodes = new ArrayList<>();
+
+		/** Offset of each part into the text of the unsplit node */
+		public final ArrayList<Integer> offsets = new ArrayList<>();
+
+		public SplitParts(DiffNode node)
+		{
+			nodes.add(node);
+			offsets.add(0);
+		}
+
+		/**
+		 * @return The index of the part that contains the given offset.
+		 */
+		public int partAt(int offset)
+		{
+			int i = offsets.size() - 1;
+			while ((i > 0) && (offsets.get(i) > offset))
+				--i;
+			return i;
+		}
+	}
+}
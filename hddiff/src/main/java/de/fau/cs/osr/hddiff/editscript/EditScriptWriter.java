@@ -0,0 +1,300 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.DiffNodeStack;
+import de.fau.cs.osr.hddiff.tree.NodeCodecInterface;
+
+/**
+ * Writes an edit script in the binary format described in EditScriptFormat.
+ * 
+ * <p>
+ * Operations refer to the nodes of T1 by position. The operations have to be
+ * written before the edit script is applied, either all at once after the
+ * diff or one by one while HDDiff computes them (see EditScriptListener).
+ * For the script to be read against a freshly built T1, the diff must have
+ * recorded its text node splits (HDDiffOptions.setRecordSplitOps()). Splits
+ * that the diff did not apply to T1 (EditOpSplit.isApplied()) are always
+ * recorded; T1 is numbered as if they had been applied.
+ */
+public final class EditScriptWriter
+{
+	private final DataOutputStream out;
+
+	private final DiffNode root1;
+
+	private final NodeCodecInterface codec;
+
+	/** Text nodes created by splits and where their text started originally */
+	private final IdentityHashMap<DiffNode, SplitOrigin> splitNodes = new IdentityHashMap<>();
+
+	/** The part behind each node for splits that were not applied to T1 */
+	private final IdentityHashMap<DiffNode, DiffNode> nextParts = new IdentityHashMap<>();
+
+	/** Pre-order index of the nodes of T1 before the splits */
+	private IdentityHashMap<DiffNode, Integer> originalIndexes;
+
+	/** Pre-order index of the nodes of T1, then the inserted nodes */
+	private IdentityHashMap<DiffNode, Integer> refs;
+
+	// =========================================================================
+
+	public EditScriptWriter(
+			OutputStream out,
+			DiffNode root1,
+			NodeCodecInterface codec) throws IOException
+	{
+		this.out = new DataOutputStream(out);
+		this.root1 = root1;
+		this.codec = codec;
+
+		this.out.writeInt(EditScriptFormat.MAGIC);
+		writeVarInt(this.out, EditScriptFormat.VERSION);
+	}
+
+	// =========================================================================
+
+	public static void write(
+			List<EditOp> editScript,
+			DiffNode root1,
+			NodeCodecInterface codec,
+			OutputStream out) throws IOException
+	{
+		EditScriptWriter writer = new EditScriptWriter(out, root1, codec);
+
+		/**
+		 * T1 already contains all nodes created by splits. They must be known
+		 * before the first split is written so that they can be left out when
+		 * numbering the nodes of the unsplit tree.
+		 */
+		for (EditOp op : editScript)
+		{
+			if (op.getType() == EditOp.Operation.SPLIT)
+				writer.splitNodes.put(((EditOpSplit) op).getOtherHalf(), null);
+		}
+
+		for (EditOp op : editScript)
+			writer.write(op);
+		writer.finish();
+	}
+
+	// =========================================================================
+
+	public void write(EditOp op) throws IOException
+	{
+		switch (op.getType())
+		{
+			case SPLIT:
+				writeSplit((EditOpSplit) op);
+				break;
+			case INSERT:
+				writeInsert((EditOpInsert) op);
+				break;
+			case MOVE:
+				writeMove((EditOpMove) op);
+				break;
+			case UPDATE:
+				writeUpdate((EditOpUpdate) op);
+				break;
+			case DELETE:
+				writeDelete((EditOpDelete) op);
+				break;
+		}
+	}
+
+	/**
+	 * Terminates the script and flushes the stream. Does not close it.
+	 */
+	public void finish() throws IOException
+	{
+		out.writeByte(EditScriptFormat.END);
+		out.flush();
+	}
+
+	// =========================================================================
+
+	private void writeSplit(EditOpSplit op) throws IOException
+	{
+		if (refs != null)
+			throw new IllegalStateException("Split after other operations");
+
+		DiffNode otherHalf = op.getOtherHalf();
+		splitNodes.put(otherHalf, null);
+		if (originalIndexes == null)
+			originalIndexes = numberNodes(true);
+
+		SplitOrigin origin = splitNodes.get(op.getSplitNode());
+		if (origin == null)
+			origin = new SplitOrigin(originalIndexes.get(op.getSplitNode()), 0);
+
+		int offset = origin.offset + op.getSplitPos();
+		splitNodes.put(otherHalf, new SplitOrigin(origin.index, offset));
+
+		if (!op.isApplied())
+		{
+			DiffNode next = nextParts.put(op.getSplitNode(), otherHalf);
+			if (next != null)
+				nextParts.put(otherHalf, next);
+		}
+
+		out.writeByte(EditScriptFormat.SPLIT);
+		writeVarInt(out, origin.index);
+		writeVarInt(out, offset);
+	}
+
+	private void writeInsert(EditOpInsert op) throws IOException
+	{
+		int parent = ref(op.getParent());
+		refs.put(op.getInsertedNode(), refs.size());
+
+		out.writeByte(EditScriptFormat.INSERT);
+		writeVarInt(out, parent);
+		writeVarInt(out, op.getFinalPosition());
+		codec.writeNode(op.getInsertedNode(), out);
+	}
+
+	private void writeMove(EditOpMove op) throws IOException
+	{
+		int node = ref(op.getMovedNode());
+		int parent = ref(op.getToParent());
+
+		out.writeByte(EditScriptFormat.MOVE);
+		writeVarInt(out, node);
+		writeVarInt(out, parent);
+		writeVarInt(out, op.getFinalPosition());
+	}
+
+	private void writeUpdate(EditOpUpdate op) throws IOException
+	{
+		int node = ref(op.getUpdatedNode());
+
+		out.writeByte(EditScriptFormat.UPDATE);
+		writeVarInt(out, node);
+		codec.writeUpdate(op.getUpdatedNode(), op.getUpdate(), out);
+	}
+
+	private void writeDelete(EditOpDelete op) throws IOException
+	{
+		int node = ref(op.getDeletedNode());
+
+		out.writeByte(EditScriptFormat.DELETE);
+		writeVarInt(out, node);
+	}
+
+	// =========================================================================
+
+	private int ref(DiffNode node) throws IOException
+	{
+		if (refs == null)
+		{
+			refs = numberNodes(false);
+			out.writeByte(EditScriptFormat.TREE);
+			writeVarInt(out, refs.size());
+		}
+
+		Integer ref = refs.get(node);
+		if (ref == null)
+			throw new IllegalArgumentException("Node is neither part of T1 nor inserted: " + node);
+		return ref;
+	}
+
+	/**
+	 * @param unsplit
+	 *            Whether the nodes created by splits should be left out.
+	 *            Otherwise the parts of splits that were not applied to T1
+	 *            are numbered behind the node they were split off.
+	 */
+	private IdentityHashMap<DiffNode, Integer> numberNodes(boolean unsplit)
+	{
+		IdentityHashMap<DiffNode, Integer> indexes = new IdentityHashMap<>();
+
+		DiffNodeStack stack = new DiffNodeStack();
+		DiffNode n = root1;
+		while (n != null)
+		{
+			if (!unsplit)
+			{
+				indexes.put(n, indexes.size());
+				for (DiffNode part = nextParts.get(n); part != null; part = nextParts.get(part))
+					indexes.put(part, indexes.size());
+			}
+			else if (!splitNodes.containsKey(n))
+				indexes.put(n, indexes.size());
+
+			DiffNode first = stack.descend(n);
+			n = (first != null) ? first : stack.next();
+		}
+
+		return indexes;
+	}
+
+	// =========================================================================
+
+	public static void writeVarInt(DataOutput out, int value) throws IOException
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Writes the length of the UTF-8 encoding plus one, then the encoding. A
+	 * length of 0 denotes null.
+	 */
+	public static void writeString(DataOutput out, String value) throws IOException
+	{
+		if (value == null)
+		{
+			writeVarInt(out, 0);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	// =========================================================================
+
+	private static final class SplitOrigin
+	{
+		/** Pre-order index of the unsplit text node */
+		public final int index;
+
+		/** Offset into the text of the unsplit text node */
+		public final int offset;
+
+		public SplitOrigin(int index, int offset)
+		{
+			this.index = index;
+			this.offset = offset;
+		}
+	}
+}
@@ -34,127 +34,89 @@ public abstract class DiffNode
 	private DiffNode lastChild;
 
 	// =========================================================================
+	// Child index
+
+	/**
+	 * Position of this node among its siblings. Only valid if it lies within
+	 * the valid prefix of the parent's child index and the parent's child
+	 * index holds this node at that position.
+	 */
+	private int index;
+
+	/**
+	 * The children by position, built on demand by indexOf() and
+	 * getRefChild(). Only the first childIndexSize entries are valid.
+	 */
+	private DiffNode[] childIndex;
+
+	/**
+	 * Length of the valid prefix of the child index. Structural changes cut the
+	 * prefix back to the position of the change; lookups extend it again up
+	 * to the position they need. Changes that happen in increasing order of
+	 * position, as when applying an edit script, therefore cost amortized
+	 * constant time.
+	 */
+	private int childIndexSize;
 
-	private DiffNode partner;
-
-	/** common in 0..weight. */
-	private int common;
-
-	private int weight;
-
-	private int subtreeHash;
-
-	private boolean subtreeMatched;
+	// =========================================================================
 
-	/** Debug only. */
-	private boolean isSplit;
+	/**
+	 * Number of the node within its tree. Assigned in pre-order during
+	 * precomputation, nodes created while diffing get the following numbers.
+	 * Weights, subtree hashes and the other matching state are kept by HDDiff
+	 * in arrays indexed by this number.
+	 */
+	private int id = -1;
 
-	/** Debug only. */
-	private String color;
+	private DiffNode partner;
 
 	// =========================================================================
 
-	public final void set(DiffNode partner, int common)
+	public final void set(DiffNode partner)
 	{
 		if (this.partner != null)
 			throw new RuntimeException("Partner already set!");
-		setOverride(partner, common);
+		setOverride(partner);
 	}
 
-	public final void setOverride(DiffNode partner, int common)
+	public final void setOverride(DiffNode partner)
 	{
 		if (!isSameNodeType(partner))
 			throw new AssertionError("!isSameNodeType(partner): "
 					+ String.valueOf(this.getType()) + " vs. " + String.valueOf(partner.getType()));
 		this.partner = partner;
-		this.common = common;
 	}
 
 	public void unmapDeep()
 	{
-		if (this.partner != null)
-			this.partner.resetMatch();
-		resetMatch();
-		for (DiffNode n = getFirstChild(); n != null; n = n.getNextSibling())
-			n.unmapDeep();
-	}
+		DiffNodeStack stack = new DiffNodeStack();
+		DiffNode n = this;
+		while (n != null)
+		{
+			if (n.partner != null)
+				n.partner.partner = null;
+			n.partner = null;
 
-	private void resetMatch()
-	{
-		this.partner = null;
-		this.weight = 0;
-		this.common = 0;
-		this.subtreeMatched = false;
-		this.isSplit = false;
+			DiffNode first = stack.descend(n);
+			n = (first != null) ? first : stack.next();
+		}
 	}
 
 	// =========================================================================
 
-	public DiffNode getPartner()
-	{
-		return partner;
-	}
-
-	public int getCommon()
-	{
-		return common;
-	}
-
-	public int getWeight()
-	{
-		return weight;
-	}
-
-	public void setWeight(int weight)
-	{
-		this.weight = weight;
-	}
-
-	public int addWeight(int weight)
-	{
-		this.weight += weight;
-		return this.weight;
-	}
-
-	public int getSubtreeHash()
-	{
-		return subtreeHash;
-	}
-
-	public int updateSubtreeHash(int hash)
-	{
-		subtreeHash = (17 * subtreeHash) ^ hash;
-		return subtreeHash;
-	}
-
-	public boolean isSubtreeMatched()
+	public int getId()
 	{
-		return subtreeMatched;
+		return id;
 	}
 
-	public void setSubtreeMatched(boolean subtreeMatched)
+	public void setId(int id)
 	{
-		this.subtreeMatched = subtreeMatched;
+		this.id = id;
 	}
 
-	public boolean isSplit()
-	{
-		return isSplit;
-	}
-
-	public void setSplit(boolean isSplit)
-	{
-		this.isSplit = isSplit;
-	}
-
-	public String getColor()
-	{
-		return color;
-	}
-
-	public void setColor(String color)
+	public DiffNode getPartner()
 	{
-		this.color = color;
+		return partner;
 	}
 
 	// =========================================================================
@@ -184,17 +146,20 @@ public abstract class DiffNode
 		return nextSibling;
 	}
 
+	/**
+	 * Amortized constant time, see childIndexSize. Not safe for concurrent
+	 * use since it updates the child index of the parent.
+	 */
 	public final int indexOf()
 	{
-		int index = 0;
-		DiffNode tmp = this;
-		while (true)
-		{
-			tmp = tmp.getPrevSibling();
-			if (tmp == null)
-				break;
-			++index;
-		}
+		if (parent == null)
+			return 0;
+		if (parent.isIndexed(this))
+			return index;
+
+		parent.extendChildIndex(this, Integer.MAX_VALUE);
+		if (!parent.isIndexed(this))
+			throw new AssertionError("Child not found in parent");
 		return index;
 	}
 
@@ -243,6 +208,8 @@ public abstract class DiffNode
 		if ((newChild.parent != null) || (newChild.prevSibling != null) || (newChild.nextSibling != null))
 			throw new IllegalArgumentException("Cannot append linked node");
 
+		invalidateChildIndex(refChild);
+
 		// Link node
 		newChild.parent = this;
 		newChild.prevSibling = refChild.getPrevSibling();
@@ -260,6 +227,9 @@ public abstract class DiffNode
 
 	private void removeFromParentDiffOnly()
 	{
+		if (parent != null)
+			parent.invalidateChildIndex(this);
+
 		// Remove from sibling chain
 		if (prevSibling != null)
 			prevSibling.nextSibling = nextSibling;
@@ -281,16 +251,71 @@ public abstract class DiffNode
 		parent = null;
 	}
 
+	/**
+	 * @return The child at the given position or null if there are not that
+	 *         many children. Amortized constant time, see indexOf().
+	 */
 	public DiffNode getRefChild(int newIndex)
 	{
-		int i = newIndex;
-		DiffNode refChild = getFirstChild();
-		while ((refChild != null) && (i > 0))
+		if (newIndex < 0)
+			newIndex = 0;
+		if (newIndex < childIndexSize)
+			return childIndex[newIndex];
+
+		extendChildIndex(null, newIndex);
+		return (newIndex < childIndexSize) ? childIndex[newIndex] : null;
+	}
+
+	// =========================================================================
+
+	private boolean isIndexed(DiffNode child)
+	{
+		int i = child.index;
+		return (i < childIndexSize) && (childIndex[i] == child);
+	}
+
+	/**
+	 * Extends the valid prefix of the child index until it contains the given
+	 * child or the given position, whichever comes first, or until it
+	 * contains all children.
+	 */
+	private void extendChildIndex(DiffNode child, int position)
+	{
+		int size = childIndexSize;
+		DiffNode cursor = (size == 0) ? firstChild : childIndex[size - 1].nextSibling;
+		while (cursor != null)
 		{
-			refChild = refChild.getNextSibling();
-			--i;
+			if ((childIndex == null) || (size == childIndex.length))
+				growChildIndex(size + 1);
+
+			childIndex[size] = cursor;
+			cursor.index = size;
+			++size;
+
+			if ((cursor == child) || (size > position))
+				break;
+			cursor = cursor.nextSibling;
 		}
-		return refChild;
+		childIndexSize = size;
+	}
+
+	private void growChildIndex(int minCapacity)
+	{
+		int capacity = (childIndex == null) ? 4 : childIndex.length << 1;
+		DiffNode[] grown = new DiffNode[Math.max(capacity, minCapacity)];
+		if (childIndex != null)
+			System.arraycopy(childIndex, 0, grown, 0, childIndex.length);
+		childIndex = grown;
+	}
+
+	/**
+	 * Cuts the valid prefix of the child index in front of the given child. If
+	 * the child lies behind the valid prefix, the prefix stays valid.
+	 */
+	private void invalidateChildIndex(DiffNode child)
+	{
+		if (isIndexed(child))
+			childIndexSize = child.index;
 	}
 
 	// =========================================================================
@@ -306,20 +331,20 @@ public abstract class DiffNode
 				"DiffNode:\n" +
 				"  WOM node: \"%s\"\n" +
 				"  Partner WOM node: %s\n" +
-				"  Common: %d\n" +
-				"  Weight: %d\n" +
-				"  Subtree hash: %d\n",
+				"  Id: %d\n",
 				nodeStr,
 				(partnerStr == null ? "" : "\"" + partnerStr + "\""),
-				common,
-				weight,
-				subtreeHash);
+				id);
 	}
 
 	// =========================================================================
 
 	public abstract Object getType();
 
+	/**
+	 * Must agree with the equality of the objects returned by getType(). HDDiff
+	 * compares node types by their type objects when computing LCSs.
+	 */
 	public abstract boolean isSameNodeType(DiffNode o);
 
 	public abstract String getLabel();
@@ -0,0 +1,224 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+import java.util.Arrays;
+
+/**
+ * Explicit stack for walking one tree or two trees in lockstep without
+ * recursion.
+ * 
+ * <p>
+ * A frame holds up to two nodes and an int. Walks usually keep a cursor per
+ * tree level in the frame: the child that is currently visited or the child
+ * that has to be visited next. The stack grows on demand and can be reused
+ * for many walks, its arrays are not shrunk when frames are popped.
+ */
+public final class DiffNodeStack
+{
+	private static final int MIN_CAPACITY = 16;
+
+	// =========================================================================
+
+	private DiffNode[] nodes1;
+
+	private DiffNode[] nodes2;
+
+	private int[] ints;
+
+	private int size;
+
+	// =========================================================================
+
+	public DiffNodeStack()
+	{
+		this(MIN_CAPACITY);
+	}
+
+	public DiffNodeStack(int initialCapacity)
+	{
+		int capacity = Math.max(initialCapacity, MIN_CAPACITY);
+		nodes1 = new DiffNode[capacity];
+		nodes2 = new DiffNode[capacity];
+		ints = new int[capacity];
+	}
+
+	// =========================================================================
+
+	public void push(DiffNode n1)
+	{
+		push(n1, null, 0);
+	}
+
+	public void push(DiffNode n1, DiffNode n2)
+	{
+		push(n1, n2, 0);
+	}
+
+	public void push(DiffNode n1, DiffNode n2, int i)
+	{
+		if (size == ints.length)
+			grow();
+		nodes1[size] = n1;
+		nodes2[size] = n2;
+		ints[size] = i;
+		++size;
+	}
+
+	public void pop()
+	{
+		--size;
+		nodes1[size] = null;
+		nodes2[size] = null;
+	}
+
+	/**
+	 * Pops all frames. Must be called before reusing a stack whose last walk
+	 * was aborted.
+	 */
+	public void clear()
+	{
+		Arrays.fill(nodes1, 0, size, null);
+		Arrays.fill(nodes2, 0, size, null);
+		size = 0;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	// =========================================================================
+	// Access to the top frame
+
+	public DiffNode peek1()
+	{
+		return nodes1[size - 1];
+	}
+
+	public DiffNode peek2()
+	{
+		return nodes2[size - 1];
+	}
+
+	public int peekInt()
+	{
+		return ints[size - 1];
+	}
+
+	public void set1(DiffNode n1)
+	{
+		nodes1[size - 1] = n1;
+	}
+
+	public void set2(DiffNode n2)
+	{
+		nodes2[size - 1] = n2;
+	}
+
+	public void setInt(int i)
+	{
+		ints[size - 1] = i;
+	}
+
+	// =========================================================================
+	// Pre-order walks over one tree
+
+	/**
+	 * Descends into the children of the given node by pushing its first child
+	 * as the cursor of a new level.
+	 * 
+	 * @return The first child of the given node or null if it has no
+	 *         children.
+	 */
+	public DiffNode descend(DiffNode node)
+	{
+		DiffNode first = node.getFirstChild();
+		if (first != null)
+			push(first);
+		return first;
+	}
+
+	/**
+	 * Advances the cursor of the top level to its next sibling. Levels whose
+	 * cursors have no more siblings are popped.
+	 * 
+	 * @return The next node in pre-order or null if the walk is done.
+	 */
+	public DiffNode next()
+	{
+		while (size > 0)
+		{
+			DiffNode next = peek1().getNextSibling();
+			if (next != null)
+			{
+				set1(next);
+				return next;
+			}
+			pop();
+		}
+		return null;
+	}
+
+	// =========================================================================
+	// Pre-order walks over two trees in lockstep
+
+	/**
+	 * Advances both cursors of the top level to their next siblings. Levels
+	 * whose cursors have no more siblings are popped.
+	 * 
+	 * @return False if only one of the two cursors had a next sibling, that is,
+	 *         if the two trees differ in structure. The walk is done if true is
+	 *         returned and the stack is empty.
+	 */
+	public boolean nextPair()
+	{
+		while (size > 0)
+		{
+			DiffNode next1 = peek1().getNextSibling();
+			DiffNode next2 = peek2().getNextSibling();
+			if ((next1 != null) && (next2 != null))
+			{
+				set1(next1);
+				set2(next2);
+				return true;
+			}
+
+			if (next1 != next2)
+				return false;
+
+			pop();
+		}
+		return true;
+	}
+
+	// =========================================================================
+
+	private void grow()
+	{
+		int capacity = ints.length << 1;
+		nodes1 = Arrays.copyOf(nodes1, capacity);
+		nodes2 = Arrays.copyOf(nodes2, capacity);
+		ints = Arrays.copyOf(ints, capacity);
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+import java.util.Arrays;
+
+/**
+ * Array-backed snapshot of the structure of a DiffNode tree.
+ * 
+ * <p>
+ * Nodes are numbered in pre-order, a subtree therefore occupies the
+ * contiguous range {@code [i, i + getSubtreeSize(i))}. For every node the
+ * tree stores the index of its parent, the size of its subtree, the id of its
+ * type and the offset of its text in a character buffer shared by all text
+ * leaves. Children and siblings are derived from these arrays, walking the
+ * tree does not touch the DiffNode objects.
+ * 
+ * <p>
+ * The flat tree does not follow changes of the DiffNode tree it was built
+ * from.
+ */
+public final class FlatTree
+{
+	private static final int MIN_CAPACITY = 16;
+
+	// =========================================================================
+
+	private DiffNode[] nodes;
+
+	private int[] parents;
+
+	private int[] subtreeSizes;
+
+	private int[] typeIds;
+
+	private int size;
+
+	/** Summed length of the text content of all text leaves. */
+	private int textLength;
+
+	// =========================================================================
+
+	private FlatTree(int initialCapacity)
+	{
+		int capacity = Math.max(initialCapacity, MIN_CAPACITY);
+		nodes = new DiffNode[capacity];
+		parents = new int[capacity];
+		subtreeSizes = new int[capacity];
+		typeIds = new int[capacity];
+	}
+
+	/**
+	 * Builds the flat representation of the tree rooted at the given node.
+	 * 
+	 * @param types
+	 *            Assigns the type ids. Trees whose type ids are compared must
+	 *            share the dictionary.
+	 */
+	public static FlatTree build(
+			DiffNode root,
+			NodeTypeDictionary types,
+			int initialCapacity)
+	{
+		FlatTree tree = new FlatTree(initialCapacity);
+		tree.addPreOrder(root, types);
+		tree.computeSubtreeSizes();
+		return tree;
+	}
+
+	private void addPreOrder(DiffNode root, NodeTypeDictionary types)
+	{
+		DiffNode node = root;
+		int parent = -1;
+		while (true)
+		{
+			int i = add(node, parent, types);
+
+			DiffNode child = node.getFirstChild();
+			if (child != null)
+			{
+				parent = i;
+				node = child;
+				continue;
+			}
+
+			while ((node != root) && (node.getNextSibling() == null))
+			{
+				node = node.getParent();
+				parent = parents[parent];
+			}
+
+			if (node == root)
+				break;
+
+			node = node.getNextSibling();
+		}
+	}
+
+	private int add(DiffNode node, int parent, NodeTypeDictionary types)
+	{
+		if (size == nodes.length)
+			grow();
+
+		int i = size++;
+		nodes[i] = node;
+		parents[i] = parent;
+		typeIds[i] = types.idOf(node.getType());
+
+		if (node.isTextLeaf())
+			textLength += node.getTextContent().length();
+		return i;
+	}
+
+	private void computeSubtreeSizes()
+	{
+		Arrays.fill(subtreeSizes, 0, size, 1);
+		for (int i = size - 1; i > 0; --i)
+			subtreeSizes[parents[i]] += subtreeSizes[i];
+	}
+
+	private void grow()
+	{
+		int capacity = nodes.length * 2;
+		nodes = Arrays.copyOf(nodes, capacity);
+		parents = Arrays.copyOf(parents, capacity);
+		subtreeSizes = Arrays.copyOf(subtreeSizes, capacity);
+		typeIds = Arrays.copyOf(typeIds, capacity);
+	}
+
+	// =========================================================================
+
+	public int size()
+	{
+		return size;
+	}
+
+	public DiffNode getNode(int i)
+	{
+		return nodes[i];
+	}
+
+	/**
+	 * @return The index of the parent or -1 for the root.
+	 */
+	public int getParent(int i)
+	{
+		return parents[i];
+	}
+
+	/**
+	 * @return The index of the first child or -1 for a leaf.
+	 */
+	public int getFirstChild(int i)
+	{
+		return (subtreeSizes[i] > 1) ? i + 1 : -1;
+	}
+
+	/**
+	 * @return The index of the next sibling or -1 for the last child.
+	 */
+	public int getNextSibling(int i)
+	{
+		int parent = parents[i];
+		if (parent < 0)
+			return -1;
+		int next = i + subtreeSizes[i];
+		return (next < parent + subtreeSizes[parent]) ? next : -1;
+	}
+
+	public int getSubtreeSize(int i)
+	{
+		return subtreeSizes[i];
+	}
+
+	public boolean isLeaf(int i)
+	{
+		return subtreeSizes[i] == 1;
+	}
+
+	public int getTypeId(int i)
+	{
+		return typeIds[i];
+	}
+
+	/**
+	 * @return The summed length of the text content of all text leaves.
+	 */
+	public int getTotalTextLength()
+	{
+		return textLength;
+	}
+
+	/**
+	 * @return The nodes in pre-order. Only the first size() entries are valid.
+	 */
+	public DiffNode[] getNodes()
+	{
+		return nodes;
+	}
+}
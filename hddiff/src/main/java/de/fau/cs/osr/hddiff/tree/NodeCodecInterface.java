@@ -0,0 +1,51 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the parts of an edit script that depend on the kind of
+ * tree: the nodes created by inserts and the node updates. Used by
+ * EditScriptWriter and EditScriptReader; EditScriptWriter.writeVarInt() and
+ * writeString() and their counterparts in EditScriptReader can be used to
+ * encode the payload.
+ */
+public interface NodeCodecInterface
+{
+	/**
+	 * Writes what DiffNode.createSame() would copy from the given node.
+	 */
+	void writeNode(DiffNode node, DataOutput out) throws IOException;
+	
+	/**
+	 * Reads a node written by writeNode() and creates it like
+	 * DiffNode.createSame() would.
+	 */
+	DiffNode readNode(DiffNode forRoot, DataInput in) throws IOException;
+	
+	void writeUpdate(DiffNode node, NodeUpdate update, DataOutput out) throws IOException;
+	
+	/**
+	 * @param node
+	 *            The node the update will be applied to.
+	 */
+	NodeUpdate readUpdate(DiffNode node, DataInput in) throws IOException;
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+/**
+ * Node metrics that can compute 64 bit node hashes. Used if HDDiff is
+ * configured to compute 64 bit subtree hashes. Metrics that only implement
+ * NodeMetricsInterface get their 32 bit node hashes spread to 64 bit instead.
+ * This still yields strong subtree hashes but two nodes whose 32 bit hashes
+ * collide will still collide.
+ */
+public interface NodeMetrics64Interface
+		extends
+			NodeMetricsInterface
+{
+	/**
+	 * Computes the 64 bit hash for a single node (no recursion!).
+	 */
+	long computeHash64(DiffNode node);
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+/**
+ * Read access to the matching state HDDiff keeps for the nodes of a tree
+ * while diffing. Apart from the partners (see
+ * HDDiffOptions.setReadOnlyTrees()) the state is not stored in the nodes
+ * themselves.
+ */
+public interface NodeStateInterface
+{
+	/**
+	 * @return The partner of the node in the other tree or null if the node
+	 *         is not matched.
+	 */
+	DiffNode getPartner(DiffNode node);
+	
+	int getWeight(DiffNode node);
+	
+	/**
+	 * @return The weight the node has in common with its partner.
+	 */
+	int getCommon(DiffNode node);
+	
+	long getSubtreeHash(DiffNode node);
+	
+	boolean isSubtreeMatched(DiffNode node);
+	
+	boolean isSplit(DiffNode node);
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assigns int ids to the node types returned by DiffNode.getType(). Two
+ * nodes have the same type id if and only if their types are equal.
+ * 
+ * <p>
+ * The dictionary can be shared by trees that are built concurrently. Ids are
+ * unique but not necessarily dense.
+ */
+public final class NodeTypeDictionary
+{
+	private final ConcurrentHashMap<Object, Integer> ids = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	// =========================================================================
+
+	public int idOf(Object type)
+	{
+		Integer id = ids.get(type);
+		if (id == null)
+		{
+			Integer newId = nextId.getAndIncrement();
+			id = ids.putIfAbsent(type, newId);
+			if (id == null)
+				id = newId;
+		}
+		return id;
+	}
+
+	public int size()
+	{
+		return ids.size();
+	}
+}
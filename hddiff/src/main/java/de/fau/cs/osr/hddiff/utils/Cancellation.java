@@ -0,0 +1,44 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation of long running computations. A computation is
+ * cancelled by interrupting the thread it runs on; it stops at its next check
+ * with a CancellationException. The interrupt flag of the thread stays set.
+ */
+public final class Cancellation
+{
+	private Cancellation()
+	{
+	}
+
+	// =========================================================================
+
+	/**
+	 * @throws CancellationException
+	 *             If the current thread has been interrupted.
+	 */
+	public static void checkInterrupted()
+	{
+		if (Thread.currentThread().isInterrupted())
+			throw new CancellationException("Interrupted");
+	}
+}
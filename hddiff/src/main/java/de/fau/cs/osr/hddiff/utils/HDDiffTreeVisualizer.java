@@ -26,11 +26,13 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 
 import de.fau.cs.osr.hddiff.HDDiffOptions;
 import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeStateInterface;
 
 public class HDDiffTreeVisualizer
 {
@@ -44,35 +46,46 @@ public class HDDiffTreeVisualizer
 	
 	private int nextColor = 0;
 	
+	/** Colors of matched nodes, a partner gets the same color. */
+	private final IdentityHashMap<DiffNode, String> nodeColors = new IdentityHashMap<>();
+	
 	// =========================================================================
 	
 	public static void drawGraph(
 			File output,
 			DiffNode root1,
-			DiffNode root2)
+			NodeStateInterface state1,
+			DiffNode root2,
+			NodeStateInterface state2)
 	{
-		new HDDiffTreeVisualizer().drawDotGraph(output, root1, root2);
+		new HDDiffTreeVisualizer().drawDotGraph(output, root1, state1, root2, state2);
 	}
 	
 	public static void drawGraph(
 			File bin,
 			File output,
 			DiffNode root1,
-			DiffNode root2)
+			NodeStateInterface state1,
+			DiffNode root2,
+			NodeStateInterface state2)
 	{
-		new HDDiffTreeVisualizer(bin).drawDotGraph(output, root1, root2);
+		new HDDiffTreeVisualizer(bin).drawDotGraph(output, root1, state1, root2, state2);
 	}
 	
 	public static void drawGraph(
 			HDDiffOptions options,
 			DiffNode root1,
-			DiffNode root2)
+			NodeStateInterface state1,
+			DiffNode root2,
+			NodeStateInterface state2)
 	{
 		drawGraph(
 				options.getGraphvizDotBin(),
 				new File(options.getDumpTreesFileTitle()),
 				root1,
-				root2);
+				state1,
+				root2,
+				state2);
 	}
 	
 	// =========================================================================
@@ -89,9 +102,15 @@ public class HDDiffTreeVisualizer
 	
 	// =========================================================================
 	
-	private void drawDotGraph(File output, DiffNode root1, DiffNode root2)
+	private void drawDotGraph(
+			File output,
+			DiffNode root1,
+			NodeStateInterface state1,
+			DiffNode root2,
+			NodeStateInterface state2)
 	{
 		nextColor = 0;
+		nodeColors.clear();
 		File dotFile;
 		try
 		{
@@ -106,8 +125,8 @@ public class HDDiffTreeVisualizer
 		{
 			ps.println("digraph G {");
 			
-			drawNode(ps, "t1", root1, 0);
-			drawNode(ps, "t2", root2, 0);
+			drawNode(ps, "t1", root1, state1, 0);
+			drawNode(ps, "t2", root2, state2, 0);
 			
 			ps.println("}");
 		}
@@ -123,29 +142,31 @@ public class HDDiffTreeVisualizer
 			PrintStream ps,
 			String prefix,
 			DiffNode node,
+			NodeStateInterface state,
 			int i)
 	{
-		int weight = node.getWeight();
+		int weight = state.getWeight(node);
+		int common = state.getCommon(node);
 		
 		if (node.isTextLeaf())
 		{
-			String color = getColor(node, null);
+			String color = getColor(node, state, null);
 			
 			String text = node.getTextContent();
 			
 			String label = abbreviateNodeRep(text);
 			
 			String shape = "box";
-			if (node.isSplit())
+			if (state.isSplit(node))
 				shape = "parallelogram";
-			else if (node.isSubtreeMatched())
+			else if (state.isSubtreeMatched(node))
 				shape = "box, peripheries=2";
 			else if (weight <= 0)
 				shape = "diamond";
 			
 			String stats = "";
-			if (node.getCommon() != Integer.MIN_VALUE)
-				stats = String.format("%d/%d\\n", node.getCommon(), weight);
+			if (common != Integer.MIN_VALUE)
+				stats = String.format("%d/%d\\n", common, weight);
 			
 			ps.println(String.format(
 					"%s_%d [label=\"%s\\\"%s\\\"\", shape=%s, fontsize=8%s];",
@@ -156,20 +177,20 @@ public class HDDiffTreeVisualizer
 			String name = node.getLabel();
 			String label = name;
 			
-			if (node.getCommon() != Integer.MIN_VALUE)
+			if (common != Integer.MIN_VALUE)
 			{
 				label = String.format(
 						"%d/%d=%d\\n%s",
-						node.getCommon(),
+						common,
 						weight,
-						(int) (node.getCommon() / (float) weight * 100),
+						(int) (common / (float) weight * 100),
 						name);
 			}
 			
-			String color = getColor(node, "gray");
+			String color = getColor(node, state, "gray");
 			
 			String shape = "plaintext";
-			if (node.isSubtreeMatched())
+			if (state.isSubtreeMatched(node))
 				shape = "box, peripheries=2";
 			
 			ps.println(String.format(
@@ -185,7 +206,7 @@ public class HDDiffTreeVisualizer
 					prefix, i,
 					prefix, j));
 			
-			j = drawNode(ps, prefix, child, j);
+			j = drawNode(ps, prefix, child, state, j);
 		}
 		
 		return j;
@@ -199,16 +220,20 @@ public class HDDiffTreeVisualizer
 		return label;
 	}
 	
-	private String getColor(DiffNode node, String override)
+	private String getColor(
+			DiffNode node,
+			NodeStateInterface state,
+			String override)
 	{
 		String c = null;
-		if ((node.getPartner() != null) &&
+		DiffNode partner = state.getPartner(node);
+		if ((partner != null) &&
 				// Newly inserted nodes are matched but don't have a parent...
-				!((node.getParent() != null) && (node.getPartner().getParent() == null)))
+				!((node.getParent() != null) && (partner.getParent() == null)))
 		{
-			if (node.getColor() != null)
+			if (nodeColors.containsKey(node))
 			{
-				c = node.getColor();
+				c = nodeColors.get(node);
 			}
 			else
 			{
@@ -218,8 +243,8 @@ public class HDDiffTreeVisualizer
 					c = colors[nextColor];
 					nextColor = (nextColor + 1) % colors.length;
 				}
-				node.setColor(c);
-				node.getPartner().setColor(c);
+				nodeColors.put(node, c);
+				nodeColors.put(partner, c);
 			}
 		}
 		
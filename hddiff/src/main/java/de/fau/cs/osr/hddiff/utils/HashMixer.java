@@ -0,0 +1,81 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+/**
+ * Hash functions for 64 bit subtree hashes.
+ */
+public final class HashMixer
+{
+	private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	// =========================================================================
+
+	private HashMixer()
+	{
+	}
+
+	// =========================================================================
+
+	/**
+	 * The 64 bit finalizer of MurmurHash3. Every input bit affects every output
+	 * bit.
+	 */
+	public static long mix64(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Combines an accumulated hash with another hash. The result depends on
+	 * the order in which hashes are combined.
+	 */
+	public static long combine64(long accu, long hash)
+	{
+		return mix64(accu * GOLDEN_RATIO + hash);
+	}
+
+	/**
+	 * FNV-1a over the characters of the given string, mixed.
+	 * 
+	 * @return A 64 bit hash of the string or 0 if the string is null.
+	 */
+	public static long hash64(CharSequence s)
+	{
+		if (s == null)
+			return 0;
+
+		long h = FNV_OFFSET_BASIS;
+		for (int i = 0; i < s.length(); ++i)
+		{
+			char ch = s.charAt(i);
+			h = (h ^ (ch & 0xff)) * FNV_PRIME;
+			h = (h ^ (ch >>> 8)) * FNV_PRIME;
+		}
+		return mix64(h);
+	}
+}
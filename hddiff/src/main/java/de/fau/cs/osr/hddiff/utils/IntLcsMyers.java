@@ -0,0 +1,464 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import java.util.Arrays;
+
+/**
+ * LcsMyers specialized for sequences of int keys. Two elements are equal if
+ * their keys are equal. Callers precompute the keys (a subtree hash, a type
+ * id, a partner id, ...) once per element instead of having a comparator
+ * evaluated for every step along a diagonal.
+ * 
+ * <p>
+ * Instead of the elements, the LCS consists of the indices of the common
+ * elements in both sequences.
+ * 
+ * <p>
+ * The trace of the forward search is kept in a single buffer that only holds
+ * the diagonals reached in each step. An instance keeps its buffers between
+ * calls and does not allocate once they are large enough; traces larger than
+ * MAX_RETAINED_TRACE are released after use.
+ * 
+ * @see LcsMyers
+ */
+public class IntLcsMyers
+{
+	/** Number of trace entries kept for the next call */
+	private static final int MAX_RETAINED_TRACE = 1 << 20;
+	
+	// =========================================================================
+	
+	private long maxTraceSize = LcsMyers.DEFAULT_MAX_TRACE_SIZE;
+	
+	/**
+	 * The furthest reaching paths before step d on the diagonals -d-1 to
+	 * d+1, starting at traceOffset(d).
+	 */
+	private int[] trace = new int[0];
+	
+	/** Number of steps in the trace */
+	private int traceDepth;
+	
+	/** Accounted as if every step kept all 2 * max + 1 diagonals */
+	private long traceSize;
+	
+	private int[] v = new int[0];
+	
+	private int[] vf;
+	
+	private int[] vb;
+	
+	/** Middle snake: x, y, u, v */
+	private final int[] snake = new int[4];
+	
+	/** Pairs of indices (i in a, j in b) */
+	private int[] lcs = new int[16];
+	
+	private int lcsLength;
+	
+	// =========================================================================
+	
+	/**
+	 * @see LcsMyers#setMaxTraceSize(long)
+	 */
+	public void setMaxTraceSize(long maxTraceSize)
+	{
+		this.maxTraceSize = maxTraceSize;
+	}
+	
+	public long getMaxTraceSize()
+	{
+		return maxTraceSize;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Computes the LCS of a[0..n-1] and b[0..m-1].
+	 * 
+	 * @return The edit distance.
+	 */
+	public final int lcs(int[] a, int n, int[] b, int m)
+	{
+		int min = Math.min(n, m);
+		lcsLength = 0;
+		ensureLcsCapacity(min);
+		
+		if (min == 0)
+			return n + m;
+		
+		int trimFront = 0;
+		for (; (trimFront < min) && (a[trimFront] == b[trimFront]); ++trimFront)
+			addPair(trimFront, trimFront);
+		
+		int trimEndMax = min - trimFront;
+		int trimEnd = 0;
+		while ((trimEnd < trimEndMax) && (a[n - trimEnd - 1] == b[m - trimEnd - 1]))
+			++trimEnd;
+		
+		int d;
+		int trim = trimFront + trimEnd;
+		if (trim < min)
+		{
+			int n2 = n - trim;
+			int m2 = m - trim;
+			int max = n2 + m2;
+			
+			traceDepth = 0;
+			traceSize = 0;
+			
+			d = lcs(a, b, trimFront, n2, m2, max);
+			if (d >= 0)
+			{
+				backtrack(trimFront, n2, m2);
+			}
+			else
+			{
+				int lcsLengthBefore = lcsLength;
+				lcsLinear(a, b, trimFront, n - trimEnd, trimFront, m - trimEnd);
+				d = n2 + m2 - 2 * (lcsLength - lcsLengthBefore);
+			}
+			
+			if (trace.length > MAX_RETAINED_TRACE)
+				trace = new int[0];
+		}
+		else
+		{
+			d = n + m - min * 2;
+		}
+		
+		for (int i = trimEnd; i > 0; --i)
+			addPair(n - i, m - i);
+		
+		return d;
+	}
+	
+	private int lcs(
+			int[] a,
+			int[] b,
+			int from,
+			int n2,
+			int m2,
+			int max)
+	{
+		// [-MAX ... +MAX]
+		int vLength = 2 * max + 1;
+		if (v.length < vLength)
+			v = new int[Math.max(vLength, 2 * v.length)];
+		v[max + 1] = 0;
+		
+		int d;
+		forD: for (d = 0; d <= max; ++d)
+		{
+			Cancellation.checkInterrupted();
+			
+			traceSize += vLength;
+			if (traceSize > maxTraceSize)
+				return -1;
+			
+			addTraceStep(d, max);
+			
+			for (int k = -d; k <= d; k += 2)
+			{
+				int kIdx = k + max;
+				int x = ((k == -d) || ((k != +d) && v[kIdx - 1] < v[kIdx + 1])) ?
+						// go down from k+1, x doesn't change
+						(v[kIdx + 1]) :
+						// go right form k-1, x += 1
+						(v[kIdx - 1] + 1);
+				
+				int y = x - k;
+				
+				while ((x < n2) && (y < m2) && (a[from + x] == b[from + y]))
+				{
+					++x;
+					++y;
+				}
+				
+				if ((x >= n2) && (y >= m2))
+					break forD;
+				
+				v[kIdx] = x;
+			}
+		}
+		
+		return d;
+	}
+	
+	/**
+	 * Copies the diagonals -d-1 to d+1 of v (as far as they exist) to the
+	 * trace.
+	 */
+	private void addTraceStep(int d, int max)
+	{
+		int end = traceOffset(d + 1);
+		if (trace.length < end)
+			trace = Arrays.copyOf(trace, Math.max(end, 2 * trace.length));
+		
+		int k0 = Math.max(-d - 1, -max);
+		int k1 = Math.min(d + 1, max);
+		System.arraycopy(v, k0 + max, trace, traceOffset(d) + k0 + d + 1, k1 - k0 + 1);
+		traceDepth = d + 1;
+	}
+	
+	/**
+	 * Step d occupies 2 * d + 3 entries.
+	 */
+	private static int traceOffset(int d)
+	{
+		return d * d + 2 * d;
+	}
+	
+	private void backtrack(int from, int n, int m)
+	{
+		int x = n;
+		int y = m;
+		int d = traceDepth - 1;
+		
+		// The snakes are found from the end, fill the gap between the trimmed
+		// front and the trimmed end from behind.
+		int end = lcsLength + Math.min(n, m);
+		int j = end;
+		
+		for (; (x > 0) || (y > 0); --d)
+		{
+			// Diagonal k of step d is at base + k
+			int base = traceOffset(d) + d + 1;
+			
+			int k = x - y;
+			
+			int prevK;
+			int snakeX;
+			if ((k == -d) || ((k != +d) && trace[base + k - 1] < trace[base + k + 1]))
+			{
+				prevK = k + 1;
+				snakeX = 0;
+			}
+			else
+			{
+				prevK = k - 1;
+				snakeX = 1;
+			}
+			
+			int prevX = trace[base + prevK];
+			int prevY = prevX - prevK;
+			snakeX += prevX;
+			
+			while (x > snakeX)
+			{
+				--j;
+				lcs[2 * j] = --x + from;
+				lcs[2 * j + 1] = --y + from;
+			}
+			
+			x = prevX;
+			y = prevY;
+		}
+		
+		// Close the gap if the LCS is shorter than min(n, m)
+		int count = end - j;
+		System.arraycopy(lcs, 2 * j, lcs, 2 * lcsLength, 2 * count);
+		lcsLength += count;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * Appends the LCS of a[aLo..aHi-1] and b[bLo..bHi-1] to the result.
+	 */
+	private void lcsLinear(
+			int[] a,
+			int[] b,
+			int aLo,
+			int aHi,
+			int bLo,
+			int bHi)
+	{
+		for (; (aLo < aHi) && (bLo < bHi) && (a[aLo] == b[bLo]); ++aLo, ++bLo)
+			addPair(aLo, bLo);
+		
+		int trimEnd = 0;
+		while ((aLo < aHi - trimEnd) && (bLo < bHi - trimEnd) &&
+				(a[aHi - trimEnd - 1] == b[bHi - trimEnd - 1]))
+			++trimEnd;
+		
+		int aEnd = aHi - trimEnd;
+		int bEnd = bHi - trimEnd;
+		if ((aLo < aEnd) && (bLo < bEnd))
+		{
+			middleSnake(a, b, aLo, aEnd, bLo, bEnd);
+			
+			// Both ends are trimmed, therefore d >= 2 and both halves have a
+			// smaller edit distance.
+			int x = aLo + snake[0];
+			int y = bLo + snake[1];
+			int u = aLo + snake[2];
+			int v = bLo + snake[3];
+			
+			lcsLinear(a, b, aLo, x, bLo, y);
+			for (; x < u; ++x, ++y)
+				addPair(x, y);
+			lcsLinear(a, b, u, aEnd, v, bEnd);
+		}
+		
+		for (int i = trimEnd; i > 0; --i)
+			addPair(aHi - i, bHi - i);
+	}
+	
+	/**
+	 * @see LcsMyers
+	 */
+	private void middleSnake(
+			int[] a,
+			int[] b,
+			int aLo,
+			int aHi,
+			int bLo,
+			int bHi)
+	{
+		int n = aHi - aLo;
+		int m = bHi - bLo;
+		int delta = n - m;
+		boolean odd = (delta & 1) != 0;
+		int max = (n + m + 1) / 2;
+		
+		// [-MAX-1 ... +MAX+1]
+		int size = 2 * max + 3;
+		if ((vf == null) || (vf.length < size))
+		{
+			vf = new int[size];
+			vb = new int[size];
+		}
+		int off = max + 1;
+		vf[off + 1] = 0;
+		vb[off + 1] = 0;
+		
+		for (int d = 0; d <= max; ++d)
+		{
+			Cancellation.checkInterrupted();
+			
+			// Forward path
+			for (int k = -d; k <= d; k += 2)
+			{
+				int kIdx = k + off;
+				int x = ((k == -d) || ((k != +d) && vf[kIdx - 1] < vf[kIdx + 1])) ?
+						vf[kIdx + 1] :
+						vf[kIdx - 1] + 1;
+				int y = x - k;
+				int x0 = x;
+				int y0 = y;
+				
+				while ((x < n) && (y < m) && (a[aLo + x] == b[bLo + y]))
+				{
+					++x;
+					++y;
+				}
+				
+				vf[kIdx] = x;
+				
+				// Reverse diagonal delta - k was reached in d - 1 steps
+				int kr = delta - k;
+				if (odd && (kr >= -(d - 1)) && (kr <= d - 1) && (x + vb[kr + off] >= n))
+				{
+					setSnake(x0, y0, x, y);
+					return;
+				}
+			}
+			
+			// Reverse path, x and y count from the end of the sequences
+			for (int k = -d; k <= d; k += 2)
+			{
+				int kIdx = k + off;
+				int x = ((k == -d) || ((k != +d) && vb[kIdx - 1] < vb[kIdx + 1])) ?
+						vb[kIdx + 1] :
+						vb[kIdx - 1] + 1;
+				int y = x - k;
+				int x0 = x;
+				int y0 = y;
+				
+				while ((x < n) && (y < m) && (a[aHi - x - 1] == b[bHi - y - 1]))
+				{
+					++x;
+					++y;
+				}
+				
+				vb[kIdx] = x;
+				
+				// Forward diagonal delta - k was reached in d steps
+				int kf = delta - k;
+				if (!odd && (kf >= -d) && (kf <= d) && (x + vf[kf + off] >= n))
+				{
+					setSnake(n - x, m - y, n - x0, m - y0);
+					return;
+				}
+			}
+		}
+		
+		throw new AssertionError();
+	}
+	
+	private void setSnake(int x, int y, int u, int v)
+	{
+		snake[0] = x;
+		snake[1] = y;
+		snake[2] = u;
+		snake[3] = v;
+	}
+	
+	// =========================================================================
+	
+	private void ensureLcsCapacity(int pairs)
+	{
+		if (lcs.length < 2 * pairs)
+			lcs = new int[Math.max(2 * pairs, 2 * lcs.length)];
+	}
+	
+	private void addPair(int i, int j)
+	{
+		lcs[2 * lcsLength] = i;
+		lcs[2 * lcsLength + 1] = j;
+		++lcsLength;
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * @return The number of index pairs in the LCS.
+	 */
+	public int getLcsLength()
+	{
+		return lcsLength;
+	}
+	
+	/**
+	 * @return The index in the first sequence of the k-th common element.
+	 */
+	public int getIndex1(int k)
+	{
+		return lcs[2 * k];
+	}
+	
+	/**
+	 * @return The index in the second sequence of the k-th common element.
+	 */
+	public int getIndex2(int k)
+	{
+		return lcs[2 * k + 1];
+	}
+}
@@ -29,6 +29,11 @@ import java.util.Arrays;
  * Algorithmica 1.1-4 (1986): 251-266.
  * </pre>
  * 
+ * If the trace of the forward pass grows too large, the LCS is instead
+ * computed in linear space by recursively splitting the problem at the
+ * middle snake (section 4b of the paper). Both variants find an LCS of the
+ * same length, but not necessarily the same one.
+ * 
  * Other great learning resources:
  * <ul>
  * <li><a href="http://www.codeproject.com/Articles/42279/Investigating-Myers-diff-algorithm-Part-of">Investigating Myers' Diff Algorithm: Part 1 of 2</a></li>
@@ -37,10 +42,24 @@ import java.util.Arrays;
  */
 public class LcsMyers<T>
 {
+	/** 4M ints = 16MB */
+	public static final long DEFAULT_MAX_TRACE_SIZE = 1 << 22;
+	
 	private final ElementComparatorInterface<T> cmp;
 	
+	private long maxTraceSize = DEFAULT_MAX_TRACE_SIZE;
+	
 	private ArrayList<int[]> vs;
 	
+	private long traceSize;
+	
+	private int[] vf;
+	
+	private int[] vb;
+	
+	/** Middle snake: x, y, u, v */
+	private final int[] snake = new int[4];
+	
 	private ArrayList<T> lcs;
 	
 	// =========================================================================
@@ -52,6 +71,25 @@ public class LcsMyers<T>
 	
 	// =========================================================================
 	
+	/**
+	 * The forward pass of the quadratic space variant stores a copy of its
+	 * furthest reaching paths for every edit distance d in order to backtrack
+	 * the LCS. Once the stored paths would exceed the given number of ints the
+	 * LCS is computed by the linear space variant instead. Pass 0 to always
+	 * use the linear space variant.
+	 */
+	public void setMaxTraceSize(long maxTraceSize)
+	{
+		this.maxTraceSize = maxTraceSize;
+	}
+	
+	public long getMaxTraceSize()
+	{
+		return maxTraceSize;
+	}
+	
+	// =========================================================================
+	
 	public final int lcs(ArrayList<T> a, ArrayList<T> b)
 	{
 		return lcs(a, b, a.size() + b.size());
@@ -103,13 +141,23 @@ public class LcsMyers<T>
 			max = Math.min(max, n2 + m2);
 			
 			if (vs == null)
-				vs = new ArrayList<>(max + 1);
+				vs = new ArrayList<>();
 			else
 				vs.clear();
+			traceSize = 0;
 			
 			d = lcs(a, b, trimFront, n2, m2, max);
-			
-			backtrack(a, b, trimFront, n2, m2, max);
+			if (d >= 0)
+			{
+				backtrack(a, b, trimFront, n2, m2, max);
+			}
+			else
+			{
+				vs.clear();
+				int lcsSize = lcs.size();
+				lcsLinear(a, b, trimFront, n - trimEnd, trimFront, m - trimEnd);
+				d = n2 + m2 - (lcs.size() - lcsSize);
+			}
 		}
 		else
 		{
@@ -142,6 +190,12 @@ public class LcsMyers<T>
 		int d;
 		forD: for (d = 0; d <= max; ++d)
 		{
+			Cancellation.checkInterrupted();
+			
+			traceSize += v.length;
+			if (traceSize > maxTraceSize)
+				return -1;
+			
 			vs.add(Arrays.copyOf(v, v.length));
 			
 			for (int k = -d; k <= d; k += 2)
@@ -227,6 +281,167 @@ public class LcsMyers<T>
 		}
 	}
 	
+	// =========================================================================
+	
+	/**
+	 * Appends the LCS of a[aLo..aHi-1] and b[bLo..bHi-1] to the result.
+	 */
+	private void lcsLinear(
+			ArrayList<T> a,
+			ArrayList<T> b,
+			int aLo,
+			int aHi,
+			int bLo,
+			int bHi)
+	{
+		for (; (aLo < aHi) && (bLo < bHi); ++aLo, ++bLo)
+		{
+			T aItem = a.get(aLo);
+			T bItem = b.get(bLo);
+			if (!cmp.equals(aItem, bItem))
+				break;
+			lcs.add(aItem);
+			lcs.add(bItem);
+		}
+		
+		int trimEnd = 0;
+		while ((aLo < aHi - trimEnd) && (bLo < bHi - trimEnd) &&
+				cmp.equals(a.get(aHi - trimEnd - 1), b.get(bHi - trimEnd - 1)))
+			++trimEnd;
+		
+		int aEnd = aHi - trimEnd;
+		int bEnd = bHi - trimEnd;
+		if ((aLo < aEnd) && (bLo < bEnd))
+		{
+			middleSnake(a, b, aLo, aEnd, bLo, bEnd);
+			
+			// Both ends are trimmed, therefore d >= 2 and both halves have a
+			// smaller edit distance.
+			int x = aLo + snake[0];
+			int y = bLo + snake[1];
+			int u = aLo + snake[2];
+			int v = bLo + snake[3];
+			
+			lcsLinear(a, b, aLo, x, bLo, y);
+			for (; x < u; ++x, ++y)
+			{
+				lcs.add(a.get(x));
+				lcs.add(b.get(y));
+			}
+			lcsLinear(a, b, u, aEnd, v, bEnd);
+		}
+		
+		for (int i = trimEnd; i > 0; --i)
+		{
+			lcs.add(a.get(aHi - i));
+			lcs.add(b.get(bHi - i));
+		}
+	}
+	
+	/**
+	 * Finds the middle snake of an optimal path through a[aLo..aHi-1] and
+	 * b[bLo..bHi-1] and stores its start (x, y) and its end (u, v) relative to
+	 * (aLo, bLo) in the snake field.
+	 */
+	private void middleSnake(
+			ArrayList<T> a,
+			ArrayList<T> b,
+			int aLo,
+			int aHi,
+			int bLo,
+			int bHi)
+	{
+		int n = aHi - aLo;
+		int m = bHi - bLo;
+		int delta = n - m;
+		boolean odd = (delta & 1) != 0;
+		int max = (n + m + 1) / 2;
+		
+		// [-MAX-1 ... +MAX+1]
+		int size = 2 * max + 3;
+		if ((vf == null) || (vf.length < size))
+		{
+			vf = new int[size];
+			vb = new int[size];
+		}
+		int off = max + 1;
+		vf[off + 1] = 0;
+		vb[off + 1] = 0;
+		
+		for (int d = 0; d <= max; ++d)
+		{
+			Cancellation.checkInterrupted();
+			
+			// Forward path
+			for (int k = -d; k <= d; k += 2)
+			{
+				int kIdx = k + off;
+				int x = ((k == -d) || ((k != +d) && vf[kIdx - 1] < vf[kIdx + 1])) ?
+						vf[kIdx + 1] :
+						vf[kIdx - 1] + 1;
+				int y = x - k;
+				int x0 = x;
+				int y0 = y;
+				
+				while ((x < n) && (y < m) && cmp.equals(a.get(aLo + x), b.get(bLo + y)))
+				{
+					++x;
+					++y;
+				}
+				
+				vf[kIdx] = x;
+				
+				// Reverse diagonal delta - k was reached in d - 1 steps
+				int kr = delta - k;
+				if (odd && (kr >= -(d - 1)) && (kr <= d - 1) && (x + vb[kr + off] >= n))
+				{
+					setSnake(x0, y0, x, y);
+					return;
+				}
+			}
+			
+			// Reverse path, x and y count from the end of the sequences
+			for (int k = -d; k <= d; k += 2)
+			{
+				int kIdx = k + off;
+				int x = ((k == -d) || ((k != +d) && vb[kIdx - 1] < vb[kIdx + 1])) ?
+						vb[kIdx + 1] :
+						vb[kIdx - 1] + 1;
+				int y = x - k;
+				int x0 = x;
+				int y0 = y;
+				
+				while ((x < n) && (y < m) && cmp.equals(a.get(aHi - x - 1), b.get(bHi - y - 1)))
+				{
+					++x;
+					++y;
+				}
+				
+				vb[kIdx] = x;
+				
+				// Forward diagonal delta - k was reached in d steps
+				int kf = delta - k;
+				if (!odd && (kf >= -d) && (kf <= d) && (x + vf[kf + off] >= n))
+				{
+					setSnake(n - x, m - y, n - x0, m - y0);
+					return;
+				}
+			}
+		}
+		
+		throw new AssertionError();
+	}
+	
+	private void setSnake(int x, int y, int u, int v)
+	{
+		snake[0] = x;
+		snake[1] = y;
+		snake[2] = u;
+		snake[3] = v;
+	}
+	
+	// =========================================================================
+	
 	public ArrayList<T> getLcs()
 	{
 		return lcs;
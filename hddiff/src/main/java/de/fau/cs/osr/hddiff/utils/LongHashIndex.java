@@ -0,0 +1,200 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+/**
+ * Open-addressing hash table from primitive long keys to objects, specialized
+ * for indexing subtrees by their hash.
+ * 
+ * <p>
+ * Instead of replacing an existing entry, a second insert with the same key
+ * flags the key as duplicate. Duplicate keys stay in the table but
+ * getUnique() no longer returns a value for them. There is no remove
+ * operation.
+ * 
+ * <p>
+ * Keys are stored in a long array, so neither keys nor entries have to be
+ * allocated as objects. The table uses linear probing and grows when it is
+ * half full.
+ */
+public final class LongHashIndex<T>
+{
+	private static final int MIN_CAPACITY = 16;
+
+	// =========================================================================
+
+	private long[] keys;
+
+	/** A slot is free if its value is null. */
+	private Object[] values;
+
+	/** One bit per slot. */
+	private long[] duplicates;
+
+	private int mask;
+
+	private int size;
+
+	// =========================================================================
+
+	/**
+	 * @param expectedSize
+	 *            The number of keys that can be added before the table has to
+	 *            grow.
+	 */
+	public LongHashIndex(int expectedSize)
+	{
+		allocate(capacityFor(expectedSize));
+	}
+
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2L * expectedSize)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new Object[capacity];
+		duplicates = new long[(capacity + 63) >>> 6];
+		mask = capacity - 1;
+	}
+
+	// =========================================================================
+
+	/**
+	 * Adds a key or, if the key is already present, flags it as duplicate.
+	 * 
+	 * @return True if the key was not present before.
+	 */
+	public boolean putOrMarkDuplicate(long key, T value)
+	{
+		if (value == null)
+			throw new IllegalArgumentException();
+
+		int slot = find(key);
+		if (values[slot] != null)
+		{
+			setDuplicate(slot);
+			return false;
+		}
+
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > (mask + 1) >>> 1)
+			grow();
+		return true;
+	}
+
+	/**
+	 * @return The value of the given key or null if the key is not present or
+	 *         flagged as duplicate.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getUnique(long key)
+	{
+		int slot = find(key);
+		return isDuplicate(slot) ? null : (T) values[slot];
+	}
+
+	public boolean containsKey(long key)
+	{
+		return values[find(key)] != null;
+	}
+
+	/**
+	 * @return The number of keys, including keys flagged as duplicates.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	// =========================================================================
+	// Iteration over slots
+
+	public int capacity()
+	{
+		return values.length;
+	}
+
+	/**
+	 * @return True if the slot holds a key which is not flagged as duplicate.
+	 */
+	public boolean isUniqueAt(int slot)
+	{
+		return (values[slot] != null) && !isDuplicate(slot);
+	}
+
+	public long keyAt(int slot)
+	{
+		return keys[slot];
+	}
+
+	@SuppressWarnings("unchecked")
+	public T valueAt(int slot)
+	{
+		return (T) values[slot];
+	}
+
+	// =========================================================================
+
+	private int find(long key)
+	{
+		// 32 bit subtree hashes are combined with a weak function, their low
+		// bits alone are not well distributed.
+		int slot = (int) HashMixer.mix64(key) & mask;
+		while ((values[slot] != null) && (keys[slot] != key))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private boolean isDuplicate(int slot)
+	{
+		return (duplicates[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void setDuplicate(int slot)
+	{
+		duplicates[slot >>> 6] |= (1L << slot);
+	}
+
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		long[] oldDuplicates = duplicates;
+
+		allocate(oldValues.length << 1);
+
+		for (int i = 0; i < oldValues.length; ++i)
+		{
+			if (oldValues[i] == null)
+				continue;
+
+			int slot = find(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+			if ((oldDuplicates[i >>> 6] & (1L << i)) != 0)
+				setDuplicate(slot);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from primitive long keys to primitive int
+ * values.
+ * 
+ * <p>
+ * Neither keys, values nor entries are allocated as objects. The table uses
+ * linear probing and grows when it is half full. There is no remove
+ * operation, but the table can be cleared and reused.
+ */
+public final class LongIntHashMap
+{
+	private static final int MIN_CAPACITY = 16;
+
+	// =========================================================================
+
+	private long[] keys;
+
+	private int[] values;
+
+	/** One bit per slot. */
+	private long[] used;
+
+	private int mask;
+
+	private int size;
+
+	// =========================================================================
+
+	/**
+	 * @param expectedSize
+	 *            The number of keys that can be added before the table has to
+	 *            grow.
+	 */
+	public LongIntHashMap(int expectedSize)
+	{
+		allocate(capacityFor(expectedSize));
+	}
+
+	private static int capacityFor(int expectedSize)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2L * expectedSize)
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new int[capacity];
+		used = new long[(capacity + 63) >>> 6];
+		mask = capacity - 1;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @return The value of the given key or {@code missing} if the key is not
+	 *         present.
+	 */
+	public int get(long key, int missing)
+	{
+		int slot = find(key);
+		return isUsed(slot) ? values[slot] : missing;
+	}
+
+	public boolean containsKey(long key)
+	{
+		return isUsed(find(key));
+	}
+
+	/**
+	 * Adds the key with the given value unless the key is already present.
+	 * 
+	 * @return The value that is associated with the key after the call.
+	 */
+	public int putIfAbsent(long key, int value)
+	{
+		int slot = find(key);
+		if (isUsed(slot))
+			return values[slot];
+
+		insert(slot, key, value);
+		return value;
+	}
+
+	/**
+	 * Associates the key with the given value, replacing a previous value.
+	 */
+	public void put(long key, int value)
+	{
+		int slot = find(key);
+		if (isUsed(slot))
+			values[slot] = value;
+		else
+			insert(slot, key, value);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Removes all keys but keeps the capacity.
+	 */
+	public void clear()
+	{
+		if (size > 0)
+		{
+			Arrays.fill(used, 0);
+			size = 0;
+		}
+	}
+
+	// =========================================================================
+	// Iteration over slots
+
+	public int capacity()
+	{
+		return values.length;
+	}
+
+	public boolean isUsedAt(int slot)
+	{
+		return isUsed(slot);
+	}
+
+	public long keyAt(int slot)
+	{
+		return keys[slot];
+	}
+
+	public int valueAt(int slot)
+	{
+		return values[slot];
+	}
+
+	// =========================================================================
+
+	private int find(long key)
+	{
+		int slot = (int) HashMixer.mix64(key) & mask;
+		while (isUsed(slot) && (keys[slot] != key))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void insert(int slot, long key, int value)
+	{
+		keys[slot] = key;
+		values[slot] = value;
+		used[slot >>> 6] |= (1L << slot);
+		if (++size > (mask + 1) >>> 1)
+			grow();
+	}
+
+	private boolean isUsed(int slot)
+	{
+		return (used[slot >>> 6] & (1L << slot)) != 0;
+	}
+
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		long[] oldUsed = used;
+
+		allocate(oldValues.length << 1);
+
+		for (int i = 0; i < oldValues.length; ++i)
+		{
+			if ((oldUsed[i >>> 6] & (1L << i)) == 0)
+				continue;
+
+			int slot = find(oldKeys[i]);
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+			used[slot >>> 6] |= (1L << slot);
+		}
+	}
+}
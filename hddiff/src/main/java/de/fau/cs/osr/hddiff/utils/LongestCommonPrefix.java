@@ -17,6 +17,9 @@
  */
 package de.fau.cs.osr.hddiff.utils;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Implemented according to:
  * 
@@ -25,9 +28,21 @@ package de.fau.cs.osr.hddiff.utils;
  * "Linear-time longest-common-prefix computation in suffix arrays and its applications."
  * Combinatorial Pattern Matching. Springer Berlin Heidelberg, 2001.
  * </pre>
+ * 
+ * The parallel variant computes the permuted LCP array with the help of the Φ
+ * array as described in:
+ * 
+ * <pre>
+ * Kärkkäinen, Juha, Giovanni Manzini, and Simon J. Puglisi.
+ * "Permuted longest-common-prefix array."
+ * Combinatorial Pattern Matching. Springer Berlin Heidelberg, 2009. 181-192.
+ * </pre>
  */
 public class LongestCommonPrefix
 {
+	/** Minimum number of positions handled by one task */
+	private static final int PARALLEL_GRAIN = 1 << 14;
+	
 	public static int[] compute(int[] seq, int n, int[] suffixArray)
 	{
 		int[] rank = new int[n];
@@ -59,11 +74,40 @@ public class LongestCommonPrefix
 			int valueDomainStart,
 			int[] suffixArray)
 	{
-		int[] rank = new int[n];
-		int[] height = new int[n];
+		return compute(seq, n, valueDomainStart, suffixArray, new int[n], new int[n]);
+	}
+	
+	/**
+	 * Same as compute(seq, n, valueDomainStart, suffixArray) with the working
+	 * storage and the result taken from the given workspace.
+	 * 
+	 * @return The LCP array in the first n elements of an array owned by the
+	 *         workspace.
+	 */
+	public static int[] compute(
+			int[] seq,
+			int n,
+			int valueDomainStart,
+			int[] suffixArray,
+			SuffixArrayWorkspace workspace)
+	{
+		return compute(seq, n, valueDomainStart, suffixArray, workspace.rank(n), workspace.lcp(n));
+	}
+	
+	private static int[] compute(
+			int[] seq,
+			int n,
+			int valueDomainStart,
+			int[] suffixArray,
+			int[] rank,
+			int[] height)
+	{
 		for (int i = 0; i < n; ++i)
 			rank[suffixArray[i]] = i;
 		
+		if (n > 0)
+			height[0] = 0;
+		
 		int h = 0;
 		for (int i = 0; i < n; ++i)
 		{
@@ -81,4 +125,155 @@ public class LongestCommonPrefix
 		
 		return height;
 	}
+	
+	/**
+	 * Same as compute(seq, n, valueDomainStart, suffixArray) but distributes
+	 * the work over the given pool. The text is split into chunks and every
+	 * chunk restarts the Kasai scan with an empty common prefix.
+	 */
+	public static int[] computeParallel(
+			ForkJoinPool pool,
+			int[] seq,
+			int n,
+			int valueDomainStart,
+			int[] suffixArray)
+	{
+		int[] plcp = new int[n];
+		int[] height = new int[n];
+		
+		int grain = Math.max(PARALLEL_GRAIN, n / (8 * pool.getParallelism()));
+		
+		LcpContext ctx = new LcpContext(seq, valueDomainStart, suffixArray, plcp, height, grain);
+		pool.invoke(new LcpTask(ctx, LcpTask.PHI, 0, n));
+		pool.invoke(new LcpTask(ctx, LcpTask.PLCP, 0, n));
+		pool.invoke(new LcpTask(ctx, LcpTask.HEIGHT, 0, n));
+		
+		return height;
+	}
+	
+	// =========================================================================
+	
+	private static final class LcpContext
+	{
+		private final int[] seq;
+		
+		private final int valueDomainStart;
+		
+		private final int[] suffixArray;
+		
+		/** First holds Φ and is then overwritten with the permuted LCP */
+		private final int[] plcp;
+		
+		private final int[] height;
+		
+		private final int grain;
+		
+		public LcpContext(
+				int[] seq,
+				int valueDomainStart,
+				int[] suffixArray,
+				int[] plcp,
+				int[] height,
+				int grain)
+		{
+			this.seq = seq;
+			this.valueDomainStart = valueDomainStart;
+			this.suffixArray = suffixArray;
+			this.plcp = plcp;
+			this.height = height;
+			this.grain = grain;
+		}
+		
+		/**
+		 * Φ[sa[r]] = sa[r - 1]
+		 */
+		public void phi(int from, int to)
+		{
+			for (int r = from; r < to; ++r)
+				plcp[suffixArray[r]] = (r > 0) ? suffixArray[r - 1] : -1;
+		}
+		
+		public void permutedLcp(int from, int to)
+		{
+			int h = 0;
+			for (int i = from; i < to; ++i)
+			{
+				int j = plcp[i];
+				if (j < 0)
+				{
+					plcp[i] = 0;
+					h = 0;
+					continue;
+				}
+				
+				while ((seq[i + h] == seq[j + h]) && (seq[i + h] >= valueDomainStart))
+					h = h + 1;
+				
+				plcp[i] = h;
+				if (h > 0)
+					h = h - 1;
+			}
+		}
+		
+		public void height(int from, int to)
+		{
+			for (int r = from; r < to; ++r)
+				height[r] = (r > 0) ? plcp[suffixArray[r]] : 0;
+		}
+	}
+	
+	private static final class LcpTask
+			extends
+				RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		public static final int PHI = 0;
+		
+		public static final int PLCP = 1;
+		
+		public static final int HEIGHT = 2;
+		
+		private final LcpContext ctx;
+		
+		private final int phase;
+		
+		private final int from;
+		
+		private final int to;
+		
+		public LcpTask(LcpContext ctx, int phase, int from, int to)
+		{
+			this.ctx = ctx;
+			this.phase = phase;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if (to - from > ctx.grain)
+			{
+				int mid = (from + to) >>> 1;
+				invokeAll(
+						new LcpTask(ctx, phase, from, mid),
+						new LcpTask(ctx, phase, mid, to));
+				return;
+			}
+			
+			switch (phase)
+			{
+				case PHI:
+					ctx.phi(from, to);
+					break;
+				case PLCP:
+					ctx.permutedLcp(from, to);
+					break;
+				case HEIGHT:
+					ctx.height(from, to);
+					break;
+			}
+		}
+	}
 }
@@ -17,12 +17,12 @@
  */
 package de.fau.cs.osr.hddiff.utils;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 
 import de.fau.cs.osr.hddiff.utils.ReportItem.Timer;
 
@@ -41,16 +41,54 @@ public class NOCSstr
 	/** Array/String value domain (max incl.) */
 	public static final int MARKER_SEQ_D_MAX = Integer.MAX_VALUE;
 	
+	/** The suffix array builder used if none is given */
+	public static final SuffixArrayBuilderInterface DEFAULT_SA_BUILDER = SuffixArrayAlgorithm.SAIS;
+	
 	// =========================================================================
 	
 	/**
 	 * The strings must not contain the characters \u0000 or \u0001
 	 */
-	public static List<CommonSubstring> compute(
+	public static CommonSubstrings compute(
+			String str1,
+			String str2,
+			int valueDomainStart,
+			SubstringJudgeInterface<String> subStringJudge,
+			ReportItem ri)
+	{
+		return compute(str1, str2, valueDomainStart, subStringJudge, DEFAULT_SA_BUILDER, ri);
+	}
+	
+	/**
+	 * The strings must not contain the characters \u0000 or \u0001
+	 */
+	public static CommonSubstrings compute(
+			String str1,
+			String str2,
+			int valueDomainStart,
+			SubstringJudgeInterface<String> subStringJudge,
+			SuffixArrayBuilderInterface saBuilder,
+			ReportItem ri)
+	{
+		return compute(str1, str2, valueDomainStart, subStringJudge, saBuilder, new Workspace(), ri);
+	}
+	
+	/**
+	 * Same as compute(str1, str2, valueDomainStart, subStringJudge,
+	 * saBuilder, ri) with the working storage taken from the given workspace.
+	 * The suffix array and LCP array are only computed into the workspace if
+	 * the builder implements ReusingSuffixArrayBuilderInterface.
+	 * 
+	 * @return The common substrings. They are owned by the workspace and only
+	 *         valid until its next use.
+	 */
+	public static CommonSubstrings compute(
 			String str1,
 			String str2,
 			int valueDomainStart,
 			SubstringJudgeInterface<String> subStringJudge,
+			SuffixArrayBuilderInterface saBuilder,
+			Workspace workspace,
 			ReportItem ri)
 	{
 		Timer t0 = null;
@@ -61,14 +99,14 @@ public class NOCSstr
 		int n2 = str2.length();
 		int minLen = subStringJudge.getMinLength();
 		if ((n1 < minLen) || (n2 < minLen))
-			return Collections.emptyList();
+			return CommonSubstrings.EMPTY;
 		
-		Map<Character, Integer> m = new HashMap<>(1024);
+		Map<Character, Integer> m = workspace.codes();
 		
 		// ---- Stitch input together
 		
 		int k = valueDomainStart;
-		int[] input = new int[n1 + 1 + n2 + 1 + 3];
+		int[] input = workspace.input(n1 + 1 + n2 + 1 + 3, saBuilder);
 		for (int i = 0; i < n1; ++i)
 		{
 			char ch = str1.charAt(i);
@@ -121,7 +159,7 @@ public class NOCSstr
 		
 		// ---- Do actual work
 		
-		LinkedList<CommonSubstring> result = compute(input, str1, n1, n2, k, minLen, valueDomainStart, subStringJudge, ri);
+		CommonSubstrings result = compute(input, str1, n1, n2, k, minLen, valueDomainStart, subStringJudge, saBuilder, workspace, ri);
 		
 		/*
 		System.out.println(StringEscapeUtils.escapeJava(str1));
@@ -142,11 +180,25 @@ public class NOCSstr
 	/**
 	 * The strings must not contain the value 0 or 1
 	 */
-	public static List<CommonSubstring> compute(
+	public static CommonSubstrings compute(
+			ArrayList<Integer> seq1,
+			ArrayList<Integer> seq2,
+			int valueDomainStart,
+			SubstringJudgeInterface<ArrayList<Integer>> subStringJudge,
+			ReportItem ri)
+	{
+		return compute(seq1, seq2, valueDomainStart, subStringJudge, DEFAULT_SA_BUILDER, ri);
+	}
+	
+	/**
+	 * The strings must not contain the value 0 or 1
+	 */
+	public static CommonSubstrings compute(
 			ArrayList<Integer> seq1,
 			ArrayList<Integer> seq2,
 			int valueDomainStart,
 			SubstringJudgeInterface<ArrayList<Integer>> subStringJudge,
+			SuffixArrayBuilderInterface saBuilder,
 			ReportItem ri)
 	{
 		Timer t0 = null;
@@ -157,12 +209,14 @@ public class NOCSstr
 		int n2 = seq2.size();
 		int minLen = subStringJudge.getMinLength();
 		if ((n1 < minLen) || (n2 < minLen))
-			return Collections.emptyList();
+			return CommonSubstrings.EMPTY;
 		
 		// ---- Stitch input together
 		
+		Workspace workspace = new Workspace();
+		
 		int k = 0;
-		int[] input = new int[n1 + 1 + n2 + 1 + 3];
+		int[] input = workspace.input(n1 + 1 + n2 + 1 + 3, saBuilder);
 		for (int i = 0; i < n1; ++i)
 		{
 			int x = input[i] = seq1.get(i);
@@ -187,12 +241,12 @@ public class NOCSstr
 		
 		// ---- Do actual work
 		
-		return compute(input, seq1, n1, n2, k, minLen, valueDomainStart, subStringJudge, ri);
+		return compute(input, seq1, n1, n2, k, minLen, valueDomainStart, subStringJudge, saBuilder, workspace, ri);
 	}
 	
 	// =========================================================================
 	
-	private static <T> LinkedList<CommonSubstring> compute(
+	private static <T> CommonSubstrings compute(
 			int[] input,
 			T seq1,
 			int n1,
@@ -201,43 +255,59 @@ public class NOCSstr
 			int minLen,
 			int valueDomainStart,
 			SubstringJudgeInterface<T> subStringJudge,
+			SuffixArrayBuilderInterface saBuilder,
+			Workspace workspace,
 			ReportItem ri)
 	{
 		int n12 = n1 + 1 + n2 + 1;
 		
+		ReusingSuffixArrayBuilderInterface reusingBuilder =
+				(saBuilder instanceof ReusingSuffixArrayBuilderInterface) ?
+						(ReusingSuffixArrayBuilderInterface) saBuilder :
+						null;
+		
 		Timer t0 = null;
 		if (ri != null)
 			t0 = ri.startTimer("00.03.01b) SA");
 		
-		int[] sa = SuffixArray.compute(input, n12, k);
+		int[] sa = (reusingBuilder != null) ?
+				reusingBuilder.compute(input, n12, k, workspace.suffixArrays) :
+				saBuilder.compute(input, n12, k);
 		
 		if (t0 != null)
 			t0.stop();
 		
+		Cancellation.checkInterrupted();
+		
 		Timer t1 = null;
 		if (ri != null)
 			t1 = ri.startTimer("00.03.01c) LCP");
 		
-		int[] lcp = LongestCommonPrefix.compute(input, n12, valueDomainStart, sa);
+		int[] lcp = (reusingBuilder != null) ?
+				reusingBuilder.computeLcp(input, n12, valueDomainStart, sa, workspace.suffixArrays) :
+				saBuilder.computeLcp(input, n12, valueDomainStart, sa);
 		
 		if (t1 != null)
 			t1.stop();
 		
+		Cancellation.checkInterrupted();
+		
 		Timer t2 = null;
 		if (ri != null)
 			t2 = ri.startTimer("00.03.01d) bucketSort");
 		
-		LinkedList<CommonSubstring>[] buckets =
-				bucketSort(n1, n2, sa, lcp, minLen);
+		int candidateCount = bucketSort(n1, n2, sa, lcp, n12, minLen, workspace);
 		
 		if (t2 != null)
 			t2.stop();
 		
+		Cancellation.checkInterrupted();
+		
 		Timer t3 = null;
 		if (ri != null)
 			t3 = ri.startTimer("00.03.01e) greedyCover");
 		
-		LinkedList<CommonSubstring> greedyCover = greedyCover(n1, n2, buckets, minLen, seq1, subStringJudge);
+		CommonSubstrings greedyCover = greedyCover(n1, n2, sa, lcp, candidateCount, seq1, subStringJudge, workspace);
 		
 		if (t3 != null)
 			t3.stop();
@@ -245,28 +315,70 @@ public class NOCSstr
 		return greedyCover;
 	}
 	
-	private static <T> LinkedList<CommonSubstring>[] bucketSort(
+	/**
+	 * Counting sort of the candidate common substrings by descending length.
+	 * Candidates with the same length stay in suffix array order.
+	 * 
+	 * @param n
+	 *            The length of the suffix array and the LCP array.
+	 * @return The number of candidates. The suffix array indices of the
+	 *         candidates are stored in the workspace's candidate array. A
+	 *         candidate i is the common prefix of the suffixes sa[i - 1] and
+	 *         sa[i] with length lcp[i].
+	 */
+	private static int bucketSort(
 			int n1,
 			int n2,
 			int[] sa,
 			int[] lcp,
-			int minLen)
+			int n,
+			int minLen,
+			Workspace workspace)
 	{
-		@SuppressWarnings("unchecked")
-		LinkedList<CommonSubstring>[] buckets = new LinkedList[Math.min(n1, n2) + 1];
+		int maxLen = Math.min(n1, n2);
+		
+		// bucketStart[maxLen - len] is where candidates of length len go
+		int bucketCount = maxLen + 2;
+		int[] bucketStart = workspace.bucketStart(bucketCount);
+		
+		int i = nextCandidate(n1, sa, lcp, n, minLen, 0);
+		for (; i < n; i = nextCandidate(n1, sa, lcp, n, minLen, i + 1))
+			++bucketStart[maxLen - lcp[i] + 1];
+		
+		for (int b = 1; b < bucketCount; ++b)
+			bucketStart[b] += bucketStart[b - 1];
+		
+		int candidateCount = bucketStart[maxLen + 1];
+		int[] candidates = workspace.candidates(candidateCount);
 		
-		for (int i = 0; i < lcp.length; ++i)
+		i = nextCandidate(n1, sa, lcp, n, minLen, 0);
+		for (; i < n; i = nextCandidate(n1, sa, lcp, n, minLen, i + 1))
+			candidates[bucketStart[maxLen - lcp[i]]++] = i;
+		
+		return candidateCount;
+	}
+	
+	/**
+	 * @return The first suffix array index &gt;= i which is a candidate or n
+	 *         if there are no more candidates.
+	 */
+	private static int nextCandidate(
+			int n1,
+			int[] sa,
+			int[] lcp,
+			int n,
+			int minLen,
+			int i)
+	{
+		for (; i < n; ++i)
 		{
 			int len = lcp[i];
 			if (len < minLen)
 				continue;
 			
-			int start1 = sa[i - 1];
-			int start2 = sa[i];
-			
 			// Skip duplicates
 			int j = i + 1;
-			while ((j < lcp.length) && (lcp[j] == len))
+			while ((j < n) && (lcp[j] == len))
 				++j;
 			if (j > i + 1)
 			{
@@ -275,83 +387,63 @@ public class NOCSstr
 			}
 			
 			// Strings must be from both halves
-			boolean both = (start1 < n1) ^ (start2 < n1);
-			if (!both)
-				continue;
-			
-			if (start2 < start1)
-			{
-				int tmp = start2;
-				start2 = start1;
-				start1 = tmp;
-			}
-			
-			// Correct position to be relative to str2
-			start2 -= n1 + 1;
-			
-			getBucketForMod(buckets, len).add(
-					new CommonSubstring(start1, start2, len));
+			if ((sa[i - 1] < n1) ^ (sa[i] < n1))
+				return i;
 		}
-		
-		return buckets;
+		return n;
 	}
 	
-	private static LinkedList<CommonSubstring> getBucketForMod(
-			LinkedList<CommonSubstring>[] buckets, int i)
-	{
-		LinkedList<CommonSubstring> bucket = buckets[i];
-		if (bucket == null)
-			bucket = buckets[i] = new LinkedList<>();
-		return bucket;
-	}
-	
-	private static <T> LinkedList<CommonSubstring> greedyCover(
+	private static <T> CommonSubstrings greedyCover(
 			int n1,
 			int n2,
-			LinkedList<CommonSubstring>[] buckets,
-			int minLen,
+			int[] sa,
+			int[] lcp,
+			int candidateCount,
 			T seq1,
-			SubstringJudgeInterface<T> ssj)
+			SubstringJudgeInterface<T> ssj,
+			Workspace workspace)
 	{
-		boolean covered1[] = new boolean[n1];
-		boolean covered2[] = new boolean[n2];
+		boolean covered1[] = workspace.covered1(n1);
+		boolean covered2[] = workspace.covered2(n2);
+		int[] candidates = workspace.candidates;
 		
-		LinkedList<CommonSubstring> result = new LinkedList<>();
+		CommonSubstrings result = workspace.result();
 		
-		for (int i = buckets.length - 1; i >= minLen; --i)
+		for (int c = 0; c < candidateCount; ++c)
 		{
-			LinkedList<CommonSubstring> bucket = buckets[i];
-			if (bucket == null)
+			int i = candidates[c];
+			int start1 = Math.min(sa[i - 1], sa[i]);
+			int start2 = Math.max(sa[i - 1], sa[i]);
+			int len = lcp[i];
+			
+			// Correct position to be relative to str2
+			start2 -= n1 + 1;
+			
+			if (covered1[start1] || covered2[start2])
+				// This one is overlapping with an already accepted substring
+				// (and is therefore just a substring of the accepted substring)
+				continue;
+			
+			if (!ssj.isValid(seq1, start1, len))
 				continue;
 			
-			for (CommonSubstring cs : bucket)
+			for (int j = 0; j < len; ++j)
 			{
-				if (covered1[cs.start1] || covered2[cs.start2])
-					// This one is overlapping with an already accepted substring
-					// (and is therefore just a substring of the accepted substring)
-					continue;
-				
-				if (!ssj.isValid(seq1, cs.start1, cs.len))
-					continue;
-				
-				for (int j = 0; j < cs.len; ++j)
+				int k1 = start1 + j;
+				int k2 = start2 + j;
+				if (covered1[k1] || covered2[k2])
 				{
-					int k1 = cs.start1 + j;
-					int k2 = cs.start2 + j;
-					if (covered1[k1] || covered2[k2])
-					{
-						// This one runs into another accepted substring
-						// It cannot be a longer prefix to that substring because we sorted by size and
-						// are already done with the longer substring. Therefore this substring is only 
-						// a prefix in one of the strings but not in the other.
-						cs.len = j;
-						break;
-					}
-					covered1[k1] = covered2[k2] = true;
+					// This one runs into another accepted substring
+					// It cannot be a longer prefix to that substring because we sorted by size and
+					// are already done with the longer substring. Therefore this substring is only 
+					// a prefix in one of the strings but not in the other.
+					len = j;
+					break;
 				}
-				
-				result.add(cs);
+				covered1[k1] = covered2[k2] = true;
 			}
+			
+			result.add(start1, start2, len);
 		}
 		
 		return result;
@@ -359,6 +451,107 @@ public class NOCSstr
 	
 	// =========================================================================
 	
+	/**
+	 * The arrays (and the result) of NOCSstr.compute() kept between calls. A
+	 * workspace must not be used by several threads at the same time.
+	 */
+	public static final class Workspace
+	{
+		private final SuffixArrayWorkspace suffixArrays = new SuffixArrayWorkspace();
+		
+		private HashMap<Character, Integer> codes;
+		
+		private int[] input = new int[0];
+		
+		private int[] bucketStart = new int[0];
+		
+		private int[] candidates = new int[0];
+		
+		private boolean[] covered1 = new boolean[0];
+		
+		private boolean[] covered2 = new boolean[0];
+		
+		private CommonSubstrings result;
+		
+		Map<Character, Integer> codes()
+		{
+			if (codes == null)
+				codes = new HashMap<>(1024);
+			else
+				codes.clear();
+			return codes;
+		}
+		
+		/**
+		 * Builders that do not compute into a workspace expect the input to
+		 * have the exact length. The padding is cleared.
+		 */
+		int[] input(int size, SuffixArrayBuilderInterface saBuilder)
+		{
+			if (!(saBuilder instanceof ReusingSuffixArrayBuilderInterface))
+				return (input.length == size) ? clearPadding(input, size) : new int[size];
+			if (input.length < size)
+				input = new int[SuffixArrayWorkspace.grow(input.length, size)];
+			return clearPadding(input, size);
+		}
+		
+		private static int[] clearPadding(int[] input, int size)
+		{
+			input[size - 3] = input[size - 2] = input[size - 1] = 0;
+			return input;
+		}
+		
+		/** Cleared */
+		int[] bucketStart(int size)
+		{
+			if (bucketStart.length < size)
+				bucketStart = new int[SuffixArrayWorkspace.grow(bucketStart.length, size)];
+			else
+				Arrays.fill(bucketStart, 0, size, 0);
+			return bucketStart;
+		}
+		
+		int[] candidates(int size)
+		{
+			if (candidates.length < size)
+				candidates = new int[SuffixArrayWorkspace.grow(candidates.length, size)];
+			return candidates;
+		}
+		
+		/** Cleared */
+		boolean[] covered1(int size)
+		{
+			covered1 = cleared(covered1, size);
+			return covered1;
+		}
+		
+		/** Cleared */
+		boolean[] covered2(int size)
+		{
+			covered2 = cleared(covered2, size);
+			return covered2;
+		}
+		
+		private static boolean[] cleared(boolean[] covered, int size)
+		{
+			if (covered.length < size)
+				return new boolean[SuffixArrayWorkspace.grow(covered.length, size)];
+			Arrays.fill(covered, 0, size, false);
+			return covered;
+		}
+		
+		CommonSubstrings result()
+		{
+			if (result == null)
+				result = new CommonSubstrings(16);
+			else
+				result.reset();
+			return result;
+		}
+	}
+	
+	// =========================================================================
+	
 	public static final class CommonSubstring
 			implements
 				Comparable<CommonSubstring>
@@ -388,4 +581,85 @@ public class NOCSstr
 			return "CommonSubstring [start1=" + start1 + ", start2=" + start2 + ", len=" + len + "]";
 		}
 	}
+	
+	/**
+	 * The common substrings found by NOCSstr.compute(). Stored as packed
+	 * (start1, start2, len) triples. Use the getters to read the substrings
+	 * without creating a CommonSubstring object for each of them.
+	 */
+	public static final class CommonSubstrings
+			extends
+				AbstractList<CommonSubstring>
+			implements
+				RandomAccess
+	{
+		static final CommonSubstrings EMPTY = new CommonSubstrings(0);
+		
+		private int[] data;
+		
+		private int size;
+		
+		CommonSubstrings(int initialCapacity)
+		{
+			this.data = new int[3 * initialCapacity];
+		}
+		
+		void reset()
+		{
+			size = 0;
+		}
+		
+		void add(int start1, int start2, int len)
+		{
+			int i = 3 * size;
+			if (i == data.length)
+				data = Arrays.copyOf(data, Math.max(3 * 16, 2 * data.length));
+			data[i] = start1;
+			data[i + 1] = start2;
+			data[i + 2] = len;
+			++size;
+		}
+		
+		@Override
+		public int size()
+		{
+			return size;
+		}
+		
+		public int getStart1(int index)
+		{
+			checkIndex(index);
+			return data[3 * index];
+		}
+		
+		public int getStart2(int index)
+		{
+			checkIndex(index);
+			return data[3 * index + 1];
+		}
+		
+		public int getLength(int index)
+		{
+			checkIndex(index);
+			return data[3 * index + 2];
+		}
+		
+		/**
+		 * Creates a copy of the substring at the given index.
+		 */
+		@Override
+		public CommonSubstring get(int index)
+		{
+			return new CommonSubstring(
+					getStart1(index),
+					getStart2(index),
+					getLength(index));
+		}
+		
+		private void checkIndex(int index)
+		{
+			if ((index < 0) || (index >= size))
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
 }
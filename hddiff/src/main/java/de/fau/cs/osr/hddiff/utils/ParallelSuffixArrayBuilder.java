@@ -0,0 +1,77 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds the suffix array and the LCP array of long inputs in a fork-join
+ * pool. Inputs shorter than the given threshold are passed on to a sequential
+ * builder since the parallel construction does more work in total and only
+ * pays off if the sequence is large.
+ */
+public final class ParallelSuffixArrayBuilder
+		implements
+			SuffixArrayBuilderInterface
+{
+	private final ForkJoinPool pool;
+
+	private final int minParallelLength;
+
+	private final SuffixArrayBuilderInterface sequential;
+
+	// =========================================================================
+
+	/**
+	 * @param minParallelLength
+	 *            Inputs of at least this length are processed in the pool.
+	 * @param sequential
+	 *            Used for shorter inputs.
+	 */
+	public ParallelSuffixArrayBuilder(
+			ForkJoinPool pool,
+			int minParallelLength,
+			SuffixArrayBuilderInterface sequential)
+	{
+		this.pool = pool;
+		this.minParallelLength = minParallelLength;
+		this.sequential = sequential;
+	}
+
+	// =========================================================================
+
+	@Override
+	public int[] compute(int[] seq, int len, int k)
+	{
+		if (len < minParallelLength)
+			return sequential.compute(seq, len, k);
+		return SuffixArrayPrefixDoubling.compute(pool, seq, len, k);
+	}
+
+	@Override
+	public int[] computeLcp(
+			int[] seq,
+			int len,
+			int valueDomainStart,
+			int[] suffixArray)
+	{
+		if (len < minParallelLength)
+			return sequential.computeLcp(seq, len, valueDomainStart, suffixArray);
+		return LongestCommonPrefix.computeParallel(pool, seq, len, valueDomainStart, suffixArray);
+	}
+}
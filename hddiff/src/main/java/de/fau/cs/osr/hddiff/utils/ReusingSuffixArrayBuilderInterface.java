@@ -0,0 +1,49 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+/**
+ * A suffix array builder that can compute into a SuffixArrayWorkspace
+ * instead of allocating its results and its working storage.
+ */
+public interface ReusingSuffixArrayBuilderInterface
+		extends
+			SuffixArrayBuilderInterface
+{
+	/**
+	 * Same as compute(seq, len, k) but seq may be longer than len plus the
+	 * three padding elements (which must be 0).
+	 * 
+	 * @return The suffix array in the first len elements of an array owned by
+	 *         the workspace.
+	 */
+	int[] compute(int[] seq, int len, int k, SuffixArrayWorkspace workspace);
+
+	/**
+	 * Same as computeLcp(seq, len, valueDomainStart, suffixArray).
+	 * 
+	 * @return The LCP array in the first len elements of an array owned by
+	 *         the workspace.
+	 */
+	int[] computeLcp(
+			int[] seq,
+			int len,
+			int valueDomainStart,
+			int[] suffixArray,
+			SuffixArrayWorkspace workspace);
+}
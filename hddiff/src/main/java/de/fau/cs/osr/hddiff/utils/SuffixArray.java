@@ -62,8 +62,36 @@ public class SuffixArray
 		return suffixArray;
 	}
 	
+	/**
+	 * Computes the suffix array into the given workspace. Only the result is
+	 * taken from the workspace, the recursion allocates its own arrays.
+	 * 
+	 * @param seq
+	 *            Needs a padding of three elements after len!
+	 * @return The suffix array in the first len elements of an array owned by
+	 *         the workspace.
+	 */
+	public static int[] compute(
+			int[] seq,
+			int len,
+			int k,
+			SuffixArrayWorkspace workspace)
+	{
+		if (seq.length < len + 3)
+			throw new IllegalArgumentException();
+		
+		int[] suffixArray = workspace.suffixArray(len + 3);
+		suffixArray[len] = suffixArray[len + 1] = suffixArray[len + 2] = 0;
+		
+		suffixArrayInternal(seq, suffixArray, len, k);
+		
+		return suffixArray;
+	}
+	
 	static void suffixArrayInternal(int[] s, int[] SA, int n, int K)
 	{
+		Cancellation.checkInterrupted();
+		
 		int n0 = (n + 2) / 3;
 		int n1 = (n + 1) / 3;
 		int n2 = n / 3;
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+/**
+ * The suffix array construction algorithms that come with HDDiff.
+ */
+public enum SuffixArrayAlgorithm
+		implements
+			ReusingSuffixArrayBuilderInterface
+{
+	/**
+	 * Difference cover modulo 3 (Kärkkäinen and Sanders).
+	 */
+	DC3
+	{
+		@Override
+		public int[] compute(int[] seq, int len, int k)
+		{
+			return SuffixArray.compute(seq, len, k);
+		}
+
+		@Override
+		public int[] compute(
+				int[] seq,
+				int len,
+				int k,
+				SuffixArrayWorkspace workspace)
+		{
+			return SuffixArray.compute(seq, len, k, workspace);
+		}
+	},
+
+	/**
+	 * Induced sorting (Nong, Zhang and Chan).
+	 */
+	SAIS
+	{
+		@Override
+		public int[] compute(int[] seq, int len, int k)
+		{
+			return SuffixArraySais.compute(seq, len, k);
+		}
+
+		@Override
+		public int[] compute(
+				int[] seq,
+				int len,
+				int k,
+				SuffixArrayWorkspace workspace)
+		{
+			return SuffixArraySais.compute(seq, len, k, workspace);
+		}
+	};
+
+	@Override
+	public int[] computeLcp(
+			int[] seq,
+			int len,
+			int valueDomainStart,
+			int[] suffixArray)
+	{
+		return LongestCommonPrefix.compute(seq, len, valueDomainStart, suffixArray);
+	}
+
+	@Override
+	public int[] computeLcp(
+			int[] seq,
+			int len,
+			int valueDomainStart,
+			int[] suffixArray,
+			SuffixArrayWorkspace workspace)
+	{
+		return LongestCommonPrefix.compute(seq, len, valueDomainStart, suffixArray, workspace);
+	}
+}
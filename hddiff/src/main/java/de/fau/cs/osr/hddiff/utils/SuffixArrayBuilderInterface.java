@@ -0,0 +1,47 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+/**
+ * Computes the suffix array and the longest common prefix (LCP) array of an
+ * integer sequence.
+ */
+public interface SuffixArrayBuilderInterface
+{
+	/**
+	 * @param seq
+	 *            Needs a padding of three elements at the end!
+	 * @param len
+	 *            Length of seq without padding elements.
+	 * @param k
+	 *            Size of the alphabet.
+	 * @return The suffix array plus three padding elements at the end that can
+	 *         be ignored.
+	 */
+	int[] compute(int[] seq, int len, int k);
+
+	/**
+	 * Same as LongestCommonPrefix.compute(seq, len, valueDomainStart,
+	 * suffixArray).
+	 */
+	int[] computeLcp(
+			int[] seq,
+			int len,
+			int valueDomainStart,
+			int[] suffixArray);
+}
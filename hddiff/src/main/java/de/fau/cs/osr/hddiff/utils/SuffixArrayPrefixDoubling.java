@@ -0,0 +1,360 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Find the suffix array SA of s[0..n-1] in {0..K}^n by parallel prefix
+ * doubling.
+ * 
+ * <p>
+ * Same contract as SuffixArray.compute(): The input needs three padding
+ * elements and the returned array is three elements longer than the input.
+ * 
+ * <p>
+ * The suffixes are first bucketed by their first element. In round h every
+ * group of suffixes that still share a common prefix of length h is sorted by
+ * the rank of the suffix h positions further down. Groups are independent of
+ * each other and are sorted concurrently, large groups are additionally
+ * sorted with a parallel merge sort. Already sorted groups are not touched
+ * again.
+ * 
+ * <p>
+ * Implemented according to:
+ * 
+ * <pre>
+ * Larsson, N. Jesper, and Kunihiko Sadakane.
+ * "Faster suffix sorting."
+ * Theoretical Computer Science 387.3 (2007): 258-272.
+ * </pre>
+ */
+public class SuffixArrayPrefixDoubling
+{
+	/** Groups up to this size are sorted sequentially */
+	private static final int SORT_GRAIN = 1 << 13;
+
+	/** Tasks are not split if their groups contain less suffixes */
+	private static final int TASK_GRAIN = 1 << 13;
+
+	// =========================================================================
+
+	/**
+	 * @param pool
+	 *            The pool to sort in.
+	 * @param seq
+	 *            Needs a padding of three elements at the end!
+	 * @param len
+	 *            Length of seq without padding elements.
+	 * @param k
+	 *            Size of the alphabet.
+	 * @return The suffix array plus three padding elements at the end that can
+	 *         be ignored.
+	 */
+	public static int[] compute(ForkJoinPool pool, int[] seq, int len, int k)
+	{
+		int n = seq.length - 3;
+		if (len != n)
+			throw new IllegalArgumentException();
+
+		Context ctx = new Context(n);
+		ctx.bucketByFirstElement(seq, k);
+
+		for (int h = 1; ctx.groupCount > 0; h *= 2)
+		{
+			Cancellation.checkInterrupted();
+			pool.invoke(new GroupTask(ctx, 0, ctx.groupCount, h, true));
+			pool.invoke(new GroupTask(ctx, 0, ctx.groupCount, h, false));
+			ctx.collectUnsortedGroups();
+		}
+
+		return ctx.sa;
+	}
+
+	// =========================================================================
+
+	private static final class Context
+	{
+		private final int n;
+
+		private final int[] sa;
+
+		/** The start of the group a suffix belongs to */
+		private final int[] rank;
+
+		/** For the first suffix of a group: The end of the group (exclusive) */
+		private final int[] groupEnd;
+
+		/** Sort keys: rank of suffix i+h in the upper, i in the lower half */
+		private final long[] keys;
+
+		private final long[] mergeBuffer;
+
+		/** Starts of the groups that are not yet sorted */
+		private int[] groups;
+
+		/** groupOffsets[i] is the number of suffixes in groups[0..i-1] */
+		private int[] groupOffsets;
+
+		private int groupCount;
+
+		private int[] nextGroups;
+
+		private int[] nextGroupOffsets;
+
+		private int nextGroupCount;
+
+		public Context(int n)
+		{
+			this.n = n;
+			this.sa = new int[n + 3];
+			this.rank = new int[n];
+			this.groupEnd = new int[n];
+			this.keys = new long[n];
+			this.mergeBuffer = (n > SORT_GRAIN) ? new long[n] : null;
+
+			int maxGroups = n / 2 + 1;
+			this.groups = new int[maxGroups];
+			this.groupOffsets = new int[maxGroups + 1];
+			this.nextGroups = new int[maxGroups];
+			this.nextGroupOffsets = new int[maxGroups + 1];
+		}
+
+		/**
+		 * Counting sort of all suffixes by their first element.
+		 */
+		public void bucketByFirstElement(int[] seq, int k)
+		{
+			int[] bucket = new int[k + 2];
+			for (int i = 0; i < n; ++i)
+				++bucket[seq[i] + 1];
+			for (int c = 1; c < bucket.length; ++c)
+				bucket[c] += bucket[c - 1];
+
+			for (int c = 0; c < bucket.length - 1; ++c)
+			{
+				int start = bucket[c];
+				int end = bucket[c + 1];
+				if (end > start)
+				{
+					groupEnd[start] = end;
+					if (end - start > 1)
+						addGroup(start, end);
+				}
+			}
+
+			for (int i = 0; i < n; ++i)
+				rank[i] = bucket[seq[i]];
+			for (int i = 0; i < n; ++i)
+				sa[bucket[seq[i]]++] = i;
+
+			swapGroups();
+		}
+
+		public void sortGroup(int start, int h)
+		{
+			int end = groupEnd[start];
+			for (int x = start; x < end; ++x)
+			{
+				int s = sa[x];
+				long next = (s + h < n) ? rank[s + h] + 1 : 0;
+				keys[x] = (next << 32) | s;
+			}
+
+			if (end - start > SORT_GRAIN)
+				new MergeSortTask(keys, mergeBuffer, start, end).invoke();
+			else
+				Arrays.sort(keys, start, end);
+
+			for (int x = start; x < end; ++x)
+				sa[x] = (int) keys[x];
+		}
+
+		/**
+		 * Splits a sorted group into subgroups of suffixes with equal keys.
+		 * Must not run before all groups of the round have been sorted since
+		 * the sort keys are derived from the ranks.
+		 */
+		public void rankGroup(int start)
+		{
+			int end = groupEnd[start];
+			int subStart = start;
+			for (int x = start; x < end; ++x)
+			{
+				if ((x > start) && ((keys[x] >>> 32) != (keys[x - 1] >>> 32)))
+				{
+					groupEnd[subStart] = x;
+					subStart = x;
+				}
+				rank[sa[x]] = subStart;
+			}
+			groupEnd[subStart] = end;
+		}
+
+		public void collectUnsortedGroups()
+		{
+			for (int i = 0; i < groupCount; ++i)
+			{
+				int start = groups[i];
+				int end = start + (groupOffsets[i + 1] - groupOffsets[i]);
+				for (int x = start; x < end;)
+				{
+					int subEnd = groupEnd[x];
+					if (subEnd - x > 1)
+						addGroup(x, subEnd);
+					x = subEnd;
+				}
+			}
+			swapGroups();
+		}
+
+		private void addGroup(int start, int end)
+		{
+			nextGroups[nextGroupCount] = start;
+			nextGroupOffsets[nextGroupCount + 1] =
+					nextGroupOffsets[nextGroupCount] + (end - start);
+			++nextGroupCount;
+		}
+
+		private void swapGroups()
+		{
+			int[] tmp = groups;
+			groups = nextGroups;
+			nextGroups = tmp;
+
+			tmp = groupOffsets;
+			groupOffsets = nextGroupOffsets;
+			nextGroupOffsets = tmp;
+
+			groupCount = nextGroupCount;
+			nextGroupCount = 0;
+		}
+	}
+
+	// =========================================================================
+
+	/**
+	 * Sorts (sort == true) or ranks (sort == false) the unsorted groups
+	 * groups[lo..hi-1].
+	 */
+	private static final class GroupTask
+			extends
+				RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Context ctx;
+
+		private final int lo;
+
+		private final int hi;
+
+		private final int h;
+
+		private final boolean sort;
+
+		public GroupTask(Context ctx, int lo, int hi, int h, boolean sort)
+		{
+			this.ctx = ctx;
+			this.lo = lo;
+			this.hi = hi;
+			this.h = h;
+			this.sort = sort;
+		}
+
+		@Override
+		protected void compute()
+		{
+			int[] offsets = ctx.groupOffsets;
+			if ((hi - lo > 1) && (offsets[hi] - offsets[lo] > TASK_GRAIN))
+			{
+				// Split at half the suffixes, not at half the groups
+				int half = (offsets[lo] + offsets[hi]) >>> 1;
+				int mid = Arrays.binarySearch(offsets, lo + 1, hi, half);
+				if (mid < 0)
+					mid = -mid - 1;
+				mid = Math.max(lo + 1, Math.min(hi - 1, mid));
+
+				invokeAll(
+						new GroupTask(ctx, lo, mid, h, sort),
+						new GroupTask(ctx, mid, hi, h, sort));
+				return;
+			}
+
+			for (int i = lo; i < hi; ++i)
+			{
+				if (sort)
+					ctx.sortGroup(ctx.groups[i], h);
+				else
+					ctx.rankGroup(ctx.groups[i]);
+			}
+		}
+	}
+
+	private static final class MergeSortTask
+			extends
+				RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final long[] a;
+
+		private final long[] buffer;
+
+		private final int from;
+
+		private final int to;
+
+		public MergeSortTask(long[] a, long[] buffer, int from, int to)
+		{
+			this.a = a;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from <= SORT_GRAIN)
+			{
+				Arrays.sort(a, from, to);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(
+					new MergeSortTask(a, buffer, from, mid),
+					new MergeSortTask(a, buffer, mid, to));
+
+			int i = from;
+			int j = mid;
+			int o = from;
+			while ((i < mid) && (j < to))
+				buffer[o++] = (a[i] <= a[j]) ? a[i++] : a[j++];
+			while (i < mid)
+				buffer[o++] = a[i++];
+			while (j < to)
+				buffer[o++] = a[j++];
+
+			System.arraycopy(buffer, from, a, from, to - from);
+		}
+	}
+}
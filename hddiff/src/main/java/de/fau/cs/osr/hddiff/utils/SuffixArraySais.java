@@ -0,0 +1,329 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+/**
+ * Find the suffix array SA of s[0..n-1] in {0..K}^n by induced sorting.
+ * 
+ * <p>
+ * Same contract as SuffixArray.compute(): The input needs three padding
+ * elements and the returned array is three elements longer than the input.
+ * Usually faster than DC3 and with a smaller working set since it sorts in
+ * place in the suffix array and does not allocate temporary arrays per radix
+ * pass.
+ * 
+ * <p>
+ * Implemented according to:
+ * 
+ * <pre>
+ * Nong, Ge, Sen Zhang, and Wai Hong Chan.
+ * "Two efficient algorithms for linear time suffix array construction."
+ * IEEE Transactions on Computers 60.10 (2011): 1471-1484.
+ * </pre>
+ */
+public class SuffixArraySais
+{
+	/**
+	 * @param seq
+	 *            Needs a padding of three elements at the end!
+	 * @param len
+	 *            Length of seq without padding elements.
+	 * @param k
+	 *            Size of the alphabet.
+	 * @return The suffix array plus three padding elements at the end that can
+	 *         be ignored.
+	 */
+	public static int[] compute(int[] seq, int len, int k)
+	{
+		int n = seq.length - 3;
+		if (len != n)
+			throw new IllegalArgumentException();
+
+		return compute(seq, n, k, new int[n + 3], null);
+	}
+
+	/**
+	 * Computes the suffix array with the working storage and the result taken
+	 * from the given workspace.
+	 * 
+	 * @param seq
+	 *            Needs a padding of three elements after len!
+	 * @return The suffix array in the first len elements of an array owned by
+	 *         the workspace.
+	 */
+	public static int[] compute(
+			int[] seq,
+			int len,
+			int k,
+			SuffixArrayWorkspace workspace)
+	{
+		if (seq.length < len + 3)
+			throw new IllegalArgumentException();
+
+		return compute(seq, len, k, workspace.suffixArray(len + 3), workspace);
+	}
+
+	private static int[] compute(
+			int[] seq,
+			int n,
+			int k,
+			int[] suffixArray,
+			SuffixArrayWorkspace workspace)
+	{
+		if (isSentinelTerminated(seq, n))
+		{
+			sais(seq, 0, suffixArray, n, k, workspace, 0);
+			suffixArray[n] = suffixArray[n + 1] = suffixArray[n + 2] = 0;
+			return suffixArray;
+		}
+
+		/**
+		 * SA-IS needs a unique smallest element at the end. We append a
+		 * virtual one by shifting all values up by one. The sentinel's suffix
+		 * ends up in front and is dropped afterwards.
+		 */
+		int[] s = (workspace != null) ? workspace.shifted(n + 1) : new int[n + 1];
+		for (int i = 0; i < n; ++i)
+			s[i] = seq[i] + 1;
+		s[n] = 0;
+
+		sais(s, 0, suffixArray, n + 1, k + 1, workspace, 0);
+		System.arraycopy(suffixArray, 1, suffixArray, 0, n);
+		suffixArray[n] = suffixArray[n + 1] = suffixArray[n + 2] = 0;
+		return suffixArray;
+	}
+
+	private static boolean isSentinelTerminated(int[] seq, int n)
+	{
+		if (n < 2)
+			return false;
+		int last = seq[n - 1];
+		for (int i = 0; i < n - 1; ++i)
+		{
+			if (seq[i] <= last)
+				return false;
+		}
+		return true;
+	}
+
+	// =========================================================================
+
+	/**
+	 * @param s
+	 *            The string is s[sOfs..sOfs+n-1]. The last element must be the
+	 *            unique smallest element.
+	 * @param sa
+	 *            Receives the suffix array in sa[0..n-1]. May be the same array
+	 *            as s as long as the ranges do not overlap.
+	 * @param k
+	 *            The largest value in the string.
+	 * @param workspace
+	 *            Provides the working storage of each recursion level. If
+	 *            null, it is allocated.
+	 */
+	private static void sais(
+			int[] s,
+			int sOfs,
+			int[] sa,
+			int n,
+			int k,
+			SuffixArrayWorkspace workspace,
+			int depth)
+	{
+		Cancellation.checkInterrupted();
+
+		if (n == 1)
+		{
+			sa[0] = 0;
+			return;
+		}
+
+		// Classify suffixes: true = S-type, false = L-type
+		boolean[] t = (workspace != null) ? workspace.types(depth, n) : new boolean[n];
+		t[n - 1] = true;
+		for (int i = n - 2; i >= 0; --i)
+		{
+			int c0 = s[sOfs + i];
+			int c1 = s[sOfs + i + 1];
+			t[i] = (c0 < c1) || ((c0 == c1) && t[i + 1]);
+		}
+
+		int[] bkt = (workspace != null) ? workspace.buckets(depth, k + 1) : new int[k + 1];
+
+		// Stage 1: Sort LMS substrings
+		getBuckets(s, sOfs, bkt, n, k, true);
+		for (int i = 0; i < n; ++i)
+			sa[i] = -1;
+		for (int i = 1; i < n; ++i)
+		{
+			if (isLms(t, i))
+				sa[--bkt[s[sOfs + i]]] = i;
+		}
+
+		induceL(t, sa, s, sOfs, bkt, n, k);
+		induceS(t, sa, s, sOfs, bkt, n, k);
+
+		// Compact sorted LMS substrings into the first n1 items
+		int n1 = 0;
+		for (int i = 0; i < n; ++i)
+		{
+			if (isLms(t, sa[i]))
+				sa[n1++] = sa[i];
+		}
+
+		// Name the LMS substrings
+		for (int i = n1; i < n; ++i)
+			sa[i] = -1;
+
+		int name = 0;
+		int prev = -1;
+		for (int i = 0; i < n1; ++i)
+		{
+			int pos = sa[i];
+			boolean diff = false;
+			for (int d = 0; d < n; ++d)
+			{
+				if ((prev == -1) ||
+						(s[sOfs + pos + d] != s[sOfs + prev + d]) ||
+						(t[pos + d] != t[prev + d]))
+				{
+					diff = true;
+					break;
+				}
+				else if ((d > 0) && (isLms(t, pos + d) || isLms(t, prev + d)))
+				{
+					break;
+				}
+			}
+
+			if (diff)
+			{
+				++name;
+				prev = pos;
+			}
+
+			sa[n1 + pos / 2] = name - 1;
+		}
+
+		for (int i = n - 1, j = n - 1; i >= n1; --i)
+		{
+			if (sa[i] >= 0)
+				sa[j--] = sa[i];
+		}
+
+		// Stage 2: Sort the reduced string s1 = sa[n-n1..n-1] into sa[0..n1-1]
+		int s1Ofs = n - n1;
+		if (name < n1)
+		{
+			sais(sa, s1Ofs, sa, n1, name - 1, workspace, depth + 1);
+		}
+		else
+		{
+			for (int i = 0; i < n1; ++i)
+				sa[sa[s1Ofs + i]] = i;
+		}
+
+		// Stage 3: Induce the suffix array from the sorted LMS suffixes
+		for (int i = 1, j = 0; i < n; ++i)
+		{
+			if (isLms(t, i))
+				sa[s1Ofs + j++] = i;
+		}
+		for (int i = 0; i < n1; ++i)
+			sa[i] = sa[s1Ofs + sa[i]];
+		for (int i = n1; i < n; ++i)
+			sa[i] = -1;
+
+		getBuckets(s, sOfs, bkt, n, k, true);
+		for (int i = n1 - 1; i >= 0; --i)
+		{
+			int j = sa[i];
+			sa[i] = -1;
+			sa[--bkt[s[sOfs + j]]] = j;
+		}
+
+		induceL(t, sa, s, sOfs, bkt, n, k);
+		induceS(t, sa, s, sOfs, bkt, n, k);
+	}
+
+	private static boolean isLms(boolean[] t, int i)
+	{
+		return (i > 0) && t[i] && !t[i - 1];
+	}
+
+	/**
+	 * Computes the start (end == false) or the end (end == true) of each
+	 * character's bucket.
+	 */
+	private static void getBuckets(
+			int[] s,
+			int sOfs,
+			int[] bkt,
+			int n,
+			int k,
+			boolean end)
+	{
+		for (int i = 0; i <= k; ++i)
+			bkt[i] = 0;
+		for (int i = 0; i < n; ++i)
+			++bkt[s[sOfs + i]];
+
+		int sum = 0;
+		for (int i = 0; i <= k; ++i)
+		{
+			sum += bkt[i];
+			bkt[i] = end ? sum : sum - bkt[i];
+		}
+	}
+
+	private static void induceL(
+			boolean[] t,
+			int[] sa,
+			int[] s,
+			int sOfs,
+			int[] bkt,
+			int n,
+			int k)
+	{
+		getBuckets(s, sOfs, bkt, n, k, false);
+		for (int i = 0; i < n; ++i)
+		{
+			int j = sa[i] - 1;
+			if ((j >= 0) && !t[j])
+				sa[bkt[s[sOfs + j]]++] = j;
+		}
+	}
+
+	private static void induceS(
+			boolean[] t,
+			int[] sa,
+			int[] s,
+			int sOfs,
+			int[] bkt,
+			int n,
+			int k)
+	{
+		getBuckets(s, sOfs, bkt, n, k, true);
+		for (int i = n - 1; i >= 0; --i)
+		{
+			int j = sa[i] - 1;
+			if ((j >= 0) && t[j])
+				sa[--bkt[s[sOfs + j]]] = j;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import java.util.ArrayList;
+
+/**
+ * Arrays that suffix array and LCP construction keep between calls. The
+ * arrays grow to the largest input seen and are never shrunk.
+ * 
+ * <p>
+ * The arrays returned by a builder that computes into a workspace belong to
+ * the workspace: they are overwritten by the next computation and can be
+ * longer than requested. A workspace must not be used by several threads at
+ * the same time.
+ */
+public final class SuffixArrayWorkspace
+{
+	private static final int[] NO_INTS = new int[0];
+
+	// =========================================================================
+
+	private int[] suffixArray = NO_INTS;
+
+	private int[] lcp = NO_INTS;
+
+	private int[] rank = NO_INTS;
+
+	private int[] shifted = NO_INTS;
+
+	/** SA-IS: suffix types per recursion level */
+	private final ArrayList<boolean[]> types = new ArrayList<>();
+
+	/** SA-IS: buckets per recursion level */
+	private final ArrayList<int[]> buckets = new ArrayList<>();
+
+	// =========================================================================
+
+	int[] suffixArray(int size)
+	{
+		if (suffixArray.length < size)
+			suffixArray = new int[grow(suffixArray.length, size)];
+		return suffixArray;
+	}
+
+	int[] lcp(int size)
+	{
+		if (lcp.length < size)
+			lcp = new int[grow(lcp.length, size)];
+		return lcp;
+	}
+
+	int[] rank(int size)
+	{
+		if (rank.length < size)
+			rank = new int[grow(rank.length, size)];
+		return rank;
+	}
+
+	int[] shifted(int size)
+	{
+		if (shifted.length < size)
+			shifted = new int[grow(shifted.length, size)];
+		return shifted;
+	}
+
+	boolean[] types(int depth, int size)
+	{
+		while (types.size() <= depth)
+			types.add(new boolean[0]);
+		boolean[] t = types.get(depth);
+		if (t.length < size)
+		{
+			t = new boolean[grow(t.length, size)];
+			types.set(depth, t);
+		}
+		return t;
+	}
+
+	int[] buckets(int depth, int size)
+	{
+		while (buckets.size() <= depth)
+			buckets.add(NO_INTS);
+		int[] b = buckets.get(depth);
+		if (b.length < size)
+		{
+			b = new int[grow(b.length, size)];
+			buckets.set(depth, b);
+		}
+		return b;
+	}
+
+	static int grow(int length, int minLength)
+	{
+		return Math.max(minLength, 2 * length);
+	}
+}
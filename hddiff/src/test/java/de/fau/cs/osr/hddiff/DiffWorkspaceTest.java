@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptListener;
+
+public class DiffWorkspaceTest
+{
+	@Test
+	public void testReusedWorkspaceYieldsSameScripts() throws Exception
+	{
+		DiffWorkspace workspace = new DiffWorkspace();
+
+		// Growing and shrinking documents, the buffers are never shrunk
+		int[] sizes = { 50, 2000, 300, 1000, 20 };
+		for (int i = 0; i < sizes.length; ++i)
+		{
+			TestNode doc = TestDocuments.generate(i, sizes[i]);
+			TestNode rev = TestDocuments.revise(doc, i + 1000, 0.1);
+
+			List<EditOp> expected = HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), TestDocuments.options());
+
+			CollectingListener reused = new CollectingListener();
+			HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), TestDocuments.options(), null, workspace, reused);
+
+			assertEquals(expected.toString(), reused.editScript.toString());
+		}
+	}
+
+	@Test
+	public void testWorkspaceCannotBeUsedByTwoDiffsAtOnce() throws Exception
+	{
+		final DiffWorkspace workspace = new DiffWorkspace();
+		final TestNode doc = TestDocuments.generate(1, 300);
+		final TestNode rev = TestDocuments.revise(doc, 2, 0.1);
+		final List<RuntimeException> errors = new ArrayList<>();
+
+		HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), TestDocuments.options(), null, workspace, new EditScriptListener()
+		{
+			@Override
+			public void editOp(EditOp op)
+			{
+				if (!errors.isEmpty())
+					return;
+				try
+				{
+					HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), TestDocuments.options(), null, workspace, new CollectingListener());
+					errors.add(null);
+				}
+				catch (IllegalStateException e)
+				{
+					errors.add(e);
+				}
+			}
+		});
+
+		assertEquals(1, errors.size());
+		assertNotNull(errors.get(0));
+
+		// The failed attempt does not release the workspace of the first diff
+		CollectingListener listener = new CollectingListener();
+		HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), TestDocuments.options(), null, workspace, listener);
+		assertFalse(listener.editScript.isEmpty());
+	}
+
+	// =========================================================================
+
+	private static final class CollectingListener
+			implements
+				EditScriptListener
+	{
+		private final List<EditOp> editScript = new ArrayList<>();
+
+		@Override
+		public void editOp(EditOp op)
+		{
+			editScript.add(op);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+
+public class HDDiffChainTest
+{
+	@Test
+	public void testStepsMatchIndependentDiffs() throws Exception
+	{
+		TestNode first = TestDocuments.generate(1, 500);
+		HDDiffChain chain = new HDDiffChain(first, TestDocuments.options());
+
+		TestNode current = first;
+		for (int step = 0; step < 6; ++step)
+		{
+			TestNode next = TestDocuments.revise(current, 100 + step, 0.05);
+			String nextTree = next.toTreeString();
+
+			TestNode expected1 = current.copyDeep();
+			TestNode expected2 = next.copyDeep();
+			List<EditOp> expected = HDDiff.editScript(expected1, expected2, TestDocuments.options());
+
+			List<EditOp> editScript = chain.diffNext(next);
+			assertEquals(TestDocuments.render(expected), TestDocuments.render(editScript));
+
+			// The new revision enters the next step unsplit
+			assertEquals(nextTree, next.toTreeString());
+
+			// Applied to the old revision, the script yields the new one
+			new EditScriptManager(editScript).apply();
+			current.compareNativeDeep(expected2);
+			assertEquals(next.toMergedString(), current.toMergedString());
+
+			current = next;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+
+public class PreparedTreeTest
+{
+	@Test
+	public void testResultsDoNotDependOnOrderOfDiffs() throws Exception
+	{
+		TestNode doc = TestDocuments.generate(1, 500);
+		List<TestNode> candidates = new ArrayList<>();
+		for (int i = 0; i < 6; ++i)
+			candidates.add(TestDocuments.revise(doc, 100 + i, 0.1));
+
+		// Each candidate diffed against a freshly prepared tree
+		List<String> expected = new ArrayList<>();
+		for (TestNode candidate : candidates)
+		{
+			PreparedTree fresh = HDDiff.prepare(doc.copyDeep(), TestDocuments.options());
+			List<EditOp> editScript = fresh.editScript(candidate.copyDeep());
+			expected.add(TestDocuments.render(editScript));
+
+			new EditScriptManager(editScript).apply();
+			assertEquals(candidate.toMergedString(), ((TestNode) fresh.getRoot()).toMergedString());
+		}
+
+		// Forward and backward through the same prepared tree
+		PreparedTree prepared = HDDiff.prepare(doc.copyDeep(), TestDocuments.options());
+		String tree = ((TestNode) prepared.getRoot()).toTreeString();
+		for (int i = 0; i < candidates.size(); ++i)
+			assertEquals(expected.get(i), TestDocuments.render(prepared.editScript(candidates.get(i).copyDeep())));
+		for (int i = candidates.size() - 1; i >= 0; --i)
+			assertEquals(expected.get(i), TestDocuments.render(prepared.editScript(candidates.get(i).copyDeep())));
+
+		// The prepared tree is never split
+		assertEquals(tree, ((TestNode) prepared.getRoot()).toTreeString());
+	}
+
+	@Test
+	public void testScriptTurnsPreparedTreeIntoOtherTree() throws Exception
+	{
+		TestNode doc = TestDocuments.generate(2, 500);
+		TestNode rev = TestDocuments.revise(doc, 3, 0.1);
+
+		PreparedTree prepared = HDDiff.prepare(doc, TestDocuments.options());
+		prepared.editScript(TestDocuments.revise(doc, 4, 0.1));
+
+		new EditScriptManager(prepared.editScript(rev)).apply();
+		doc.compareNativeDeep(rev);
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+
+public class ReadOnlyTreesTest
+{
+	@Test
+	public void testReadOnlyDiffLeavesTreesUnchanged() throws Exception
+	{
+		for (int seed = 0; seed < 20; ++seed)
+		{
+			TestNode t1 = TestDocuments.generate(seed, 300);
+			TestNode t2 = TestDocuments.revise(t1, seed + 1000, 0.1);
+			HDDiff.assignIds(t1);
+			HDDiff.assignIds(t2);
+			String tree1 = t1.toTreeString();
+			String tree2 = t2.toTreeString();
+			String ids1 = idString(t1);
+			String ids2 = idString(t2);
+
+			HDDiffOptions options = TestDocuments.options();
+			options.setReadOnlyTrees(true);
+			List<EditOp> editScript = HDDiff.editScript(t1, t2, options);
+
+			// No splits, no partners, no ids written
+			assertEquals(tree1, t1.toTreeString());
+			assertEquals(tree2, t2.toTreeString());
+			assertEquals(ids1, idString(t1));
+			assertEquals(ids2, idString(t2));
+			assertNull(t1.getPartner());
+			assertNull(t2.getPartner());
+
+			// The script replays the virtual splits when applied
+			new EditScriptManager(editScript).apply();
+			assertEquals(t2.toMergedString(), t1.toMergedString());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadOnlyDiffRejectsUnnumberedTrees() throws Exception
+	{
+		TestNode t1 = TestDocuments.generate(1, 100);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.1);
+
+		HDDiffOptions options = TestDocuments.options();
+		options.setReadOnlyTrees(true);
+		HDDiff.editScript(t1, t2, options);
+	}
+
+	// =========================================================================
+
+	private static String idString(DiffNode root)
+	{
+		StringBuilder sb = new StringBuilder();
+		DiffNode n = root;
+		while (n != null)
+		{
+			sb.append(n.getId()).append(' ');
+			if (n.getFirstChild() != null)
+			{
+				n = n.getFirstChild();
+				continue;
+			}
+			while ((n != null) && (n.getNextSibling() == null))
+				n = n.getParent();
+			if (n != null)
+				n = n.getNextSibling();
+		}
+		return sb.toString();
+	}
+}
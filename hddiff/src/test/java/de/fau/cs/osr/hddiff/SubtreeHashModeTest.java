@@ -0,0 +1,115 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.HDDiffOptions.SubtreeHashMode;
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeMetricsInterface;
+
+public class SubtreeHashModeTest
+{
+	/**
+	 * "Aa" and "BB" have the same String.hashCode(). Used as node types the
+	 * subtrees below them get the same 32 bit hash, but no update can turn
+	 * one into the other.
+	 */
+	private static final String TYPE1 = "Aa";
+
+	private static final String TYPE2 = "BB";
+
+	private static final String TEXT = "the album was released as a single";
+
+	// =========================================================================
+
+	@Test
+	public void testMixed32BitHashesAreVerifiedEvenIfVerificationIsDisabled() throws Exception
+	{
+		assertEquals(TYPE1.hashCode(), TYPE2.hashCode());
+
+		TestNode t1 = section(TYPE1);
+		TestNode t2 = section(TYPE2);
+
+		// Node metrics without 64 bit node hashes
+		final TestNodeMetrics metrics = new TestNodeMetrics();
+		HDDiffOptions options = TestDocuments.options();
+		options.setNodeMetrics(new NodeMetricsInterface()
+		{
+			@Override
+			public int computeHash(DiffNode node)
+			{
+				return metrics.computeHash(node);
+			}
+
+			@Override
+			public int computeWeight(DiffNode node)
+			{
+				return metrics.computeWeight(node);
+			}
+
+			@Override
+			public boolean verifyHashEquality(DiffNode n1, DiffNode n2)
+			{
+				return metrics.verifyHashEquality(n1, n2);
+			}
+		});
+		options.setSubtreeHashMode(SubtreeHashMode.BITS_64);
+		options.setVerifySubtreeHashes(false);
+
+		List<EditOp> editScript = HDDiff.editScript(t1, t2, options);
+		assertFalse(editScript.isEmpty());
+
+		new EditScriptManager(editScript).apply();
+		t1.compareNativeDeep(t2);
+	}
+
+	@Test
+	public void testNative64BitHashesTellCollidingTypesApart() throws Exception
+	{
+		TestNode t1 = section(TYPE1);
+		TestNode t2 = section(TYPE2);
+
+		HDDiffOptions options = TestDocuments.options();
+		options.setSubtreeHashMode(SubtreeHashMode.BITS_64);
+		options.setVerifySubtreeHashes(false);
+
+		List<EditOp> editScript = HDDiff.editScript(t1, t2, options);
+		assertFalse(editScript.isEmpty());
+
+		new EditScriptManager(editScript).apply();
+		t1.compareNativeDeep(t2);
+	}
+
+	// =========================================================================
+
+	private static TestNode section(String type)
+	{
+		TestNode root = TestNode.element("doc", null);
+		TestNode section = TestNode.element(type, null);
+		root.appendOrInsert(section, null);
+		section.appendOrInsert(TestNode.text(TEXT), null);
+		return root;
+	}
+}
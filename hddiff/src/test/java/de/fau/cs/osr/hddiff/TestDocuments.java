@@ -0,0 +1,304 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.utils.WordSubstringJudge;
+
+/**
+ * Generates reproducible documents and revisions thereof for the tests, see
+ * BenchmarkDocuments of hddiff-benchmarks. Besides text edits, inserts,
+ * deletes, moves and attribute changes, revisions wrap nodes into newly
+ * inserted elements, which yields moves into inserted parents.
+ */
+public final class TestDocuments
+{
+	private static final String[] VOCABULARY = {
+			"the", "of", "and", "in", "to", "was", "is", "for", "on", "as",
+			"with", "by", "he", "she", "at", "from", "his", "her", "an", "were",
+			"album", "released", "single", "chart", "record", "band", "song",
+			"tour", "music", "video", "city", "river", "county", "population",
+			"station", "railway", "church", "school", "university", "war",
+			"army", "battle", "league", "season", "team", "club", "football",
+			"species", "family", "genus", "island", "mountain", "village" };
+
+	private static final String[] INLINE_TYPES = { "b", "i", "a", "ref" };
+
+	private static final int AVG_WORDS_PER_TEXT = 12;
+
+	// =========================================================================
+
+	private final Random random;
+
+	private int nodeCount;
+
+	// =========================================================================
+
+	private TestDocuments(long seed)
+	{
+		this.random = new Random(seed);
+	}
+
+	// =========================================================================
+
+	public static HDDiffOptions options()
+	{
+		TestNodeMetrics metrics = new TestNodeMetrics();
+
+		HDDiffOptions options = new HDDiffOptions();
+		options.setNodeMetrics(metrics);
+		options.setMinSubtreeWeight(12);
+		options.setEnableTnsm(true);
+		options.setTnsmEligibilityTester(metrics);
+		options.setTnsmSubstringJudge(new WordSubstringJudge(8, 3));
+		return options;
+	}
+
+	/**
+	 * Generates a document with roughly the given number of nodes.
+	 */
+	public static TestNode generate(long seed, int nodeCount)
+	{
+		return new TestDocuments(seed).article(nodeCount);
+	}
+
+	/**
+	 * Returns a modified deep copy of the given document.
+	 * 
+	 * @param editRate
+	 *            Number of edits relative to the number of nodes in the
+	 *            document.
+	 */
+	public static TestNode revise(
+			TestNode document,
+			long seed,
+			double editRate)
+	{
+		TestNode revision = document.copyDeep();
+		new TestDocuments(seed).edit(revision, editRate);
+		return revision;
+	}
+
+	/**
+	 * Renders an edit script without the partners of the nodes, which depend
+	 * on the state the trees are left in. Nodes are identified by their text
+	 * and by their ids, which are pre-order indexes.
+	 */
+	public static String render(List<EditOp> editScript)
+	{
+		return editScript.toString().replaceAll("(?m)^\\s*Partner WOM node:.*$", "");
+	}
+
+	// =========================================================================
+
+	private TestNode article(int targetNodeCount)
+	{
+		TestNode article = element("article", null);
+		while (nodeCount < targetNodeCount)
+			article.appendChildDiffOnly(section());
+		return article;
+	}
+
+	private TestNode section()
+	{
+		TestNode section = element("section", null);
+		TestNode heading = element("heading", "level=" + (2 + random.nextInt(3)));
+		heading.appendChildDiffOnly(text(1 + random.nextInt(4)));
+		section.appendChildDiffOnly(heading);
+
+		int blocks = 2 + random.nextInt(8);
+		for (int i = 0; i < blocks; ++i)
+		{
+			int kind = random.nextInt(10);
+			if (kind < 7)
+				section.appendChildDiffOnly(paragraph());
+			else if (kind < 9)
+				section.appendChildDiffOnly(list());
+			else
+				section.appendChildDiffOnly(table());
+		}
+		return section;
+	}
+
+	private TestNode paragraph()
+	{
+		TestNode p = element("p", null);
+		appendInlineContent(p);
+		return p;
+	}
+
+	private void appendInlineContent(TestNode parent)
+	{
+		parent.appendChildDiffOnly(text(1 + random.nextInt(2 * AVG_WORDS_PER_TEXT)));
+		int inlines = random.nextInt(4);
+		for (int i = 0; i < inlines; ++i)
+		{
+			String type = INLINE_TYPES[random.nextInt(INLINE_TYPES.length)];
+			TestNode inline = element(type, type.equals("a") ? "href=" + word() : null);
+			inline.appendChildDiffOnly(text(1 + random.nextInt(4)));
+			parent.appendChildDiffOnly(inline);
+			parent.appendChildDiffOnly(text(1 + random.nextInt(2 * AVG_WORDS_PER_TEXT)));
+		}
+	}
+
+	private TestNode list()
+	{
+		TestNode list = element("list", random.nextBoolean() ? "ordered" : null);
+		int items = 2 + random.nextInt(10);
+		for (int i = 0; i < items; ++i)
+		{
+			TestNode item = element("item", null);
+			appendInlineContent(item);
+			list.appendChildDiffOnly(item);
+		}
+		return list;
+	}
+
+	private TestNode table()
+	{
+		TestNode table = element("table", "class=wikitable");
+		int rows = 2 + random.nextInt(10);
+		int cols = 2 + random.nextInt(4);
+		for (int i = 0; i < rows; ++i)
+		{
+			TestNode row = element("row", null);
+			for (int j = 0; j < cols; ++j)
+			{
+				TestNode cell = element("cell", null);
+				cell.appendChildDiffOnly(text(1 + random.nextInt(3)));
+				row.appendChildDiffOnly(cell);
+			}
+			table.appendChildDiffOnly(row);
+		}
+		return table;
+	}
+
+	private TestNode element(String type, String attribute)
+	{
+		++nodeCount;
+		return TestNode.element(type, attribute);
+	}
+
+	private TestNode text(int words)
+	{
+		++nodeCount;
+		StringBuilder sb = new StringBuilder(words * 8);
+		for (int i = 0; i < words; ++i)
+		{
+			if (i > 0)
+				sb.append(' ');
+			sb.append(word());
+		}
+		return TestNode.text(sb.toString());
+	}
+
+	private String word()
+	{
+		return VOCABULARY[random.nextInt(VOCABULARY.length)];
+	}
+
+	// =========================================================================
+
+	private void edit(TestNode root, double editRate)
+	{
+		ArrayList<TestNode> nodes = new ArrayList<>();
+		collect(root, nodes);
+
+		int edits = (int) Math.ceil(nodes.size() * editRate);
+		for (int i = 0; i < edits; ++i)
+		{
+			TestNode n = nodes.get(random.nextInt(nodes.size()));
+			if ((n == root) || (n.getParent() == null))
+				continue;
+
+			switch (random.nextInt(6))
+			{
+				case 0:
+					editText(n);
+					break;
+				case 1:
+					// Never remove the only child of a node
+					if (n.getParent().getFirstChild() != n.getParent().getLastChild())
+						n.removeFromParent();
+					break;
+				case 2:
+					if (!n.isTextLeaf())
+						n.insertAt(random.nextInt(2), paragraph());
+					break;
+				case 3:
+					move(n, nodes.get(random.nextInt(nodes.size())));
+					break;
+				case 4:
+					wrap(n);
+					break;
+				default:
+					if (!n.isTextLeaf())
+						n.setAttribute(random.nextBoolean() ? null : "class=" + word());
+					break;
+			}
+		}
+	}
+
+	private void editText(TestNode n)
+	{
+		if (!n.isTextLeaf())
+			return;
+
+		String text = n.getTextContent();
+		int pos = text.indexOf(' ', random.nextInt(text.length()));
+		if (pos < 0)
+			pos = text.length();
+		n.setText(text.substring(0, pos) + " " + word() + " " + word() + text.substring(pos));
+	}
+
+	private void wrap(TestNode n)
+	{
+		TestNode wrapper = TestNode.element(INLINE_TYPES[random.nextInt(INLINE_TYPES.length)], null);
+		n.getParent().appendOrInsert(wrapper, n);
+		n.removeFromParent();
+		wrapper.appendOrInsert(n, null);
+	}
+
+	private void move(TestNode n, TestNode newParent)
+	{
+		if (newParent.isTextLeaf() || (n.getParent().getFirstChild() == n.getParent().getLastChild()))
+			return;
+
+		for (DiffNode p = newParent; p != null; p = p.getParent())
+		{
+			if (p == n)
+				// Cannot move a node into its own subtree
+				return;
+		}
+
+		n.removeFromParent();
+		newParent.insertAt(random.nextInt(2), n);
+	}
+
+	private static void collect(TestNode n, ArrayList<TestNode> nodes)
+	{
+		nodes.add(n);
+		for (DiffNode c = n.getFirstChild(); c != null; c = c.getNextSibling())
+			collect((TestNode) c, nodes);
+	}
+}
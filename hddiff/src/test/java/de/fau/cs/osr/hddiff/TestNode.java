@@ -0,0 +1,306 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeUpdate;
+import de.fau.cs.osr.utils.ComparisonException;
+
+/**
+ * A minimal DiffNode implementation for the tests: a typed node with an
+ * optional attribute, text leaves carry their text.
+ */
+public class TestNode
+		extends
+			DiffNode
+{
+	public static final String TEXT = "#text";
+
+	// =========================================================================
+
+	private final String type;
+
+	private String text;
+
+	private String attribute;
+
+	// =========================================================================
+
+	public TestNode(String type, String text, String attribute)
+	{
+		this.type = type;
+		this.text = text;
+		this.attribute = attribute;
+	}
+
+	public static TestNode element(String type, String attribute)
+	{
+		return new TestNode(type, null, attribute);
+	}
+
+	public static TestNode text(String text)
+	{
+		return new TestNode(TEXT, text, null);
+	}
+
+	// =========================================================================
+
+	public String getAttribute()
+	{
+		return attribute;
+	}
+
+	public void setAttribute(String attribute)
+	{
+		this.attribute = attribute;
+	}
+
+	public void setText(String text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * Creates an unmapped deep copy of this subtree.
+	 */
+	public TestNode copyDeep()
+	{
+		TestNode copy = new TestNode(type, text, attribute);
+		for (DiffNode c = getFirstChild(); c != null; c = c.getNextSibling())
+			copy.appendChildDiffOnly(((TestNode) c).copyDeep());
+		return copy;
+	}
+
+	/**
+	 * Renders this subtree with adjacent text leaves merged, so that a tree
+	 * renders the same before and after its text nodes were split.
+	 */
+	public String toMergedString()
+	{
+		StringBuilder sb = new StringBuilder();
+		render(sb, true);
+		return sb.toString();
+	}
+
+	/**
+	 * Renders this subtree node by node.
+	 */
+	public String toTreeString()
+	{
+		StringBuilder sb = new StringBuilder();
+		render(sb, false);
+		return sb.toString();
+	}
+
+	private void render(StringBuilder sb, boolean mergeText)
+	{
+		sb.append(type);
+		if (attribute != null)
+			sb.append('[').append(attribute).append(']');
+		if (text != null)
+			sb.append('"').append(text).append('"');
+		if (getFirstChild() == null)
+			return;
+
+		sb.append('(');
+		boolean inText = false;
+		for (DiffNode c = getFirstChild(); c != null; c = c.getNextSibling())
+		{
+			TestNode child = (TestNode) c;
+			if (mergeText && child.isTextLeaf())
+			{
+				if (!inText)
+					sb.append(" \"");
+				sb.append(child.text);
+				inText = true;
+				continue;
+			}
+
+			if (inText)
+				sb.append('"');
+			inText = false;
+			sb.append(' ');
+			child.render(sb, mergeText);
+		}
+		if (inText)
+			sb.append('"');
+		sb.append(')');
+	}
+
+	// =========================================================================
+
+	@Override
+	public Object getType()
+	{
+		return type;
+	}
+
+	@Override
+	public boolean isSameNodeType(DiffNode o)
+	{
+		return type.equals(o.getType());
+	}
+
+	@Override
+	public String getLabel()
+	{
+		return type;
+	}
+
+	@Override
+	public Object getNativeNode()
+	{
+		return (text != null) ? text : type;
+	}
+
+	// =========================================================================
+
+	@Override
+	public DiffNode createSame(DiffNode forRoot)
+	{
+		return new TestNode(type, text, attribute);
+	}
+
+	@Override
+	protected void appendOrInsertNativeOnly(
+			DiffNode newChild,
+			DiffNode refChild)
+	{
+		// There is no native tree
+	}
+
+	@Override
+	protected void removeFromParentNativeOnly()
+	{
+		// There is no native tree
+	}
+
+	// =========================================================================
+
+	@Override
+	public NodeUpdate compareWith(DiffNode o_)
+	{
+		TestNode o = (TestNode) o_;
+		if (compareStrings(text, o.text) && compareStrings(attribute, o.attribute))
+			return null;
+		return new TestNodeUpdate(o.text, o.attribute);
+	}
+
+	@Override
+	public void applyUpdate(NodeUpdate update_)
+	{
+		TestNodeUpdate update = (TestNodeUpdate) update_;
+		this.text = update.text;
+		this.attribute = update.attribute;
+	}
+
+	// =========================================================================
+
+	@Override
+	public boolean isLeaf()
+	{
+		return getFirstChild() == null;
+	}
+
+	@Override
+	public boolean isTextLeaf()
+	{
+		return (text != null);
+	}
+
+	@Override
+	public String getTextContent()
+	{
+		return text;
+	}
+
+	@Override
+	public DiffNode splitText(int pos)
+	{
+		TestNode otherHalf = text(text.substring(pos));
+		text = text.substring(0, pos);
+		getParent().appendOrInsert(otherHalf, getNextSibling());
+		return otherHalf;
+	}
+
+	// =========================================================================
+
+	@Override
+	public void compareNativeDeep(DiffNode o_) throws ComparisonException
+	{
+		TestNode o = (TestNode) o_;
+		if (!type.equals(o.type) ||
+				!compareStrings(text, o.text) ||
+				!compareStrings(attribute, o.attribute))
+			throw new ComparisonException(this, o);
+
+		DiffNode c1 = getFirstChild();
+		DiffNode c2 = o.getFirstChild();
+		while ((c1 != null) && (c2 != null))
+		{
+			c1.compareNativeDeep(c2);
+			c1 = c1.getNextSibling();
+			c2 = c2.getNextSibling();
+		}
+
+		if (c1 != c2)
+			throw new ComparisonException(this, o);
+	}
+
+	@Override
+	public void setNativeId(String id)
+	{
+		// There is no native tree
+	}
+
+	// =========================================================================
+
+	static boolean compareStrings(String a, String b)
+	{
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	// =========================================================================
+
+	static final class TestNodeUpdate
+			implements
+				NodeUpdate
+	{
+		final String text;
+
+		final String attribute;
+
+		public TestNodeUpdate(String text, String attribute)
+		{
+			this.text = text;
+			this.attribute = attribute;
+		}
+
+		@Override
+		public void applyUpdates(Object node)
+		{
+			((TestNode) node).applyUpdate(this);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "TestNodeUpdate [text=" + text + ", attribute=" + attribute + "]";
+		}
+	}
+}
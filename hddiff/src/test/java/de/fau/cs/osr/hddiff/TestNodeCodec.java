@@ -0,0 +1,71 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import de.fau.cs.osr.hddiff.TestNode.TestNodeUpdate;
+import de.fau.cs.osr.hddiff.editscript.EditScriptReader;
+import de.fau.cs.osr.hddiff.editscript.EditScriptWriter;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeCodecInterface;
+import de.fau.cs.osr.hddiff.tree.NodeUpdate;
+
+/**
+ * Writes and reads inserted TestNodes and their updates.
+ */
+public final class TestNodeCodec
+		implements
+			NodeCodecInterface
+{
+	@Override
+	public void writeNode(DiffNode node_, DataOutput out) throws IOException
+	{
+		TestNode node = (TestNode) node_;
+		EditScriptWriter.writeString(out, (String) node.getType());
+		EditScriptWriter.writeString(out, node.getTextContent());
+		EditScriptWriter.writeString(out, node.getAttribute());
+	}
+
+	@Override
+	public DiffNode readNode(DiffNode forRoot, DataInput in) throws IOException
+	{
+		String type = EditScriptReader.readString(in);
+		String text = EditScriptReader.readString(in);
+		String attribute = EditScriptReader.readString(in);
+		return new TestNode(type, text, attribute);
+	}
+
+	@Override
+	public void writeUpdate(DiffNode node, NodeUpdate update_, DataOutput out) throws IOException
+	{
+		TestNodeUpdate update = (TestNodeUpdate) update_;
+		EditScriptWriter.writeString(out, update.text);
+		EditScriptWriter.writeString(out, update.attribute);
+	}
+
+	@Override
+	public NodeUpdate readUpdate(DiffNode node, DataInput in) throws IOException
+	{
+		String text = EditScriptReader.readString(in);
+		String attribute = EditScriptReader.readString(in);
+		return new TestNodeUpdate(text, attribute);
+	}
+}
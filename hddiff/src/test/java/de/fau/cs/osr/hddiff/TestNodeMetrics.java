@@ -0,0 +1,80 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeEligibilityTesterInterface;
+import de.fau.cs.osr.hddiff.tree.NodeMetrics64Interface;
+import de.fau.cs.osr.hddiff.utils.HashMixer;
+
+/**
+ * Mirrors the metrics of the WOM adapter: text leaves weigh as much as their
+ * text is long, every other node has a fixed weight.
+ */
+public final class TestNodeMetrics
+		implements
+			NodeMetrics64Interface,
+			NodeEligibilityTesterInterface
+{
+	@Override
+	public int computeHash(DiffNode node_)
+	{
+		TestNode node = (TestNode) node_;
+		int hash = 21613 * node.getType().hashCode();
+		if (node.getAttribute() != null)
+			hash ^= node.getAttribute().hashCode();
+		if (node.isTextLeaf())
+			hash ^= node.getTextContent().hashCode();
+		return hash;
+	}
+
+	@Override
+	public long computeHash64(DiffNode node_)
+	{
+		TestNode node = (TestNode) node_;
+		long hash = HashMixer.hash64(node.getType().toString());
+		hash = HashMixer.combine64(hash, HashMixer.hash64(node.getAttribute()));
+		if (node.isTextLeaf())
+			hash = HashMixer.combine64(hash, HashMixer.hash64(node.getTextContent()));
+		return hash;
+	}
+
+	@Override
+	public int computeWeight(DiffNode node)
+	{
+		if (node.isTextLeaf())
+			return node.getTextContent().length();
+		return 3;
+	}
+
+	@Override
+	public boolean verifyHashEquality(DiffNode n1_, DiffNode n2_)
+	{
+		TestNode n1 = (TestNode) n1_;
+		TestNode n2 = (TestNode) n2_;
+		return n1.isSameNodeType(n2) &&
+				TestNode.compareStrings(n1.getAttribute(), n2.getAttribute()) &&
+				TestNode.compareStrings(n1.getTextContent(), n2.getTextContent());
+	}
+
+	@Override
+	public boolean isEligible(DiffNode n)
+	{
+		return n.isTextLeaf();
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+import de.fau.cs.osr.hddiff.utils.ReportItem;
+
+public class TimeBudgetTest
+{
+	private static final String DEGRADED_FIGURE = "00.00) HDDiff: degraded";
+
+	// =========================================================================
+
+	@Test
+	public void testExhaustedTimeBudgetYieldsDegradedButValidScript() throws Exception
+	{
+		TestNode t1 = TestDocuments.generate(1, 2000);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.05);
+
+		ReportItem report = new ReportItem();
+		HDDiff diff = new HDDiff(t1, t2, expiredBudgetOptions(), report);
+		List<EditOp> editScript = diff.editScript();
+
+		assertTrue(diff.isDegraded());
+		assertTrue(report.getIndicators().containsKey(DEGRADED_FIGURE));
+
+		new EditScriptManager(editScript).apply();
+		t1.compareNativeDeep(t2);
+	}
+
+	@Test
+	public void testDiffWithinBudgetIsNotDegraded() throws Exception
+	{
+		TestNode t1 = TestDocuments.generate(1, 200);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.05);
+
+		HDDiffOptions options = TestDocuments.options();
+		options.setTimeBudgetMillis(3600 * 1000);
+
+		ReportItem report = new ReportItem();
+		HDDiff diff = new HDDiff(t1, t2, options, report);
+		diff.editScript();
+
+		assertFalse(diff.isDegraded());
+		assertFalse(report.getIndicators().containsKey(DEGRADED_FIGURE));
+	}
+
+	@Test
+	public void testPreparedTreeAndChainReportDegradation() throws Exception
+	{
+		HDDiffOptions options = expiredBudgetOptions();
+
+		TestNode t1 = TestDocuments.generate(1, 2000);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.05);
+
+		PreparedTree prepared = HDDiff.prepare(t1, options);
+		List<EditOp> editScript = prepared.editScript(t2);
+		assertTrue(prepared.isDegraded());
+		new EditScriptManager(editScript).apply();
+		t1.compareNativeDeep(t2);
+
+		TestNode r1 = TestDocuments.generate(3, 2000);
+		TestNode r2 = TestDocuments.revise(r1, 4, 0.05);
+
+		HDDiffChain chain = new HDDiffChain(r1, options);
+		editScript = chain.diffNext(r2);
+		assertTrue(chain.isDegraded());
+		new EditScriptManager(editScript).apply();
+		assertEquals(r2.toMergedString(), r1.toMergedString());
+	}
+
+	// =========================================================================
+
+	private static HDDiffOptions expiredBudgetOptions()
+	{
+		HDDiffOptions options = TestDocuments.options();
+		options.setTimeBudgetMillis(1);
+		options.setTimeBudgetExpired(true);
+		return options;
+	}
+}
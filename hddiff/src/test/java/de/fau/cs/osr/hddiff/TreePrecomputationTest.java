@@ -0,0 +1,155 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+import de.fau.cs.osr.hddiff.tree.NodeTypeDictionary;
+import de.fau.cs.osr.hddiff.utils.LongHashIndex;
+
+public class TreePrecomputationTest
+{
+	private static final int MIN_SUBTREE_WEIGHT = 12;
+
+	// =========================================================================
+
+	@Test
+	public void testPoolYieldsSamePrecomputationAsSequential() throws Exception
+	{
+		assertPoolYieldsSamePrecomputation(false);
+	}
+
+	@Test
+	public void testPoolYieldsSamePrecomputationAsSequentialWith64BitHashes() throws Exception
+	{
+		assertPoolYieldsSamePrecomputation(true);
+	}
+
+	@Test
+	public void testTakenOverPrecomputationEqualsFreshOne() throws Exception
+	{
+		for (int seed = 0; seed < 5; ++seed)
+		{
+			TestNode doc = TestDocuments.generate(seed, 2000);
+			TestNode rev = TestDocuments.revise(doc, seed + 1000, 0.1);
+
+			HDDiff diff = new HDDiff(doc, rev, TestDocuments.options(), null);
+			diff.setVirtualSplits(false, true);
+			diff.editScript();
+			rev.unmapDeep();
+
+			TreePrecomputation fresh = precomputation(false);
+			fresh.compute(rev.copyDeep());
+
+			assertSamePrecomputation(fresh, diff.precomputeT2AsT1());
+		}
+	}
+
+	// =========================================================================
+
+	private static void assertPoolYieldsSamePrecomputation(boolean hash64)
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			for (int seed = 0; seed < 5; ++seed)
+			{
+				TestNode doc = TestDocuments.generate(seed, 5000);
+
+				TreePrecomputation sequential = precomputation(hash64);
+				sequential.compute(doc.copyDeep());
+
+				TreePrecomputation pooled = precomputation(hash64);
+				TreePrecomputation.computeInPool(pool, doc.copyDeep(), pooled);
+
+				assertSamePrecomputation(sequential, pooled);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	private static TreePrecomputation precomputation(boolean hash64)
+	{
+		// A small fork threshold, so that the metrics are computed in many chunks
+		return new TreePrecomputation(
+				new TestNodeMetrics(),
+				new NodeTypeDictionary(),
+				MIN_SUBTREE_WEIGHT,
+				hash64,
+				true,
+				true,
+				16,
+				16);
+	}
+
+	private static void assertSamePrecomputation(
+			TreePrecomputation expected,
+			TreePrecomputation actual)
+	{
+		assertEquals(expected.getNodeCount(), actual.getNodeCount());
+		assertEquals(expected.getLeafCount(), actual.getLeafCount());
+		assertEquals(expected.getTextLength(), actual.getTextLength());
+		assertEquals(expected.getSuitableSubtreeCount(), actual.getSuitableSubtreeCount());
+		assertEquals(expected.getHashCollisionCount(), actual.getHashCollisionCount());
+
+		// Leaf sequence
+		ArrayList<DiffNode> leaves1 = expected.getLeafSeq();
+		ArrayList<DiffNode> leaves2 = actual.getLeafSeq();
+		assertEquals(leaves1.size(), leaves2.size());
+		for (int i = 0; i < leaves1.size(); ++i)
+			assertEquals(leaves1.get(i).getId(), leaves2.get(i).getId());
+
+		// Weights and subtree hashes
+		NodeTable nodes1 = expected.getNodeTable();
+		NodeTable nodes2 = actual.getNodeTable();
+		assertEquals(nodes1.size(), nodes2.size());
+		for (int id = 0; id < nodes1.size(); ++id)
+		{
+			DiffNode n1 = nodes1.getNode(id);
+			DiffNode n2 = nodes2.getNode(id);
+			assertEquals(nodes1.getWeight(n1), nodes2.getWeight(n2));
+			assertEquals(nodes1.getSubtreeHash(n1), nodes2.getSubtreeHash(n2));
+		}
+
+		// Subtree hash index
+		LongHashIndex<DiffNode> index1 = expected.getSubtreeHashes();
+		LongHashIndex<DiffNode> index2 = actual.getSubtreeHashes();
+		assertEquals(index1.size(), index2.size());
+		for (int slot = 0; slot < index1.capacity(); ++slot)
+		{
+			if (index1.valueAt(slot) == null)
+				continue;
+
+			long key = index1.keyAt(slot);
+			assertTrue(index2.containsKey(key));
+			if (index1.isUniqueAt(slot))
+				assertEquals(index1.valueAt(slot).getId(), index2.getUnique(key).getId());
+			else
+				assertNull(index2.getUnique(key));
+		}
+	}
+}
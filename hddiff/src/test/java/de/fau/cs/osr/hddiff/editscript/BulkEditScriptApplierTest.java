@@ -0,0 +1,165 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.HDDiff;
+import de.fau.cs.osr.hddiff.TestDocuments;
+import de.fau.cs.osr.hddiff.TestNode;
+import de.fau.cs.osr.hddiff.tree.DiffNode;
+
+public class BulkEditScriptApplierTest
+{
+	@Test
+	public void testBulkApplyingGivesSameTreeAsManager() throws Exception
+	{
+		int nestedDeletes = 0;
+		int movesIntoInsertedParents = 0;
+		for (int seed = 0; seed < 40; ++seed)
+		{
+			TestNode doc = TestDocuments.generate(seed, 300);
+			TestNode rev = TestDocuments.revise(doc, seed + 1000, 0.1);
+
+			TestNode t1a = doc.copyDeep();
+			TestNode t2a = rev.copyDeep();
+			new EditScriptManager(HDDiff.editScript(t1a, t2a, TestDocuments.options())).apply();
+
+			TestNode t1b = doc.copyDeep();
+			TestNode t2b = rev.copyDeep();
+			List<EditOp> editScript = HDDiff.editScript(t1b, t2b, TestDocuments.options());
+			nestedDeletes += countNestedDeletes(editScript);
+			movesIntoInsertedParents += countMovesIntoInsertedParents(editScript);
+
+			Map<DiffNode, Integer> ids = saveIds(t1b, t2b);
+			EditScriptManager.applyBulk(editScript);
+			assertIdsRestored(ids);
+
+			assertEquals(t1a.toTreeString(), t1b.toTreeString());
+			t1b.compareNativeDeep(t2b);
+		}
+
+		assertTrue(nestedDeletes > 0);
+		assertTrue(movesIntoInsertedParents > 0);
+	}
+
+	@Test
+	public void testIdsAreRestoredWhenApplyingFails() throws Exception
+	{
+		TestNode root = TestNode.element("doc", null);
+		TestNode a = TestNode.element("p", null);
+		TestNode b = TestNode.text("moved");
+		root.appendOrInsert(a, null);
+		root.appendOrInsert(b, null);
+		TestNode inserted = TestNode.text("inserted");
+
+		root.setId(7);
+		a.setId(8);
+		b.setId(9);
+		inserted.setId(10);
+
+		// The final position lies behind the last child of the empty parent
+		List<EditOp> editScript = new ArrayList<>();
+		editScript.add(new EditOpMove(b, a, b, 0));
+		editScript.add(new EditOpInsert(a, inserted, inserted, 5));
+
+		try
+		{
+			EditScriptManager.applyBulk(editScript);
+			fail("Applying an invalid edit script must fail");
+		}
+		catch (AssertionError e)
+		{
+			// Expected
+		}
+
+		assertEquals(7, root.getId());
+		assertEquals(8, a.getId());
+		assertEquals(9, b.getId());
+		assertEquals(10, inserted.getId());
+	}
+
+	// =========================================================================
+
+	private static int countNestedDeletes(List<EditOp> editScript)
+	{
+		Set<DiffNode> deleted = Collections.newSetFromMap(new IdentityHashMap<DiffNode, Boolean>());
+		for (EditOp op : editScript)
+		{
+			if (op.getType() == EditOp.Operation.DELETE)
+				deleted.add(((EditOpDelete) op).getDeletedNode());
+		}
+
+		int count = 0;
+		for (DiffNode n : deleted)
+		{
+			if (deleted.contains(n.getParent()))
+				++count;
+		}
+		return count;
+	}
+
+	private static int countMovesIntoInsertedParents(List<EditOp> editScript)
+	{
+		Set<DiffNode> inserted = Collections.newSetFromMap(new IdentityHashMap<DiffNode, Boolean>());
+		for (EditOp op : editScript)
+		{
+			if (op.getType() == EditOp.Operation.INSERT)
+				inserted.add(((EditOpInsert) op).getInsertedNode());
+		}
+
+		int count = 0;
+		for (EditOp op : editScript)
+		{
+			if ((op.getType() == EditOp.Operation.MOVE) &&
+					inserted.contains(((EditOpMove) op).getToParent()))
+				++count;
+		}
+		return count;
+	}
+
+	private static Map<DiffNode, Integer> saveIds(DiffNode... roots)
+	{
+		Map<DiffNode, Integer> ids = new IdentityHashMap<>();
+		for (DiffNode root : roots)
+			saveIds(root, ids);
+		return ids;
+	}
+
+	private static void saveIds(DiffNode n, Map<DiffNode, Integer> ids)
+	{
+		ids.put(n, n.getId());
+		for (DiffNode c = n.getFirstChild(); c != null; c = c.getNextSibling())
+			saveIds(c, ids);
+	}
+
+	private static void assertIdsRestored(Map<DiffNode, Integer> ids)
+	{
+		for (Map.Entry<DiffNode, Integer> e : ids.entrySet())
+			assertEquals(e.getValue().intValue(), e.getKey().getId());
+	}
+}
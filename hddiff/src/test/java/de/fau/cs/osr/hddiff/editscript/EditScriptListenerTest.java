@@ -0,0 +1,77 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.HDDiff;
+import de.fau.cs.osr.hddiff.HDDiffOptions;
+import de.fau.cs.osr.hddiff.PreparedTree;
+import de.fau.cs.osr.hddiff.TestDocuments;
+import de.fau.cs.osr.hddiff.TestNode;
+
+public class EditScriptListenerTest
+{
+	@Test
+	public void testListenerReceivesSameOperationsAsEditScript() throws Exception
+	{
+		for (int seed = 0; seed < 20; ++seed)
+		{
+			TestNode doc = TestDocuments.generate(seed, 300);
+			TestNode rev = TestDocuments.revise(doc, seed + 1000, 0.1);
+
+			HDDiffOptions options = TestDocuments.options();
+			options.setRecordSplitOps(true);
+
+			List<EditOp> expected = HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), options);
+
+			CollectingListener listener = new CollectingListener();
+			HDDiff.editScript(doc.copyDeep(), rev.copyDeep(), options, null, listener);
+
+			assertEquals(expected.toString(), listener.editScript.toString());
+
+			PreparedTree prepared = HDDiff.prepare(doc.copyDeep(), options);
+			expected = prepared.editScript(rev.copyDeep());
+
+			listener = new CollectingListener();
+			prepared.editScript(rev.copyDeep(), null, listener);
+
+			assertEquals(expected.toString(), listener.editScript.toString());
+		}
+	}
+
+	// =========================================================================
+
+	private static final class CollectingListener
+			implements
+				EditScriptListener
+	{
+		private final List<EditOp> editScript = new ArrayList<>();
+
+		@Override
+		public void editOp(EditOp op)
+		{
+			editScript.add(op);
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.editscript;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.HDDiff;
+import de.fau.cs.osr.hddiff.HDDiffOptions;
+import de.fau.cs.osr.hddiff.TestDocuments;
+import de.fau.cs.osr.hddiff.TestNode;
+import de.fau.cs.osr.hddiff.TestNodeCodec;
+
+public class EditScriptWriterTest
+{
+	private final TestNodeCodec codec = new TestNodeCodec();
+
+	// =========================================================================
+
+	@Test
+	public void testWrittenScriptTurnsFreshT1IntoT2() throws Exception
+	{
+		for (int seed = 0; seed < 40; ++seed)
+		{
+			TestNode t1 = TestDocuments.generate(seed, 300);
+			TestNode t2 = TestDocuments.revise(t1, seed + 1000, 0.1);
+			TestNode fresh1 = t1.copyDeep();
+
+			List<EditOp> editScript = HDDiff.editScript(t1, t2, options());
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			EditScriptWriter.write(editScript, t1, codec, out);
+
+			assertReadScriptTurnsInto(out.toByteArray(), fresh1, editScript, t2);
+		}
+	}
+
+	@Test
+	public void testScriptWrittenByListenerTurnsFreshT1IntoT2() throws Exception
+	{
+		for (int seed = 0; seed < 40; ++seed)
+		{
+			TestNode t1 = TestDocuments.generate(seed, 300);
+			TestNode t2 = TestDocuments.revise(t1, seed + 1000, 0.1);
+			TestNode fresh1 = t1.copyDeep();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final EditScriptWriter writer = new EditScriptWriter(out, t1, codec);
+			final List<EditOp> editScript = new ArrayList<>();
+			HDDiff.editScript(t1, t2, options(), null, new EditScriptListener()
+			{
+				@Override
+				public void editOp(EditOp op)
+				{
+					editScript.add(op);
+					try
+					{
+						writer.write(op);
+					}
+					catch (IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			writer.finish();
+
+			assertReadScriptTurnsInto(out.toByteArray(), fresh1, editScript, t2);
+		}
+	}
+
+	@Test
+	public void testLeafSplitManyTimesRoundTrips() throws Exception
+	{
+		String[] chunks = new String[5];
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < chunks.length; ++i)
+		{
+			StringBuilder chunk = new StringBuilder();
+			for (int j = 0; j < 8; ++j)
+			{
+				if (j > 0)
+					chunk.append(' ');
+				chunk.append("word").append(i * 8 + j);
+			}
+			chunks[i] = chunk.toString();
+			if (i > 0)
+				text.append(' ');
+			text.append(chunk);
+		}
+
+		TestNode t1 = TestNode.element("doc", null);
+		TestNode p = TestNode.element("p", null);
+		p.appendOrInsert(TestNode.text(text.toString()), null);
+		t1.appendOrInsert(p, null);
+
+		// The chunks end up in different parents and in a different order
+		TestNode t2 = TestNode.element("doc", null);
+		int[] order = { 3, 0, 4, 1, 2 };
+		for (int i : order)
+		{
+			TestNode q = TestNode.element((i % 2 == 0) ? "p" : "item", null);
+			q.appendOrInsert(TestNode.text(chunks[i]), null);
+			t2.appendOrInsert(q, null);
+		}
+
+		TestNode fresh1 = t1.copyDeep();
+		List<EditOp> editScript = HDDiff.editScript(t1, t2, options());
+
+		int splits = 0;
+		for (EditOp op : editScript)
+		{
+			if (op.getType() == EditOp.Operation.SPLIT)
+				++splits;
+		}
+		assertTrue(splits >= 3);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		EditScriptWriter.write(editScript, t1, codec, out);
+
+		assertReadScriptTurnsInto(out.toByteArray(), fresh1, editScript, t2);
+	}
+
+	@Test
+	public void testScriptOfPreparedTreeRoundTrips() throws Exception
+	{
+		for (int seed = 0; seed < 20; ++seed)
+		{
+			TestNode t1 = TestDocuments.generate(seed, 300);
+			TestNode t2 = TestDocuments.revise(t1, seed + 1000, 0.1);
+			TestNode fresh1 = t1.copyDeep();
+
+			// The prepared tree is split virtually, the splits are not applied
+			List<EditOp> editScript = HDDiff.prepare(t1, options()).editScript(t2);
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			EditScriptWriter.write(editScript, t1, codec, out);
+
+			assertReadScriptTurnsInto(out.toByteArray(), fresh1, editScript, t2);
+		}
+	}
+
+	@Test
+	public void testBadMagicIsRejected() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0x12345678);
+		EditScriptWriter.writeVarInt(out, EditScriptFormat.VERSION);
+		out.writeByte(EditScriptFormat.END);
+
+		try
+		{
+			EditScriptReader.read(new ByteArrayInputStream(bytes.toByteArray()), TestNode.element("doc", null), codec);
+			fail("Read a script with a bad magic number");
+		}
+		catch (IOException e)
+		{
+			assertEquals("Not an edit script", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testBadVersionIsRejected() throws Exception
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(EditScriptFormat.MAGIC);
+		EditScriptWriter.writeVarInt(out, EditScriptFormat.VERSION + 1);
+		out.writeByte(EditScriptFormat.END);
+
+		try
+		{
+			EditScriptReader.read(new ByteArrayInputStream(bytes.toByteArray()), TestNode.element("doc", null), codec);
+			fail("Read a script with an unsupported version");
+		}
+		catch (IOException e)
+		{
+			assertEquals("Unsupported edit script version: " + (EditScriptFormat.VERSION + 1), e.getMessage());
+		}
+	}
+
+	// =========================================================================
+
+	private static HDDiffOptions options()
+	{
+		HDDiffOptions options = TestDocuments.options();
+		options.setRecordSplitOps(true);
+		return options;
+	}
+
+	private void assertReadScriptTurnsInto(
+			byte[] bytes,
+			TestNode fresh1,
+			List<EditOp> written,
+			TestNode t2) throws Exception
+	{
+		List<EditOp> read = EditScriptReader.read(new ByteArrayInputStream(bytes), fresh1, codec);
+		assertEquals(countNonSplits(written), countNonSplits(read));
+
+		new EditScriptManager(read).apply();
+		fresh1.compareNativeDeep(t2);
+	}
+
+	private static int countNonSplits(List<EditOp> editScript)
+	{
+		int count = 0;
+		for (EditOp op : editScript)
+		{
+			if (op.getType() != EditOp.Operation.SPLIT)
+				++count;
+		}
+		return count;
+	}
+}
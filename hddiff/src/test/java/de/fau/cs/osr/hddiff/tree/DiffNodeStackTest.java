@@ -0,0 +1,122 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.HDDiff;
+import de.fau.cs.osr.hddiff.TestDocuments;
+import de.fau.cs.osr.hddiff.TestNode;
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+
+public class DiffNodeStackTest
+{
+	@Test
+	public void testWalkVisitsNodesInPreOrder() throws Exception
+	{
+		TestNode doc = TestDocuments.generate(1, 500);
+
+		List<DiffNode> expected = new ArrayList<>();
+		preOrder(doc, expected);
+
+		List<DiffNode> actual = new ArrayList<>();
+		DiffNodeStack stack = new DiffNodeStack(1);
+		DiffNode n = doc;
+		while (n != null)
+		{
+			actual.add(n);
+			DiffNode first = stack.descend(n);
+			n = (first != null) ? first : stack.next();
+		}
+
+		assertEquals(expected, actual);
+		assertTrue(stack.isEmpty());
+	}
+
+	@Test
+	public void testVeryDeepTreeDoesNotOverflowStack() throws Exception
+	{
+		final int depth = 150000;
+		TestNode t1 = deepTree(depth, "the album was released as a single");
+		TestNode t2 = deepTree(depth, "the single was released on an album");
+
+		// Change an attribute half way down
+		TestNode middle = t2;
+		for (int i = 0; i < depth / 2; ++i)
+			middle = (TestNode) middle.getFirstChild();
+		middle.setAttribute("class=changed");
+
+		List<EditOp> editScript = HDDiff.editScript(t1, t2, TestDocuments.options());
+		assertFalse(editScript.isEmpty());
+
+		new EditScriptManager(editScript).apply();
+
+		DiffNode n1 = t1;
+		DiffNode n2 = t2;
+		int levels = 0;
+		while ((n1 != null) && (n2 != null))
+		{
+			assertEquals(n2.getType(), n1.getType());
+			assertEquals(((TestNode) n2).getAttribute(), ((TestNode) n1).getAttribute());
+			if (n2.isTextLeaf())
+				assertEquals(n2.getTextContent(), n1.getTextContent());
+			n1 = n1.getFirstChild();
+			n2 = n2.getFirstChild();
+			++levels;
+		}
+		assertNull(n1);
+		assertNull(n2);
+		assertEquals(depth + 2, levels);
+
+		t1.unmapDeep();
+		t2.unmapDeep();
+	}
+
+	// =========================================================================
+
+	private static void preOrder(DiffNode n, List<DiffNode> nodes)
+	{
+		nodes.add(n);
+		for (DiffNode c = n.getFirstChild(); c != null; c = c.getNextSibling())
+			preOrder(c, nodes);
+	}
+
+	/**
+	 * Builds a chain of the given number of elements below the root that ends
+	 * in a text leaf, without recursion.
+	 */
+	private static TestNode deepTree(int depth, String text)
+	{
+		TestNode root = TestNode.element("doc", null);
+		TestNode n = root;
+		for (int i = 0; i < depth; ++i)
+		{
+			TestNode child = TestNode.element("p", null);
+			n.appendOrInsert(child, null);
+			n = child;
+		}
+		n.appendOrInsert(TestNode.text(text), null);
+		return root;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.tree;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.TestNode;
+
+public class DiffNodeTest
+{
+	@Test
+	public void testIndexOfAfterInsertAndRemove() throws Exception
+	{
+		TestNode parent = TestNode.element("p", null);
+		TestNode a = TestNode.text("a");
+		TestNode b = TestNode.text("b");
+		TestNode c = TestNode.text("c");
+		parent.appendOrInsert(a, null);
+		parent.appendOrInsert(c, null);
+
+		assertEquals(0, a.indexOf());
+		assertEquals(1, c.indexOf());
+
+		parent.appendOrInsert(b, c);
+		assertEquals(0, a.indexOf());
+		assertEquals(1, b.indexOf());
+		assertEquals(2, c.indexOf());
+
+		a.removeFromParent();
+		assertEquals(0, b.indexOf());
+		assertEquals(1, c.indexOf());
+		assertSame(b, parent.getRefChild(0));
+		assertSame(c, parent.getRefChild(1));
+		assertNull(parent.getRefChild(2));
+	}
+
+	@Test
+	public void testChildIndexFollowsRandomEdits() throws Exception
+	{
+		Random random = new Random(42);
+		TestNode parent = TestNode.element("p", null);
+		ArrayList<DiffNode> expected = new ArrayList<>();
+
+		for (int i = 0; i < 5000; ++i)
+		{
+			int op = random.nextInt(4);
+			if ((op < 2) || expected.isEmpty())
+			{
+				TestNode child = TestNode.text(String.valueOf(i));
+				int pos = random.nextInt(expected.size() + 1);
+				parent.insertAt(pos, child);
+				expected.add(pos, child);
+			}
+			else if (op == 2)
+			{
+				expected.remove(random.nextInt(expected.size())).removeFromParent();
+			}
+			else
+			{
+				TestNode child = TestNode.text(String.valueOf(i));
+				parent.appendOrInsert(child, null);
+				expected.add(child);
+			}
+
+			// Only query some children so that the index is extended lazily
+			int probe = random.nextInt(expected.size() + 1);
+			if (probe < expected.size())
+			{
+				assertEquals(probe, expected.get(probe).indexOf());
+				assertSame(expected.get(probe), parent.getRefChild(probe));
+			}
+			else
+			{
+				assertNull(parent.getRefChild(probe));
+			}
+
+			if (i % 500 == 0)
+				assertChildIndex(parent, expected);
+		}
+		assertChildIndex(parent, expected);
+	}
+
+	// =========================================================================
+
+	private static void assertChildIndex(DiffNode parent, ArrayList<DiffNode> expected)
+	{
+		DiffNode child = parent.getFirstChild();
+		for (int i = 0; i < expected.size(); ++i)
+		{
+			assertSame(expected.get(i), child);
+			assertEquals(i, child.indexOf());
+			assertSame(child, parent.getRefChild(i));
+			child = child.getNextSibling();
+		}
+		assertNull(child);
+		assertNull(parent.getRefChild(expected.size()));
+	}
+}
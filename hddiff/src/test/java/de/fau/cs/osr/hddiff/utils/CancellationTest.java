@@ -0,0 +1,146 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+import de.fau.cs.osr.hddiff.HDDiff;
+import de.fau.cs.osr.hddiff.PreparedTree;
+import de.fau.cs.osr.hddiff.TestDocuments;
+import de.fau.cs.osr.hddiff.TestNode;
+import de.fau.cs.osr.hddiff.editscript.EditOp;
+import de.fau.cs.osr.hddiff.editscript.EditScriptListener;
+import de.fau.cs.osr.hddiff.editscript.EditScriptManager;
+
+public class CancellationTest
+{
+	@Test
+	public void testCheckKeepsInterruptFlag() throws Exception
+	{
+		Cancellation.checkInterrupted();
+
+		Thread.currentThread().interrupt();
+		try
+		{
+			Cancellation.checkInterrupted();
+			fail("The check did not throw");
+		}
+		catch (CancellationException e)
+		{
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+	}
+
+	@Test
+	public void testInterruptedThreadCancelsDiff() throws Exception
+	{
+		TestNode t1 = TestDocuments.generate(1, 200);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.05);
+
+		Thread.currentThread().interrupt();
+		try
+		{
+			HDDiff.editScript(t1, t2, TestDocuments.options());
+			fail("The diff was not cancelled");
+		}
+		catch (CancellationException e)
+		{
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+	}
+
+	@Test
+	public void testCancelledDiffLeavesTreesReusable() throws Exception
+	{
+		TestNode t1 = TestDocuments.generate(1, 2000);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.05);
+
+		try
+		{
+			HDDiff.editScript(t1, t2, TestDocuments.options(), null, new InterruptingListener());
+			fail("The diff was not cancelled");
+		}
+		catch (CancellationException e)
+		{
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+
+		t1.unmapDeep();
+		t2.unmapDeep();
+
+		new EditScriptManager(HDDiff.editScript(t1, t2, TestDocuments.options())).apply();
+		t1.compareNativeDeep(t2);
+	}
+
+	@Test
+	public void testCancelledDiffLeavesPreparedTreeReusable() throws Exception
+	{
+		TestNode t1 = TestDocuments.generate(1, 2000);
+		TestNode t2 = TestDocuments.revise(t1, 2, 0.05);
+		PreparedTree prepared = HDDiff.prepare(t1, TestDocuments.options());
+
+		try
+		{
+			prepared.editScript(t2.copyDeep(), null, new InterruptingListener());
+			fail("The diff was not cancelled");
+		}
+		catch (CancellationException e)
+		{
+			assertTrue(Thread.currentThread().isInterrupted());
+		}
+		finally
+		{
+			Thread.interrupted();
+		}
+
+		new EditScriptManager(prepared.editScript(t2)).apply();
+		t1.compareNativeDeep(t2);
+	}
+
+	// =========================================================================
+
+	/**
+	 * Interrupts the diffing thread when the first operation is reported.
+	 */
+	private static final class InterruptingListener
+			implements
+				EditScriptListener
+	{
+		@Override
+		public void editOp(EditOp op)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LongHashIndexTest
+{
+	@Test
+	public void testSecondInsertFlagsKeyAsDuplicate() throws Exception
+	{
+		LongHashIndex<String> index = new LongHashIndex<>(4);
+		
+		assertTrue(index.putOrMarkDuplicate(42, "a"));
+		assertEquals("a", index.getUnique(42));
+		
+		assertFalse(index.putOrMarkDuplicate(42, "b"));
+		assertNull(index.getUnique(42));
+		assertTrue(index.containsKey(42));
+		
+		assertFalse(index.putOrMarkDuplicate(42, "c"));
+		assertNull(index.getUnique(42));
+		assertEquals(1, index.size());
+	}
+	
+	@Test
+	public void testKeysSurviveGrowing() throws Exception
+	{
+		LongHashIndex<Integer> index = new LongHashIndex<>(1);
+		for (int i = 0; i < 10000; ++i)
+			assertTrue(index.putOrMarkDuplicate(i * 0x10000, i));
+		index.putOrMarkDuplicate(17 * 0x10000, -1);
+		
+		assertEquals(10000, index.size());
+		for (int i = 0; i < 10000; ++i)
+		{
+			if (i == 17)
+				assertNull(index.getUnique(i * 0x10000));
+			else
+				assertEquals(Integer.valueOf(i), index.getUnique(i * 0x10000));
+		}
+		assertNull(index.getUnique(1));
+	}
+	
+	@Test
+	public void testKeysDifferingInHighBitsAreDistinct() throws Exception
+	{
+		LongHashIndex<String> index = new LongHashIndex<>(4);
+		
+		assertTrue(index.putOrMarkDuplicate(7L, "low"));
+		assertTrue(index.putOrMarkDuplicate(7L | (1L << 40), "high"));
+		
+		assertEquals("low", index.getUnique(7L));
+		assertEquals("high", index.getUnique(7L | (1L << 40)));
+	}
+	
+	@Test
+	public void testSlotIterationSkipsDuplicates() throws Exception
+	{
+		LongHashIndex<String> index = new LongHashIndex<>(8);
+		index.putOrMarkDuplicate(-5, "x");
+		index.putOrMarkDuplicate(0, "y");
+		index.putOrMarkDuplicate(7, "z");
+		index.putOrMarkDuplicate(7, "z");
+		
+		int unique = 0;
+		for (int slot = 0; slot < index.capacity(); ++slot)
+		{
+			if (index.isUniqueAt(slot))
+			{
+				++unique;
+				assertEquals(index.valueAt(slot), index.getUnique(index.keyAt(slot)));
+			}
+		}
+		assertEquals(2, unique);
+	}
+}
@@ -20,6 +20,7 @@ package de.fau.cs.osr.hddiff.utils;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -105,8 +106,115 @@ public class MyersLcsTest
 		assertEquals(toCharArray("AACCAABBAA"), lcs.getLcs());
 	}
 	
+	@Test
+	public void testLinearSpaceFindsLcsOfSameLength() throws Exception
+	{
+		LcsMyers<Character> linear = new LcsMyers<>(new ElementComparatorInterface<Character>()
+		{
+			@Override
+			public boolean equals(Character a, Character b)
+			{
+				return a == b;
+			}
+		});
+		linear.setMaxTraceSize(0);
+		
+		assertEquals(5, linear.lcs(
+				toCharArray("ABCABBA"),
+				toCharArray("CBABAC"),
+				Integer.MAX_VALUE));
+		assertEquals(8, linear.getLcs().size());
+		
+		Random rand = new Random(42);
+		for (int i = 0; i < 500; ++i)
+		{
+			ArrayList<Character> a = randomSeq(rand, rand.nextInt(60), 2 + i % 5);
+			ArrayList<Character> b = randomSeq(rand, rand.nextInt(60), 2 + i % 5);
+			
+			int d = lcs.lcs(a, b);
+			assertEquals(d, linear.lcs(a, b));
+			assertEquals(lcs.getLcs().size(), linear.getLcs().size());
+			assertIsCommonSubsequence(a, b, linear.getLcs());
+		}
+	}
+	
+	@Test
+	public void testIntLcsFindsSameLcsAsObjectLcs() throws Exception
+	{
+		IntLcsMyers intLcs = new IntLcsMyers();
+		IntLcsMyers intLinear = new IntLcsMyers();
+		intLinear.setMaxTraceSize(0);
+		
+		Random rand = new Random(42);
+		for (int i = 0; i < 500; ++i)
+		{
+			ArrayList<Character> a = randomSeq(rand, rand.nextInt(60), 2 + i % 5);
+			ArrayList<Character> b = randomSeq(rand, rand.nextInt(60), 2 + i % 5);
+			int[] ka = toKeys(a);
+			int[] kb = toKeys(b);
+			
+			int d = lcs.lcs(a, b);
+			ArrayList<Character> s = lcs.getLcs();
+			
+			assertEquals(d, intLcs.lcs(ka, ka.length, kb, kb.length));
+			assertEquals(s.size() / 2, intLcs.getLcsLength());
+			for (int k = 0; k < intLcs.getLcsLength(); ++k)
+			{
+				assertSame(s.get(2 * k), a.get(intLcs.getIndex1(k)));
+				assertSame(s.get(2 * k + 1), b.get(intLcs.getIndex2(k)));
+			}
+			
+			assertEquals(d, intLinear.lcs(ka, ka.length, kb, kb.length));
+			assertEquals(s.size() / 2, intLinear.getLcsLength());
+			for (int k = 0; k < intLinear.getLcsLength(); ++k)
+			{
+				if (k > 0)
+				{
+					assertTrue(intLinear.getIndex1(k - 1) < intLinear.getIndex1(k));
+					assertTrue(intLinear.getIndex2(k - 1) < intLinear.getIndex2(k));
+				}
+				assertEquals(ka[intLinear.getIndex1(k)], kb[intLinear.getIndex2(k)]);
+			}
+		}
+	}
+	
 	// =========================================================================
 	
+	private void assertIsCommonSubsequence(
+			ArrayList<Character> a,
+			ArrayList<Character> b,
+			ArrayList<Character> pairs)
+	{
+		int i = 0;
+		int j = 0;
+		for (int p = 0; p < pairs.size(); p += 2)
+		{
+			assertEquals(pairs.get(p), pairs.get(p + 1));
+			while (a.get(i) != pairs.get(p))
+				++i;
+			while (b.get(j) != pairs.get(p + 1))
+				++j;
+			++i;
+			++j;
+		}
+	}
+	
+	private ArrayList<Character> randomSeq(Random rand, int len, int alphabetSize)
+	{
+		ArrayList<Character> a = new ArrayList<>(len);
+		for (int i = 0; i < len; ++i)
+			a.add((char) ('a' + rand.nextInt(alphabetSize)));
+		return a;
+	}
+	
+	private int[] toKeys(ArrayList<Character> seq)
+	{
+		int[] keys = new int[seq.size()];
+		for (int i = 0; i < keys.length; ++i)
+			keys[i] = seq.get(i);
+		return keys;
+	}
+	
 	private ArrayList<Character> toCharArray(String string)
 	{
 		ArrayList<Character> a = new ArrayList<>(string.length());
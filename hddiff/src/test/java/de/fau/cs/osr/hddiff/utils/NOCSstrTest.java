@@ -20,10 +20,12 @@ package de.fau.cs.osr.hddiff.utils;
 import static org.junit.Assert.*;
 
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
 import de.fau.cs.osr.hddiff.utils.NOCSstr.CommonSubstring;
+import de.fau.cs.osr.hddiff.utils.NOCSstr.CommonSubstrings;
 
 public class NOCSstrTest
 {
@@ -57,6 +59,56 @@ public class NOCSstrTest
 		assertTrue(contains(str1, result, "Hello World"));
 	}
 	
+	@Test
+	public void testResultOrderedByDescendingLength() throws Exception
+	{
+		String str1 = "abcdefgh-0123456789ABCD-xyzxyzq";
+		String str2 = "xyzxyzq+0123456789ABCD+abcdefgh";
+		CommonSubstrings result = NOCSstr.compute(str1, str2, NOCSstr.MARKER_SEQ_D_MIN, subStringJudge, null);
+		
+		assertEquals(3, result.size());
+		for (int i = 0; i < result.size(); ++i)
+		{
+			int start1 = result.getStart1(i);
+			int start2 = result.getStart2(i);
+			int len = result.getLength(i);
+			assertEquals(str1.substring(start1, start1 + len), str2.substring(start2, start2 + len));
+			if (i > 0)
+				assertTrue(result.getLength(i - 1) >= len);
+			
+			CommonSubstring cs = result.get(i);
+			assertEquals(start1, cs.start1);
+			assertEquals(start2, cs.start2);
+			assertEquals(len, cs.len);
+		}
+		assertEquals(14, result.getLength(0));
+	}
+	
+	@Test
+	public void testWorkspaceReuseMatchesFreshCompute() throws Exception
+	{
+		NOCSstr.Workspace workspace = new NOCSstr.Workspace();
+		Random rand = new Random(77);
+		for (int i = 0; i < 100; ++i)
+		{
+			String str1 = randomString(rand, 1 + rand.nextInt((i % 2 == 0) ? 20 : 400));
+			String str2 = randomString(rand, 1 + rand.nextInt((i % 3 == 0) ? 20 : 400));
+			
+			CommonSubstrings expected = NOCSstr.compute(
+					str1, str2, NOCSstr.MARKER_SEQ_D_MIN, subStringJudge, null);
+			CommonSubstrings actual = NOCSstr.compute(
+					str1, str2, NOCSstr.MARKER_SEQ_D_MIN, subStringJudge, SuffixArrayAlgorithm.SAIS, workspace, null);
+			
+			assertEquals(expected.size(), actual.size());
+			for (int j = 0; j < expected.size(); ++j)
+			{
+				assertEquals(expected.getStart1(j), actual.getStart1(j));
+				assertEquals(expected.getStart2(j), actual.getStart2(j));
+				assertEquals(expected.getLength(j), actual.getLength(j));
+			}
+		}
+	}
+	
 	// =========================================================================
 	
 	private boolean contains(
@@ -70,6 +122,16 @@ public class NOCSstrTest
 		return false;
 	}
 	
+	private static String randomString(Random rand, int len)
+	{
+		// Few distinct words so that long common substrings occur
+		String[] words = { "alpha ", "beta ", "gamma ", "delta ", "x" };
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < len)
+			sb.append(words[rand.nextInt(words.length)]);
+		return sb.toString();
+	}
+	
 	private List<CommonSubstring> nocss(String str1, String str2)
 	{
 		List<CommonSubstring> result = NOCSstr.compute(str1, str2, NOCSstr.MARKER_SEQ_D_MIN, subStringJudge, null);
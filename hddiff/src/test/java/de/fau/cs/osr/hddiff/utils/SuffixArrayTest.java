@@ -0,0 +1,208 @@
+/**
+ * Copyright 2011 The Open Source Research Group,
+ *                University of Erlangen-Nürnberg
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ */
+package de.fau.cs.osr.hddiff.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class SuffixArrayTest
+{
+	@Test
+	public void testSaisMatchesDc3OnTerminatedSequences() throws Exception
+	{
+		Random rand = new Random(42);
+		for (int i = 0; i < 200; ++i)
+		{
+			int k = 2 + rand.nextInt(i < 100 ? 3 : 200);
+			int[] seq = randomTerminatedSeq(rand, 2 + rand.nextInt(300), k);
+			int len = seq.length - 3;
+			
+			int[] dc3 = SuffixArrayAlgorithm.DC3.compute(seq, len, k);
+			int[] sais = SuffixArrayAlgorithm.SAIS.compute(seq, len, k);
+			assertArrayEquals(
+					Arrays.copyOf(dc3, len),
+					Arrays.copyOf(sais, len));
+		}
+	}
+	
+	@Test
+	public void testSaisMatchesNaiveSort() throws Exception
+	{
+		Random rand = new Random(4711);
+		for (int i = 0; i < 200; ++i)
+		{
+			int k = 1 + rand.nextInt(i < 100 ? 2 : 50);
+			int len = rand.nextInt(200);
+			int[] seq = new int[len + 3];
+			for (int j = 0; j < len; ++j)
+				seq[j] = rand.nextInt(k + 1);
+			
+			int[] sais = SuffixArrayAlgorithm.SAIS.compute(seq, len, k);
+			assertEquals(len + 3, sais.length);
+			assertArrayEquals(naive(seq, len), Arrays.copyOf(sais, len));
+		}
+	}
+	
+	@Test
+	public void testSaisOnRepetitiveSequence() throws Exception
+	{
+		int len = 1000;
+		int[] seq = new int[len + 3];
+		for (int i = 0; i < len; ++i)
+			seq[i] = 2 + (i % 3 == 0 ? 1 : 0);
+		
+		int[] sais = SuffixArrayAlgorithm.SAIS.compute(seq, len, 3);
+		assertArrayEquals(naive(seq, len), Arrays.copyOf(sais, len));
+	}
+	
+	@Test
+	public void testPrefixDoublingMatchesNaiveSort() throws Exception
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			Random rand = new Random(815);
+			for (int i = 0; i < 200; ++i)
+			{
+				int k = 1 + rand.nextInt(i < 100 ? 2 : 50);
+				int len = rand.nextInt(200);
+				int[] seq = new int[len + 3];
+				for (int j = 0; j < len; ++j)
+					seq[j] = rand.nextInt(k + 1);
+				
+				int[] sa = SuffixArrayPrefixDoubling.compute(pool, seq, len, k);
+				assertEquals(len + 3, sa.length);
+				assertArrayEquals(naive(seq, len), Arrays.copyOf(sa, len));
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testParallelBuilderMatchesSequentialOnLargeInput() throws Exception
+	{
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			SuffixArrayBuilderInterface parallel =
+					new ParallelSuffixArrayBuilder(pool, 1000, SuffixArrayAlgorithm.SAIS);
+			
+			Random rand = new Random(1337);
+			for (int k : new int[] { 3, 40 })
+			{
+				int[] seq = randomTerminatedSeq(rand, 100000, k);
+				
+				// Long repeats to force many doubling rounds
+				System.arraycopy(seq, 1000, seq, 60000, 20000);
+				
+				int len = seq.length - 3;
+				int[] sa1 = SuffixArrayAlgorithm.SAIS.compute(seq, len, k);
+				int[] sa2 = parallel.compute(seq, len, k);
+				assertArrayEquals(sa1, sa2);
+				
+				int[] lcp1 = SuffixArrayAlgorithm.SAIS.computeLcp(seq, len, 2, sa1);
+				int[] lcp2 = parallel.computeLcp(seq, len, 2, sa1);
+				assertArrayEquals(lcp1, lcp2);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testWorkspaceReuseMatchesFreshArrays() throws Exception
+	{
+		SuffixArrayWorkspace workspace = new SuffixArrayWorkspace();
+		Random rand = new Random(2501);
+		for (int i = 0; i < 200; ++i)
+		{
+			// Shrinking and growing inputs leave stale data in the buffers
+			int k = 2 + rand.nextInt(i < 100 ? 3 : 200);
+			int[] seq = randomTerminatedSeq(rand, 2 + rand.nextInt((i % 2 == 0) ? 30 : 600), k);
+			int len = seq.length - 3;
+			
+			for (SuffixArrayAlgorithm algorithm : SuffixArrayAlgorithm.values())
+			{
+				int[] sa = algorithm.compute(seq, len, k);
+				int[] lcp = algorithm.computeLcp(seq, len, 2, sa);
+				
+				int[] reusedSa = algorithm.compute(seq, len, k, workspace);
+				assertArrayEquals(Arrays.copyOf(sa, len), Arrays.copyOf(reusedSa, len));
+				
+				int[] reusedLcp = algorithm.computeLcp(seq, len, 2, reusedSa, workspace);
+				assertArrayEquals(Arrays.copyOf(lcp, len), Arrays.copyOf(reusedLcp, len));
+			}
+		}
+	}
+	
+	// =========================================================================
+	
+	/**
+	 * str1 $1 str2 $0 like NOCSstr builds it.
+	 */
+	private static int[] randomTerminatedSeq(Random rand, int n, int k)
+	{
+		int[] seq = new int[n + 3];
+		int sep = rand.nextInt(n - 1);
+		for (int i = 0; i < n - 1; ++i)
+			seq[i] = (i == sep) ? 1 : 2 + rand.nextInt(k - 1);
+		seq[n - 1] = 0;
+		return seq;
+	}
+	
+	private static int[] naive(final int[] seq, final int len)
+	{
+		Integer[] suffixes = new Integer[len];
+		for (int i = 0; i < len; ++i)
+			suffixes[i] = i;
+		
+		Arrays.sort(suffixes, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				int i = a;
+				int j = b;
+				while ((i < len) && (j < len))
+				{
+					if (seq[i] != seq[j])
+						return seq[i] < seq[j] ? -1 : 1;
+					++i;
+					++j;
+				}
+				return (i == len) ? -1 : 1;
+			}
+		});
+		
+		int[] result = new int[len];
+		for (int i = 0; i < len; ++i)
+			result[i] = suffixes[i];
+		return result;
+	}
+}